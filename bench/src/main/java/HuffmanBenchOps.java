@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import bench.HuffmanOps;
+
+/**
+ * The HuffmanBenchOps class gives the benchmarks in package bench access to
+ * HuffmanTree, PriorityQueue and the archive classes, which they cannot
+ * import from the default package.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanBenchOps implements HuffmanOps {
+
+   @Override
+   public Object buildTree(long[] counts) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(counts);
+      return tree;
+   }
+
+   @Override
+   public Object symbols(long[] counts) {
+      List<HuffmanTree.SymbolNodeData> symbols = new ArrayList<>();
+      for (int s = 0; s < counts.length; s++) {
+         if (counts[s] > 0) {
+            symbols.add(new HuffmanTree.SymbolNodeData(counts[s], s));
+         }
+      }
+      return symbols.toArray(new HuffmanTree.SymbolNodeData[0]);
+   }
+
+   @Override
+   public Object buildSymbolTree(Object symbols) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree((HuffmanTree.SymbolNodeData[]) symbols);
+      return tree;
+   }
+
+   @Override
+   public Object buildLimitedTree(Object symbols, int maxCodeLength) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree((HuffmanTree.SymbolNodeData[]) symbols, maxCodeLength);
+      return tree;
+   }
+
+   @Override
+   public String encodeMessage(Object tree, String message) {
+      return ((HuffmanTree) tree).encodeMessage(message);
+   }
+
+   @Override
+   public byte[] encode(Object tree, String message) {
+      BitWriter out = new BitWriter(message.length());
+      ((HuffmanTree) tree).encode(message, out);
+      return out.toByteArray();
+   }
+
+   @Override
+   public String decode(Object tree, String code) {
+      return ((HuffmanTree) tree).decode(code);
+   }
+
+   @Override
+   public String decode(Object tree, byte[] packed, long bitLength) {
+      return ((HuffmanTree) tree).decode(packed, bitLength);
+   }
+
+   @Override
+   public byte[] compress(byte[] data, int blockSize, boolean interleaved) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, null,
+            0, false, interleaved)) {
+         writer.write(data, blockSize);
+      }
+      catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+      return out.toByteArray();
+   }
+
+   @Override
+   public byte[] decompress(byte[] archive) {
+      try {
+         return HuffmanArchiveReader.decompress(archive);
+      }
+      catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+   }
+
+   @Override
+   public Queue<Long> newQueue() {
+      return new PriorityQueue<>();
+   }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ArchiveDecodeBenchmark class measures decompressing an archive on one
+ * thread, with each block coded as a single stream or as four interleaved
+ * streams.
+ *
+ * @author jam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ArchiveDecodeBenchmark {
+
+   // Block size of the archives.
+   private static final int BLOCK_SIZE = 1 << 16;
+
+   @Param({ "16", "64" })
+   public int alphabet;
+
+   @Param({ "65536", "1048576" })
+   public int size;
+
+   @Param({ "uniform", "zipf", "english" })
+   public String profile;
+
+   @Param({ "false", "true" })
+   public boolean interleaved;
+
+   private HuffmanOps ops;
+   private byte[] archive;
+
+   @Setup
+   public void setUp() {
+      ops = HuffmanOps.load();
+      byte[] data = Workloads.message(profile, alphabet, size)
+            .getBytes(StandardCharsets.UTF_8);
+      archive = ops.compress(data, BLOCK_SIZE, interleaved);
+      if (!Arrays.equals(data, ops.decompress(archive))) {
+         throw new IllegalStateException("Data does not round-trip");
+      }
+   }
+
+   @Benchmark
+   public byte[] decompress(Counters.Bytes bytes) {
+      bytes.bytes += size;
+      return ops.decompress(archive);
+   }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The Counters class holds the extra JMH results that report how much work
+ * each benchmark call does, so the time per call also comes out per symbol
+ * and per byte. In the default average time mode they read as ns/symbol and
+ * ns/byte; with -bm thrpt -tu s they read as symbols/s and bytes/s.
+ *
+ * @author jam
+ *
+ */
+public final class Counters {
+
+   private Counters() {
+   }
+
+   /**
+    * Symbols processed, such as codewords coded or keys queued.
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.OPERATIONS)
+   public static class Symbols {
+
+      public long symbols;
+
+      @Setup(Level.Iteration)
+      public void reset() {
+         symbols = 0;
+      }
+   }
+
+   /**
+    * Uncompressed bytes coded, as UTF-8.
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.OPERATIONS)
+   public static class Bytes {
+
+      public long bytes;
+
+      @Setup(Level.Iteration)
+      public void reset() {
+         bytes = 0;
+      }
+   }
+}
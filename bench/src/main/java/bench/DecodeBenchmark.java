@@ -0,0 +1,76 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The DecodeBenchmark class measures decoding a message with a prebuilt
+ * tree, both from the '0'/'1' String of encodeMessage and from packed bits.
+ *
+ * @author jam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecodeBenchmark {
+
+   @Param({ "16", "256", "4096" })
+   public int alphabet;
+
+   @Param({ "1024", "65536", "1048576" })
+   public int size;
+
+   @Param({ "uniform", "zipf", "english" })
+   public String profile;
+
+   private HuffmanOps ops;
+   private Object tree;
+   private String code;
+   private byte[] packed;
+   private int messageBytes;
+
+   @Setup
+   public void setUp() {
+      ops = HuffmanOps.load();
+      String message = Workloads.message(profile, alphabet, size);
+      tree = ops.buildTree(Workloads.counts(message));
+      code = ops.encodeMessage(tree, message);
+      packed = ops.encode(tree, message);
+      messageBytes = message.getBytes(StandardCharsets.UTF_8).length;
+      if (!message.equals(ops.decode(tree, packed, code.length()))) {
+         throw new IllegalStateException("Message does not round-trip");
+      }
+   }
+
+   @Benchmark
+   public String decodeString(Counters.Symbols symbols,
+         Counters.Bytes bytes) {
+      symbols.symbols += size;
+      bytes.bytes += messageBytes;
+      return ops.decode(tree, code);
+   }
+
+   @Benchmark
+   public String decodePacked(Counters.Symbols symbols,
+         Counters.Bytes bytes) {
+      symbols.symbols += size;
+      bytes.bytes += messageBytes;
+      return ops.decode(tree, packed, code.length());
+   }
+}
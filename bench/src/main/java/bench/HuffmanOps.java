@@ -0,0 +1,130 @@
+package bench;
+
+import java.util.Queue;
+
+/**
+ * The HuffmanOps interface is the view the benchmarks have of the codec. The
+ * codec classes live in the default package, which no named package can
+ * import, and JMH will not generate benchmarks in the default package, so a
+ * small class next to the codec implements this interface and the benchmarks
+ * load it by name. Trees are passed around as plain Objects.
+ *
+ * @author jam
+ *
+ */
+public interface HuffmanOps {
+
+   /**
+    * Builds a tree from symbol counts with HuffmanTree.buildTree.
+    *
+    * @param counts Counts indexed by symbol.
+    * @return The tree.
+    */
+   Object buildTree(long[] counts);
+
+   /**
+    * Turns symbol counts into the HuffmanTree.SymbolNodeData array that
+    * buildSymbolTree and buildLimitedTree take, one entry per symbol that
+    * occurs.
+    *
+    * @param counts Counts indexed by symbol.
+    * @return The SymbolNodeData array.
+    */
+   Object symbols(long[] counts);
+
+   /**
+    * Builds a tree through the priority queue with
+    * HuffmanTree.buildTree(SymbolNodeData[]).
+    *
+    * @param symbols An array from symbols.
+    * @return The tree.
+    */
+   Object buildSymbolTree(Object symbols);
+
+   /**
+    * Builds a canonical tree under a code length cap with
+    * HuffmanTree.buildTree(SymbolNodeData[], int).
+    *
+    * @param symbols       An array from symbols.
+    * @param maxCodeLength Longest code length allowed.
+    * @return The tree.
+    */
+   Object buildLimitedTree(Object symbols, int maxCodeLength);
+
+   /**
+    * Encodes a message as a '0'/'1' String with HuffmanTree.encodeMessage.
+    *
+    * @param tree    A tree from buildTree.
+    * @param message The message.
+    * @return The binary String.
+    */
+   String encodeMessage(Object tree, String message);
+
+   /**
+    * Encodes a message as packed bits with HuffmanTree.encode.
+    *
+    * @param tree    A tree from buildTree.
+    * @param message The message.
+    * @return The packed bytes.
+    */
+   byte[] encode(Object tree, String message);
+
+   /**
+    * Decodes a '0'/'1' String with HuffmanTree.decode.
+    *
+    * @param tree A tree from buildTree.
+    * @param code The binary String.
+    * @return The message.
+    */
+   String decode(Object tree, String code);
+
+   /**
+    * Decodes packed bits with HuffmanTree.decode.
+    *
+    * @param tree      A tree from buildTree.
+    * @param packed    The packed bytes.
+    * @param bitLength The number of meaningful bits.
+    * @return The message.
+    */
+   String decode(Object tree, byte[] packed, long bitLength);
+
+   /**
+    * Compresses data into an archive with HuffmanArchiveWriter.
+    *
+    * @param data        The bytes to compress.
+    * @param blockSize   Number of bytes per block.
+    * @param interleaved true to split blocks into four streams.
+    * @return The archive.
+    */
+   byte[] compress(byte[] data, int blockSize, boolean interleaved);
+
+   /**
+    * Decompresses an archive with HuffmanArchiveReader.
+    *
+    * @param archive The archive.
+    * @return The original data.
+    */
+   byte[] decompress(byte[] archive);
+
+   /**
+    * Creates an empty PriorityQueue of the codec.
+    *
+    * @return The queue.
+    */
+   Queue<Long> newQueue();
+
+   /**
+    * Loads the implementation that sits next to the codec.
+    *
+    * @return The operations.
+    */
+   static HuffmanOps load() {
+      try {
+         return (HuffmanOps) Class.forName("HuffmanBenchOps")
+               .getDeclaredConstructor().newInstance();
+      }
+      catch (ReflectiveOperationException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The PriorityQueueBenchmark class measures filling a queue with size keys
+ * and polling them all back out, for the codec's PriorityQueue and, as a
+ * baseline, java.util.PriorityQueue. The extra symbols result gives the time
+ * per offer/poll pair.
+ *
+ * @author jam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PriorityQueueBenchmark {
+
+   @Param({ "256", "4096", "65536" })
+   public int size;
+
+   @Param({ "random", "ascending", "descending" })
+   public String order;
+
+   private HuffmanOps ops;
+   private Long[] keys;
+
+   @Setup
+   public void setUp() {
+      ops = HuffmanOps.load();
+      keys = Workloads.keys(order, size);
+   }
+
+   @Benchmark
+   public long offerPoll(Counters.Symbols symbols) {
+      symbols.symbols += size;
+      return drain(ops.newQueue());
+   }
+
+   @Benchmark
+   public long offerPollJdk(Counters.Symbols symbols) {
+      symbols.symbols += size;
+      return drain(new java.util.PriorityQueue<>());
+   }
+
+   private long drain(Queue<Long> queue) {
+      for (Long key : keys) {
+         queue.offer(key);
+      }
+      long sum = 0;
+      Long key;
+      while ((key = queue.poll()) != null) {
+         sum += key;
+      }
+      return sum;
+   }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The TreeBuildBenchmark class measures HuffmanTree.buildTree on the counts
+ * of a 64K-character message of each profile and alphabet size, from a count
+ * array, through the priority queue of SymbolNodeData, and under a code
+ * length cap. The extra symbols result gives the time per distinct symbol.
+ *
+ * @author jam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TreeBuildBenchmark {
+
+   // Tight enough to make skewed 4096-symbol alphabets take the
+   // length-limited path, loose enough for 4096 distinct symbols.
+   private static final int MAX_CODE_LENGTH = 12;
+
+   @Param({ "16", "256", "4096" })
+   public int alphabet;
+
+   @Param({ "uniform", "zipf", "english" })
+   public String profile;
+
+   private HuffmanOps ops;
+   private long[] counts;
+   private Object symbolData;
+   private int distinct;
+
+   @Setup
+   public void setUp() {
+      ops = HuffmanOps.load();
+      counts = Workloads.counts(Workloads.message(profile, alphabet, 1 << 16));
+      symbolData = ops.symbols(counts);
+      for (long c : counts) {
+         distinct += c > 0 ? 1 : 0;
+      }
+   }
+
+   @Benchmark
+   public Object buildTree(Counters.Symbols symbols) {
+      symbols.symbols += distinct;
+      return ops.buildTree(counts);
+   }
+
+   @Benchmark
+   public Object buildSymbolTree(Counters.Symbols symbols) {
+      symbols.symbols += distinct;
+      return ops.buildSymbolTree(symbolData);
+   }
+
+   @Benchmark
+   public Object buildLimitedTree(Counters.Symbols symbols) {
+      symbols.symbols += distinct;
+      return ops.buildLimitedTree(symbolData, MAX_CODE_LENGTH);
+   }
+}
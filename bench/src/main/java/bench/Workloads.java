@@ -0,0 +1,140 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The Workloads class generates the benchmark inputs. Every input comes from a
+ * fixed seed, so runs on different machines or revisions measure the same
+ * messages.
+ *
+ * The entropy profiles are "uniform", every symbol of the alphabet equally
+ * likely; "zipf", the symbol of rank k drawn with probability proportional to
+ * 1/k, as word and byte frequencies often are; and "english", sentences of
+ * English prose, whose alphabet is fixed by the text itself.
+ *
+ * @author jam
+ *
+ */
+public final class Workloads {
+
+   /**
+    * Seed of every generated input.
+    */
+   public static final long SEED = 0x5EED;
+
+   // First symbol of a generated alphabet; symbols stay clear of space and
+   // punctuation, which encodeMessage treats specially.
+   private static final char FIRST_SYMBOL = '0';
+
+   private static final String[] SENTENCES = {
+         "The tree is built from the bottom up by joining the two lightest "
+               + "nodes until only the root is left.",
+         "Frequent letters sit near the root and get short codes, while "
+               + "rare ones sink to the bottom of the tree.",
+         "No code is the prefix of another, so a decoder never has to look "
+               + "ahead to know where a symbol ends.",
+         "When the weather turned cold, the old man walked down to the "
+               + "harbor and watched the boats come in.",
+         "She had read the letter twice before she noticed that it was "
+               + "addressed to her brother and not to her.",
+         "It was late in the evening, and the lamps along the river were "
+               + "being lit one at a time.",
+         "Most of what we know about the early history of the town comes "
+               + "from a handful of parish records.",
+         "Would you rather have the answer now, or wait until we have "
+               + "checked every figure again?",
+   };
+
+   private Workloads() {
+   }
+
+   /**
+    * Generates a message.
+    *
+    * @param profile  "uniform", "zipf" or "english".
+    * @param alphabet Number of distinct symbols; ignored for "english".
+    * @param size     Number of characters.
+    * @return The message.
+    * @throws IllegalArgumentException if the profile is unknown.
+    */
+   public static String message(String profile, int alphabet, int size) {
+      Random random = new Random(SEED);
+      StringBuilder sb = new StringBuilder(size + 200);
+      switch (profile) {
+      case "uniform":
+         for (int i = 0; i < size; i++) {
+            sb.append((char) (FIRST_SYMBOL + random.nextInt(alphabet)));
+         }
+         break;
+      case "zipf":
+         double[] cumulative = new double[alphabet];
+         double sum = 0;
+         for (int k = 0; k < alphabet; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+         }
+         for (int i = 0; i < size; i++) {
+            int k = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            k = k < 0 ? -k - 1 : k;
+            sb.append((char) (FIRST_SYMBOL + Math.min(k, alphabet - 1)));
+         }
+         break;
+      case "english":
+         while (sb.length() < size) {
+            sb.append(SENTENCES[random.nextInt(SENTENCES.length)]).append(' ');
+         }
+         sb.setLength(size);
+         break;
+      default:
+         throw new IllegalArgumentException("Unknown profile " + profile);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Counts the characters of a message.
+    *
+    * @param message The message.
+    * @return Counts indexed by character.
+    */
+   public static long[] counts(String message) {
+      long[] counts = new long[Character.MAX_VALUE + 1];
+      int max = 0;
+      for (int i = 0; i < message.length(); i++) {
+         char c = message.charAt(i);
+         counts[c]++;
+         max = Math.max(max, c);
+      }
+      return Arrays.copyOf(counts, max + 1);
+   }
+
+   /**
+    * Generates priority queue keys.
+    *
+    * @param order "random", "ascending" or "descending".
+    * @param size  Number of keys.
+    * @return The keys, boxed as the queues store them.
+    * @throws IllegalArgumentException if the order is unknown.
+    */
+   public static Long[] keys(String order, int size) {
+      Random random = new Random(SEED);
+      Long[] keys = new Long[size];
+      for (int i = 0; i < size; i++) {
+         switch (order) {
+         case "random":
+            keys[i] = random.nextLong();
+            break;
+         case "ascending":
+            keys[i] = (long) i;
+            break;
+         case "descending":
+            keys[i] = (long) (size - i);
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown order " + order);
+         }
+      }
+      return keys;
+   }
+}
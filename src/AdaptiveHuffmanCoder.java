@@ -0,0 +1,305 @@
+import java.util.Arrays;
+
+/**
+ * The AdaptiveHuffmanCoder class implements adaptive Huffman coding with the
+ * FGK algorithm (Faller, Gallager and Knuth), so data can be coded in a single
+ * pass with no frequency table sent ahead. Encoder and decoder each start from
+ * a tree holding only the NYT ("not yet transmitted") leaf and update their
+ * tree identically after every symbol, so they stay in step without exchanging
+ * anything but the coded bits.
+ *
+ * A symbol seen before is sent as the path to its leaf. A new symbol is sent as
+ * the path to the NYT leaf followed by the symbol itself in a fixed number of
+ * bits, after which the NYT leaf splits into a new NYT leaf and a leaf for the
+ * symbol. After each symbol the weights along its path are incremented, first
+ * swapping each node with the highest-numbered node of equal weight so that
+ * the sibling property (nodes listed by number have non-decreasing weights,
+ * and siblings are adjacent) keeps the tree a Huffman tree.
+ *
+ * Nodes are kept in parallel arrays indexed by their number, with the root at
+ * the highest number. Swapping two nodes exchanges what sits at two numbers
+ * while the numbers keep their places in the tree, so an update allocates
+ * nothing and only the links of the swapped nodes' children change.
+ *
+ * @author jam
+ *
+ */
+public class AdaptiveHuffmanCoder {
+
+   private final int alphabetSize;
+   // Number of bits used to send a new symbol.
+   private final int rawBits;
+   private final int root;
+
+   // Per node number: weight, parent, children (-1 for a leaf) and symbol
+   // (-1 for an internal node).
+   private final long[] weight;
+   private final int[] parent;
+   private final int[] left;
+   private final int[] right;
+   private final int[] symbol;
+   // Node number of each symbol's leaf, or -1 if not yet seen.
+   private final int[] leafOf;
+   private int nyt;
+
+   // Decoder state between bits.
+   private int decodeNode;
+   private int rawCount;
+   private int rawValue;
+
+   // Scratch for the bits of one codeword, leaf to root.
+   private final int[] path;
+
+   /**
+    * Creates a coder for the symbols 0 to alphabetSize - 1.
+    *
+    * @param alphabetSize Number of symbols, from 2 to 2^24.
+    */
+   public AdaptiveHuffmanCoder(int alphabetSize) {
+      if (alphabetSize < 2 || alphabetSize > 1 << 24) {
+         throw new IllegalArgumentException(
+               "Unsupported alphabet size " + alphabetSize);
+      }
+      this.alphabetSize = alphabetSize;
+      rawBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+      // n leaves, n internal nodes and the NYT leaf.
+      int nodes = 2 * alphabetSize + 1;
+      root = nodes - 1;
+      weight = new long[nodes];
+      parent = new int[nodes];
+      left = new int[nodes];
+      right = new int[nodes];
+      symbol = new int[nodes];
+      leafOf = new int[alphabetSize];
+      path = new int[nodes];
+      reset();
+   }
+
+   /**
+    * Forgets every symbol seen, returning to the initial tree.
+    */
+   public void reset() {
+      Arrays.fill(leafOf, -1);
+      nyt = root;
+      parent[root] = -1;
+      left[root] = -1;
+      right[root] = -1;
+      symbol[root] = -1;
+      weight[root] = 0;
+      startSymbol();
+   }
+
+   /**
+    * Number of symbols coded by this coder.
+    *
+    * @return the alphabet size.
+    */
+   public int getAlphabetSize() {
+      return alphabetSize;
+   }
+
+   /**
+    * Writes the code of a symbol and updates the tree.
+    *
+    * @param s   The symbol.
+    * @param out The BitWriter receiving the bits.
+    * @throws IllegalArgumentException if the symbol is out of range.
+    */
+   public void encode(int s, BitWriter out) {
+      if (s < 0 || s >= alphabetSize) {
+         throw new IllegalArgumentException("Symbol " + s
+               + " is outside the alphabet");
+      }
+      int leaf = leafOf[s];
+      writePath(leaf >= 0 ? leaf : nyt, out);
+      if (leaf < 0) {
+         out.writeBits(s, rawBits);
+      }
+      update(s);
+   }
+
+   /**
+    * Decodes one symbol and updates the tree.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits name a symbol outside the
+    *                                  alphabet.
+    */
+   public int decode(BitReader in) {
+      int s;
+      do {
+         s = decodeBit(in.readBit());
+      } while (s < 0);
+      return s;
+   }
+
+   /**
+    * Feeds the decoder one bit, for callers that receive the stream a bit at
+    * a time. Once a whole codeword has arrived the tree is updated and its
+    * symbol returned.
+    *
+    * @param bit The next bit, 0 or 1.
+    * @return The decoded symbol, or -1 if more bits are needed.
+    * @throws IllegalArgumentException if the bits name a symbol outside the
+    *                                  alphabet.
+    */
+   public int decodeBit(int bit) {
+      if (decodeNode == nyt) {
+         rawValue = (rawValue << 1) | bit;
+         if (++rawCount < rawBits) {
+            return -1;
+         }
+         int s = rawValue;
+         if (s >= alphabetSize || leafOf[s] >= 0) {
+            throw new IllegalArgumentException("Invalid code in stream");
+         }
+         update(s);
+         startSymbol();
+         return s;
+      }
+      decodeNode = bit == 0 ? left[decodeNode] : right[decodeNode];
+      if (decodeNode == nyt || left[decodeNode] >= 0) {
+         return -1;
+      }
+      int s = symbol[decodeNode];
+      update(s);
+      startSymbol();
+      return s;
+   }
+
+   /**
+    * Whether the decoder is between symbols, with no partial codeword fed
+    * to decodeBit.
+    *
+    * @return true at a symbol boundary.
+    */
+   public boolean atSymbolBoundary() {
+      return decodeNode == root && rawCount == 0;
+   }
+
+   /**
+    * Code length the tree would currently give a symbol, counting the raw
+    * bits of a symbol not yet seen.
+    *
+    * @param s The symbol.
+    * @return The number of bits.
+    */
+   public int codeLength(int s) {
+      int leaf = leafOf[s];
+      int len = depth(leaf >= 0 ? leaf : nyt);
+      return leaf >= 0 ? len : len + rawBits;
+   }
+
+   /**
+    * Readies the decoder for the next codeword.
+    */
+   private void startSymbol() {
+      decodeNode = root;
+      rawCount = 0;
+      rawValue = 0;
+   }
+
+   private int depth(int node) {
+      int d = 0;
+      for (; node != root; node = parent[node]) {
+         d++;
+      }
+      return d;
+   }
+
+   /**
+    * Writes the path from the root to a node.
+    */
+   private void writePath(int node, BitWriter out) {
+      int n = 0;
+      for (; node != root; node = parent[node]) {
+         path[n++] = right[parent[node]] == node ? 1 : 0;
+      }
+      while (n > 0) {
+         out.writeBit(path[--n]);
+      }
+   }
+
+   /**
+    * Adds one occurrence of a symbol to the tree.
+    */
+   private void update(int s) {
+      int q = leafOf[s];
+      if (q < 0) {
+         // Split the NYT leaf: its left child is the new NYT leaf and its
+         // right child the leaf for s.
+         int oldNyt = nyt;
+         int leaf = oldNyt - 1;
+         nyt = oldNyt - 2;
+         left[oldNyt] = nyt;
+         right[oldNyt] = leaf;
+         symbol[oldNyt] = -1;
+         initLeaf(nyt, oldNyt, -1);
+         initLeaf(leaf, oldNyt, s);
+         leafOf[s] = leaf;
+         q = leaf;
+      }
+      while (q != -1) {
+         // The highest-numbered node of the same weight.
+         int leader = q;
+         while (leader + 1 <= root && weight[leader + 1] == weight[q]) {
+            leader++;
+         }
+         if (leader != q && leader != parent[q]) {
+            swap(q, leader);
+            q = leader;
+         }
+         weight[q]++;
+         q = parent[q];
+      }
+   }
+
+   private void initLeaf(int node, int p, int s) {
+      weight[node] = 0;
+      parent[node] = p;
+      left[node] = -1;
+      right[node] = -1;
+      symbol[node] = s;
+   }
+
+   /**
+    * Exchanges the subtrees at two node numbers; each number keeps its
+    * parent.
+    */
+   private void swap(int a, int b) {
+      long w = weight[a];
+      weight[a] = weight[b];
+      weight[b] = w;
+      int t = left[a];
+      left[a] = left[b];
+      left[b] = t;
+      t = right[a];
+      right[a] = right[b];
+      right[b] = t;
+      t = symbol[a];
+      symbol[a] = symbol[b];
+      symbol[b] = t;
+      relink(a);
+      relink(b);
+      if (nyt == a) {
+         nyt = b;
+      }
+      else if (nyt == b) {
+         nyt = a;
+      }
+   }
+
+   /**
+    * Points the children or symbol of the node at number n back at n.
+    */
+   private void relink(int n) {
+      if (left[n] >= 0) {
+         parent[left[n]] = n;
+         parent[right[n]] = n;
+      }
+      else if (symbol[n] >= 0) {
+         leafOf[symbol[n]] = n;
+      }
+   }
+}
@@ -0,0 +1,168 @@
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The AdaptiveHuffmanInputStream class decompresses a stream written by
+ * AdaptiveHuffmanOutputStream as it arrives. Compressed bytes are taken from
+ * the underlying stream one at a time and only when a codeword needs them, so
+ * the stream never blocks waiting for data past a flush point that it does
+ * not yet need.
+ *
+ * @author jam
+ *
+ */
+public class AdaptiveHuffmanInputStream extends FilterInputStream {
+
+   private final AdaptiveHuffmanCoder coder = new AdaptiveHuffmanCoder(
+         AdaptiveHuffmanOutputStream.ALPHABET_SIZE);
+   // The compressed byte being decoded and how many of its bits are left.
+   private int current;
+   private int bitsLeft;
+   private boolean eof;
+   private boolean closed;
+
+   /**
+    * Creates a stream that decompresses the bytes read from in.
+    *
+    * @param in The compressed stream.
+    */
+   public AdaptiveHuffmanInputStream(InputStream in) {
+      super(in);
+   }
+
+   /**
+    * Reads one byte, blocking until it has been decoded.
+    *
+    * @return The byte, or -1 at the end of the stream.
+    * @throws IOException if the stream fails or is corrupt.
+    */
+   @Override
+   public int read() throws IOException {
+      ensureOpen();
+      return next(true);
+   }
+
+   /**
+    * Reads up to len bytes into part of an array. Blocks only until at least
+    * one byte has been decoded; after that, decoding stops once the
+    * compressed bytes already received run out.
+    *
+    * @param b   Array receiving the bytes.
+    * @param off Index of the first byte.
+    * @param len Maximum number of bytes.
+    * @return The number of bytes read, or -1 at the end of the stream.
+    * @throws IOException if the stream fails or is corrupt.
+    */
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if ((off | len | (b.length - off - len)) < 0) {
+         throw new IndexOutOfBoundsException();
+      }
+      if (len == 0) {
+         return 0;
+      }
+      int n = 0;
+      while (n < len) {
+         int c = next(n == 0);
+         if (c < 0) {
+            break;
+         }
+         b[off + n++] = (byte) c;
+      }
+      return n == 0 ? -1 : n;
+   }
+
+   /**
+    * Number of bytes that can be read without blocking. Decoded bytes are not
+    * buffered, so this is 0 unless the stream has ended.
+    *
+    * @return 0.
+    * @throws IOException if the stream is closed.
+    */
+   @Override
+   public int available() throws IOException {
+      ensureOpen();
+      return 0;
+   }
+
+   /**
+    * Mark and reset are not supported.
+    *
+    * @return false.
+    */
+   @Override
+   public boolean markSupported() {
+      return false;
+   }
+
+   @Override
+   public synchronized void mark(int readlimit) {
+   }
+
+   @Override
+   public synchronized void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+   }
+
+   /**
+    * Closes the underlying stream.
+    *
+    * @throws IOException if the stream fails to close.
+    */
+   @Override
+   public void close() throws IOException {
+      if (!closed) {
+         closed = true;
+         in.close();
+      }
+   }
+
+   /**
+    * Decodes the next byte, skipping flush points.
+    *
+    * @param block Whether to wait for compressed bytes not yet received.
+    * @return The byte, or -1 at the end of the stream, or -2 if block is
+    *         false and the byte is not yet available.
+    */
+   private int next(boolean block) throws IOException {
+      while (!eof) {
+         if (bitsLeft == 0) {
+            if (!block && in.available() <= 0) {
+               return -2;
+            }
+            current = in.read();
+            if (current < 0) {
+               throw new EOFException("Compressed stream is truncated");
+            }
+            bitsLeft = 8;
+         }
+         int symbol;
+         try {
+            symbol = coder.decodeBit((current >>> --bitsLeft) & 1);
+         }
+         catch (IllegalArgumentException e) {
+            throw new IOException("Compressed stream is corrupt", e);
+         }
+         if (symbol == AdaptiveHuffmanOutputStream.FLUSH) {
+            // The rest of the byte is padding.
+            bitsLeft = 0;
+         }
+         else if (symbol == AdaptiveHuffmanOutputStream.END) {
+            eof = true;
+         }
+         else if (symbol >= 0) {
+            return symbol;
+         }
+      }
+      return -1;
+   }
+
+   private void ensureOpen() throws IOException {
+      if (closed) {
+         throw new IOException("Stream closed");
+      }
+   }
+}
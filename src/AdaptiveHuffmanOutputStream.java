@@ -0,0 +1,158 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The AdaptiveHuffmanOutputStream class compresses the bytes written to it in
+ * a single pass with an AdaptiveHuffmanCoder, for data such as a live socket
+ * stream that cannot be buffered into blocks or read twice. No table is sent;
+ * the code adapts as bytes go by.
+ *
+ * Besides the 256 byte values the coder's alphabet holds two control symbols:
+ * FLUSH, written by flush and followed by zero bits up to a byte boundary, and
+ * END, written by finish. Everything written before a flush can therefore be
+ * decoded by the reader as soon as the flushed bytes arrive, so latency is
+ * bounded by how often the writer flushes.
+ *
+ * @author jam
+ *
+ */
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+
+   /**
+    * Symbol that marks a flush point; the rest of its byte is padding.
+    */
+   static final int FLUSH = 256;
+   /**
+    * Symbol that ends the stream.
+    */
+   static final int END = 257;
+   /**
+    * Number of symbols coded: the byte values, FLUSH and END.
+    */
+   static final int ALPHABET_SIZE = 258;
+
+   private final AdaptiveHuffmanCoder coder =
+         new AdaptiveHuffmanCoder(ALPHABET_SIZE);
+   private final BitWriter bits;
+   private boolean finished;
+
+   /**
+    * Creates a stream writing compressed bytes to out.
+    *
+    * @param out The stream receiving the compressed bytes.
+    */
+   public AdaptiveHuffmanOutputStream(OutputStream out) {
+      super(out);
+      bits = new BitWriter(out);
+   }
+
+   /**
+    * Writes one byte.
+    *
+    * @param b The byte, in the low 8 bits.
+    * @throws IOException if the stream fails or is finished.
+    */
+   @Override
+   public void write(int b) throws IOException {
+      ensureOpen();
+      encode(b & 0xFF);
+   }
+
+   /**
+    * Writes part of an array.
+    *
+    * @param b   The bytes to write.
+    * @param off Index of the first byte.
+    * @param len Number of bytes.
+    * @throws IOException if the stream fails or is finished.
+    */
+   @Override
+   public void write(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if ((off | len | (b.length - off - len)) < 0) {
+         throw new IndexOutOfBoundsException();
+      }
+      try {
+         for (int i = off; i < off + len; i++) {
+            coder.encode(b[i] & 0xFF, bits);
+         }
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Writes a flush point and hands every compressed byte to the underlying
+    * stream, which is then flushed. The reader can decode all bytes written
+    * so far once it has received them. Each flush costs a FLUSH code and up
+    * to 7 bits of padding. Once the stream is finished, only the underlying
+    * stream is flushed.
+    *
+    * @throws IOException if the stream fails.
+    */
+   @Override
+   public void flush() throws IOException {
+      if (finished) {
+         out.flush();
+         return;
+      }
+      encode(FLUSH);
+      drain();
+   }
+
+   /**
+    * Writes the end of the stream without closing the underlying stream.
+    *
+    * @throws IOException if the stream fails.
+    */
+   public void finish() throws IOException {
+      if (finished) {
+         return;
+      }
+      encode(END);
+      drain();
+      finished = true;
+   }
+
+   /**
+    * Writes the end of the stream and closes the underlying stream.
+    *
+    * @throws IOException if the stream fails.
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         finish();
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   private void encode(int symbol) throws IOException {
+      try {
+         coder.encode(symbol, bits);
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   private void drain() throws IOException {
+      try {
+         bits.flush();
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   private void ensureOpen() throws IOException {
+      if (finished) {
+         throw new IOException("Stream is finished");
+      }
+   }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveHuffmanTest {
+
+   @Test
+   void coderRoundTripTest() {
+      Random random = new Random(3);
+      int[] symbols = new int[50_000];
+      for (int i = 0; i < symbols.length; i++) {
+         // Skewed, with every symbol of a 300-symbol alphabet turning up.
+         symbols[i] = i < 300 ? i
+               : Math.min(299, (int) Math.abs(random.nextGaussian() * 20));
+      }
+      AdaptiveHuffmanCoder encoder = new AdaptiveHuffmanCoder(300);
+      BitWriter out = new BitWriter();
+      for (int s : symbols) {
+         encoder.encode(s, out);
+      }
+      byte[] packed = out.toByteArray();
+      AdaptiveHuffmanCoder decoder = new AdaptiveHuffmanCoder(300);
+      BitReader in = new BitReader(packed);
+      int[] decoded = new int[symbols.length];
+      for (int i = 0; i < decoded.length; i++) {
+         decoded[i] = decoder.decode(in);
+      }
+      assertArrayEquals(symbols, decoded);
+      assertEquals(out.bitLength(), in.bitsRead());
+      assertTrue(decoder.atSymbolBoundary());
+      // Far fewer than the 9 bits a fixed code would need.
+      assertTrue(out.bitLength() < 6L * symbols.length);
+   }
+
+   @Test
+   void adaptsTest() {
+      AdaptiveHuffmanCoder coder = new AdaptiveHuffmanCoder(256);
+      BitWriter out = new BitWriter();
+      // An unseen symbol costs the NYT path plus 8 raw bits.
+      assertEquals(8, coder.codeLength('a'));
+      for (int i = 0; i < 100; i++) {
+         coder.encode('a', out);
+      }
+      coder.encode('b', out);
+      coder.encode('c', out);
+      assertEquals(1, coder.codeLength('a'));
+      assertTrue(coder.codeLength('b') > 1);
+      coder.reset();
+      assertEquals(8, coder.codeLength('a'));
+   }
+
+   @Test
+   void streamRoundTripTest() throws IOException {
+      byte[] data = TestData.skewedLetters(100_000, 1, 6);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (AdaptiveHuffmanOutputStream out =
+            new AdaptiveHuffmanOutputStream(compressed)) {
+         out.write(data, 0, 1000);
+         out.write(data[1000]);
+         out.write(data, 1001, data.length - 1001);
+      }
+      assertTrue(compressed.size() < data.length / 2);
+      try (InputStream in = new AdaptiveHuffmanInputStream(
+            new ByteArrayInputStream(compressed.toByteArray()))) {
+         assertArrayEquals(data, in.readAllBytes());
+         assertEquals(-1, in.read());
+      }
+   }
+
+   @Test
+   void flushTest() throws IOException {
+      byte[] data = TestData.skewedLetters(5000, 2, 6);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      AdaptiveHuffmanOutputStream out =
+            new AdaptiveHuffmanOutputStream(compressed);
+      out.write(data, 0, 3000);
+      out.flush();
+      byte[] prefix = compressed.toByteArray();
+      // Everything before the flush decodes from the bytes sent so far;
+      // reading past them would fail as a truncated stream.
+      ByteArrayInputStream partial = new ByteArrayInputStream(prefix);
+      InputStream in = new AdaptiveHuffmanInputStream(partial);
+      byte[] head = new byte[3000];
+      int n = 0;
+      while (n < head.length) {
+         n += in.read(head, n, head.length - n);
+      }
+      assertArrayEquals(Arrays.copyOf(data, 3000), head);
+      out.write(data, 3000, 2000);
+      out.flush();
+      out.flush();
+      out.finish();
+      // Flushing a finished stream, as a wrapper closing it would, adds
+      // nothing; writing still fails.
+      int size = compressed.size();
+      out.flush();
+      out.close();
+      assertEquals(size, compressed.size());
+      assertThrows(IOException.class, () -> out.write(1));
+      try (InputStream all = new AdaptiveHuffmanInputStream(
+            new ByteArrayInputStream(compressed.toByteArray()))) {
+         assertArrayEquals(data, all.readAllBytes());
+      }
+   }
+
+   @Test
+   void corruptStreamTest() throws IOException {
+      AdaptiveHuffmanCoder coder = new AdaptiveHuffmanCoder(200);
+      // The first symbol is sent raw in 8 bits; 255 is outside the
+      // alphabet.
+      BitReader in = new BitReader(new byte[] { (byte) 0xFF });
+      assertThrows(IllegalArgumentException.class, () -> coder.decode(in));
+      assertThrows(IllegalArgumentException.class,
+            () -> new AdaptiveHuffmanCoder(1));
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (AdaptiveHuffmanOutputStream out =
+            new AdaptiveHuffmanOutputStream(compressed)) {
+         out.write(TestData.skewedLetters(1000, 3, 6));
+      }
+      byte[] truncated = Arrays.copyOf(compressed.toByteArray(),
+            compressed.size() / 2);
+      InputStream stream = new AdaptiveHuffmanInputStream(
+            new ByteArrayInputStream(truncated));
+      assertThrows(IOException.class, stream::readAllBytes);
+   }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
 /**
  * The BinaryTree class
@@ -36,7 +39,6 @@ public class BinaryTree<E> {
       }
    }
 
-   private String traversalResult = " ";
    protected boolean addReturn;
    protected int size;
    protected Node<E> root;
@@ -115,21 +117,212 @@ public class BinaryTree<E> {
 //      preOrder(root.right);
 //   }
 
-   private String preOrder(Node<E> root) {
+   /**
+    * Lists the data of every node in preorder, each followed by " -> ",
+    * after a leading space. Nodes without data are skipped.
+    *
+    * @return The preorder listing.
+    */
+   public String printPreOrder() {
+      StringBuilder sb = new StringBuilder(" ");
+      try {
+         printPreOrder(sb);
+      }
+      catch (IOException e) {
+         // StringBuilder does not fail.
+         throw new IllegalStateException(e);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Writes the data of every node in preorder to out, each followed by
+    * " -> ". Nodes without data are skipped. The walk is iterative, so deep
+    * trees do not overflow the stack.
+    *
+    * @param out The Appendable receiving the listing.
+    * @return out.
+    * @throws IOException if out fails.
+    */
+   public <A extends Appendable> A printPreOrder(A out)
+         throws IOException {
+      try {
+         preOrder((data, depth) -> {
+            if (data != null) {
+               try {
+                  out.append(data.toString()).append(" -> ");
+               }
+               catch (IOException e) {
+                  throw new UncheckedIOException(e);
+               }
+            }
+         });
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+      return out;
+   }
+
+   /**
+    * Receives the nodes of a traversal.
+    *
+    * @param <E> The type of data in the tree.
+    */
+   @FunctionalInterface
+   public interface Visitor<E> {
+      /**
+       * Called once for each node.
+       *
+       * @param data  The data of the node.
+       * @param depth Depth of the node; the root is at 0.
+       */
+      void visit(E data, int depth);
+   }
+
+   /**
+    * Visits every node in preorder without creating subtree wrappers. The
+    * walk is iterative, keeping pending right children on an array stack.
+    *
+    * @param visitor The visitor.
+    */
+   public void preOrder(Visitor<? super E> visitor) {
       if (root == null) {
-         return " ";
+         return;
       }
-      if (root.data != null) {
-         traversalResult = (traversalResult + root.data.toString()
-               + " -> ");
+      @SuppressWarnings("unchecked")
+      Node<E>[] nodes = (Node<E>[]) new Node<?>[16];
+      int[] depths = new int[16];
+      int top = 0;
+      nodes[top] = root;
+      depths[top++] = 0;
+      while (top > 0) {
+         Node<E> node = nodes[--top];
+         int depth = depths[top];
+         nodes[top] = null;
+         visitor.visit(node.data, depth);
+         if (top + 2 > nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            depths = Arrays.copyOf(depths, depths.length * 2);
+         }
+         if (node.right != null) {
+            nodes[top] = node.right;
+            depths[top++] = depth + 1;
+         }
+         if (node.left != null) {
+            nodes[top] = node.left;
+            depths[top++] = depth + 1;
+         }
       }
-      preOrder(root.left);
-      preOrder(root.right);
-      return traversalResult;
    }
 
-   public String printPreOrder() {
-      return preOrder(this.root);
+   /**
+    * Creates a cursor positioned at the root.
+    *
+    * @return a new Cursor.
+    */
+   public Cursor<E> cursor() {
+      return new Cursor<>(root);
+   }
+
+   /**
+    * A position in the tree that moves from node to node in place, so
+    * walking the tree creates no objects. The path back to the root is kept
+    * so the cursor can also move up.
+    *
+    * @param <E> The type of data in the tree.
+    */
+   public static class Cursor<E> {
+
+      private final Node<E> root;
+      private Node<E>[] path;
+      private int depth;
+
+      @SuppressWarnings("unchecked")
+      Cursor(Node<E> root) {
+         this.root = root;
+         path = (Node<E>[]) new Node<?>[16];
+         path[0] = root;
+      }
+
+      /**
+       * Data of the current node.
+       *
+       * @return the data, or null for an empty tree.
+       */
+      public E getData() {
+         return path[depth] == null ? null : path[depth].data;
+      }
+
+      /**
+       * Whether the current node has no children.
+       *
+       * @return true for a leaf or an empty tree.
+       */
+      public boolean isLeaf() {
+         Node<E> node = path[depth];
+         return node == null || (node.left == null && node.right == null);
+      }
+
+      /**
+       * Depth of the current node.
+       *
+       * @return the depth; the root is at 0.
+       */
+      public int depth() {
+         return depth;
+      }
+
+      /**
+       * Moves to the left child.
+       *
+       * @return false, without moving, if there is no left child.
+       */
+      public boolean left() {
+         return down(path[depth] == null ? null : path[depth].left);
+      }
+
+      /**
+       * Moves to the right child.
+       *
+       * @return false, without moving, if there is no right child.
+       */
+      public boolean right() {
+         return down(path[depth] == null ? null : path[depth].right);
+      }
+
+      /**
+       * Moves to the parent.
+       *
+       * @return false, without moving, at the root.
+       */
+      public boolean up() {
+         if (depth == 0) {
+            return false;
+         }
+         path[depth--] = null;
+         return true;
+      }
+
+      /**
+       * Moves back to the root.
+       */
+      public void reset() {
+         Arrays.fill(path, 1, depth + 1, null);
+         depth = 0;
+         path[0] = root;
+      }
+
+      private boolean down(Node<E> child) {
+         if (child == null) {
+            return false;
+         }
+         if (++depth == path.length) {
+            path = Arrays.copyOf(path, path.length * 2);
+         }
+         path[depth] = child;
+         return true;
+      }
    }
 
    /**
@@ -1,6 +1,9 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+
 import org.junit.Test;
 
 public class BinaryTreeTest {
@@ -39,4 +42,70 @@ public class BinaryTreeTest {
             null);
       assertTrue(testTree.isLeaf());
    }
+
+   @Test
+   public void repeatedPreOrderTest() throws IOException {
+      BinaryTree<Integer> tree = new BinaryTree<Integer>(1,
+            new BinaryTree<Integer>(2, null, null),
+            new BinaryTree<Integer>(3, null, null));
+      assertEquals(" 1 -> 2 -> 3 -> ", tree.printPreOrder());
+      // The listing no longer grows from one call to the next.
+      assertEquals(" 1 -> 2 -> 3 -> ", tree.printPreOrder());
+      assertEquals("1 -> 2 -> 3 -> ",
+            tree.printPreOrder(new StringBuilder()).toString());
+   }
+
+   @Test
+   public void visitorTest() {
+      BinaryTree<Integer> tree = new BinaryTree<Integer>(1,
+            new BinaryTree<Integer>(2,
+                  new BinaryTree<Integer>(4, null, null), null),
+            new BinaryTree<Integer>(3, null, null));
+      StringBuilder sb = new StringBuilder();
+      tree.preOrder((data, depth) -> sb.append(data).append('@')
+            .append(depth).append(' '));
+      assertEquals("1@0 2@1 4@2 3@1 ", sb.toString());
+   }
+
+   @Test
+   public void cursorTest() {
+      BinaryTree<Integer> tree = new BinaryTree<Integer>(1,
+            new BinaryTree<Integer>(2,
+                  new BinaryTree<Integer>(4, null, null), null),
+            new BinaryTree<Integer>(3, null, null));
+      BinaryTree.Cursor<Integer> cursor = tree.cursor();
+      assertEquals(1, cursor.getData());
+      assertFalse(cursor.up());
+      assertTrue(cursor.left());
+      assertFalse(cursor.right());
+      assertTrue(cursor.left());
+      assertEquals(4, cursor.getData());
+      assertEquals(2, cursor.depth());
+      assertTrue(cursor.isLeaf());
+      assertTrue(cursor.up());
+      assertEquals(2, cursor.getData());
+      cursor.reset();
+      assertTrue(cursor.right());
+      assertEquals(3, cursor.getData());
+   }
+
+   @Test
+   public void deepTreeTest() {
+      // Deep enough to overflow the stack of a recursive walk.
+      BinaryTree<Integer> tree = new BinaryTree<Integer>(0, null, null);
+      for (int i = 1; i < 100_000; i++) {
+         tree = new BinaryTree<Integer>(i, tree, null);
+      }
+      int[] count = new int[2];
+      tree.preOrder((data, depth) -> {
+         count[0]++;
+         count[1] = Math.max(count[1], depth);
+      });
+      assertEquals(100_000, count[0]);
+      assertEquals(99_999, count[1]);
+      BinaryTree.Cursor<Integer> cursor = tree.cursor();
+      while (cursor.left()) {
+      }
+      assertEquals(0, cursor.getData());
+   }
 }
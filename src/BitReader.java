@@ -0,0 +1,137 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The BitReader class reads the packed, most significant bit first streams
+ * produced by BitWriter. Bytes are loaded into a left-aligned 64-bit window so
+ * that callers can peek at up to 56 upcoming bits at once; reading past the end
+ * of the data yields zero bits. The bytes may come from an array or from a
+ * ByteBuffer, such as a memory-mapped region of a file.
+ *
+ * @author jam
+ *
+ */
+public class BitReader {
+
+   private final byte[] data;
+   // Source of the bytes when they are not in an array.
+   private final ByteBuffer buffer;
+   private int position;
+   private final int limit;
+   // Upcoming bits, left-aligned.
+   private long window;
+   // Number of valid bits in the window.
+   private int windowBits;
+   // Number of bits handed out so far.
+   private long bitsRead;
+
+   /**
+    * Creates a BitReader over a whole byte array.
+    *
+    * @param data Packed bytes.
+    */
+   public BitReader(byte[] data) {
+      this(data, 0, data.length);
+   }
+
+   /**
+    * Creates a BitReader over part of a byte array.
+    *
+    * @param data   Packed bytes.
+    * @param offset Index of the first byte to read.
+    * @param length Number of bytes to read.
+    */
+   public BitReader(byte[] data, int offset, int length) {
+      this.data = data;
+      this.buffer = null;
+      this.position = offset;
+      this.limit = offset + length;
+   }
+
+   /**
+    * Creates a BitReader over the remaining bytes of a buffer. The buffer's
+    * position is not changed.
+    *
+    * @param buffer Packed bytes.
+    */
+   public BitReader(ByteBuffer buffer) {
+      this.data = null;
+      this.buffer = buffer;
+      this.position = buffer.position();
+      this.limit = buffer.limit();
+   }
+
+   /**
+    * Returns the next n bits without consuming them.
+    *
+    * @param n Number of bits, from 1 to 56.
+    * @return The bits, right-aligned.
+    */
+   public long peekBits(int n) {
+      if (windowBits < n) {
+         refill();
+      }
+      return window >>> (64 - n);
+   }
+
+   /**
+    * Consumes n bits that have already been peeked at.
+    *
+    * @param n Number of bits, no more than the last peek.
+    */
+   public void skipBits(int n) {
+      window <<= n;
+      windowBits -= n;
+      bitsRead += n;
+   }
+
+   /**
+    * Reads and consumes the next n bits.
+    *
+    * @param n Number of bits, from 0 to 64.
+    * @return The bits, right-aligned.
+    */
+   public long readBits(int n) {
+      if (n == 0) {
+         return 0;
+      }
+      if (n > 56) {
+         long high = readBits(n - 32);
+         return (high << 32) | readBits(32);
+      }
+      long bits = peekBits(n);
+      skipBits(n);
+      return bits;
+   }
+
+   /**
+    * Reads and consumes a single bit.
+    *
+    * @return 0 or 1.
+    */
+   public int readBit() {
+      return (int) readBits(1);
+   }
+
+   /**
+    * Number of bits consumed so far.
+    *
+    * @return the bit position in the stream.
+    */
+   public long bitsRead() {
+      return bitsRead;
+   }
+
+   /**
+    * Tops the window up to at least 57 bits, or as many as remain.
+    */
+   private void refill() {
+      while (windowBits <= 56) {
+         if (position < limit) {
+            byte b = data != null ? data[position++] : buffer.get(position++);
+            window |= (b & 0xFFL) << (56 - windowBits);
+         }
+         // Past the end the window is padded with zero bits.
+         windowBits += 8;
+      }
+   }
+}
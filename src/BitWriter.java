@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * The BitWriter class packs variable-length codewords into bytes, most
+ * significant bit first, so the packed stream reads in the same order as the
+ * '0'/'1' Strings produced by HuffmanTree.encodeMessage. Bits are gathered in a
+ * 64-bit accumulator and drained a byte at a time into an internal buffer,
+ * which either grows (when no sink is given) or is flushed to an OutputStream
+ * when full.
+ *
+ * @author jam
+ *
+ */
+public class BitWriter {
+
+   // Default size of the internal byte buffer.
+   private static final int DEFAULT_CAPACITY = 8192;
+
+   // Pending bits, right-aligned in the accumulator.
+   private long bitBuffer;
+   // Number of pending bits in the accumulator (always less than 8 between
+   // calls).
+   private int bitCount;
+   // Packed bytes not yet handed to the sink.
+   private byte[] buffer;
+   private int position;
+   // Total number of bits written so far.
+   private long bitLength;
+   // Optional sink; when null the buffer grows instead.
+   private final OutputStream out;
+
+   /**
+    * Creates a BitWriter that collects its output in a growable byte array.
+    */
+   public BitWriter() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Creates a BitWriter that collects its output in a growable byte array of
+    * the given initial capacity.
+    *
+    * @param capacity Initial size of the byte array.
+    */
+   public BitWriter(int capacity) {
+      buffer = new byte[Math.max(capacity, 16)];
+      out = null;
+   }
+
+   /**
+    * Creates a BitWriter that drains packed bytes to an OutputStream.
+    *
+    * @param out The stream receiving the packed bytes.
+    */
+   public BitWriter(OutputStream out) {
+      buffer = new byte[DEFAULT_CAPACITY];
+      this.out = out;
+   }
+
+   /**
+    * Appends the low len bits of code, most significant bit first.
+    *
+    * @param code The bits to write, right-aligned.
+    * @param len  Number of bits to write, from 0 to 64.
+    */
+   public void writeBits(long code, int len) {
+      if (len > 56) {
+         // Split so the accumulator never holds more than 64 bits.
+         writeBits(code >>> 32, len - 32);
+         len = 32;
+      }
+      if (len <= 0) {
+         return;
+      }
+      bitBuffer = (bitBuffer << len) | (code & (-1L >>> (64 - len)));
+      bitCount += len;
+      bitLength += len;
+      while (bitCount >= 8) {
+         bitCount -= 8;
+         put((byte) (bitBuffer >>> bitCount));
+      }
+   }
+
+   /**
+    * Appends a single bit.
+    *
+    * @param bit 0 or 1.
+    */
+   public void writeBit(int bit) {
+      writeBits(bit, 1);
+   }
+
+   /**
+    * Pads the final partial byte with zero bits and hands all packed bytes to
+    * the sink, if there is one.
+    */
+   public void flush() {
+      if (bitCount > 0) {
+         put((byte) (bitBuffer << (8 - bitCount)));
+         bitCount = 0;
+      }
+      if (out != null) {
+         drain();
+         try {
+            out.flush();
+         }
+         catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      }
+   }
+
+   /**
+    * Number of bits written so far, not counting any padding added by flush.
+    *
+    * @return the bit length of the stream.
+    */
+   public long bitLength() {
+      return bitLength;
+   }
+
+   /**
+    * Flushes and returns the packed bytes collected by this writer.
+    *
+    * @return A copy of the packed bytes.
+    * @throws IllegalStateException if this writer drains to an OutputStream.
+    */
+   public byte[] toByteArray() {
+      if (out != null) {
+         throw new IllegalStateException(
+               "Output was written to a stream");
+      }
+      flush();
+      return Arrays.copyOf(buffer, position);
+   }
+
+   /**
+    * Stores one byte, draining or growing the buffer when it is full.
+    *
+    * @param b The byte to store.
+    */
+   private void put(byte b) {
+      if (position == buffer.length) {
+         if (out != null) {
+            drain();
+         }
+         else {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+         }
+      }
+      buffer[position++] = b;
+   }
+
+   /**
+    * Writes the buffered bytes to the OutputStream.
+    */
+   private void drain() {
+      try {
+         out.write(buffer, 0, position);
+      }
+      catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+      position = 0;
+   }
+}
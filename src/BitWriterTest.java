@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class BitWriterTest {
+
+   @Test
+   void writeBitsTest() {
+      BitWriter out = new BitWriter();
+      out.writeBits(0b101, 3);
+      out.writeBits(0b00001, 5);
+      out.writeBits(0b11, 2);
+      assertEquals(10, out.bitLength());
+      assertArrayEquals(new byte[] { (byte) 0xA1, (byte) 0xC0 },
+            out.toByteArray());
+   }
+
+   @Test
+   void longCodeTest() {
+      BitWriter out = new BitWriter(16);
+      out.writeBits(-1L, 64);
+      out.writeBits(0x123456789ABCDEFL, 60);
+      out.writeBit(0);
+      BitReader in = new BitReader(out.toByteArray());
+      assertEquals(-1L, in.readBits(64));
+      assertEquals(0x123456789ABCDEFL, in.readBits(60));
+      assertEquals(0, in.readBit());
+      assertEquals(125, in.bitsRead());
+   }
+
+   @Test
+   void streamSinkTest() {
+      ByteArrayOutputStream sink = new ByteArrayOutputStream();
+      BitWriter out = new BitWriter(sink);
+      for (int i = 0; i < 10000; i++) {
+         out.writeBits(i & 0x7F, 7);
+      }
+      out.flush();
+      assertEquals(8750, sink.size());
+      BitReader in = new BitReader(sink.toByteArray());
+      for (int i = 0; i < 10000; i++) {
+         assertEquals(i & 0x7F, in.readBits(7));
+      }
+   }
+}
@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * The ByteArrayChannel class is a read-only SeekableByteChannel over an
+ * array, so archives held in memory can be opened like files.
+ *
+ * @author jam
+ *
+ */
+class ByteArrayChannel implements SeekableByteChannel {
+
+   private final byte[] data;
+   private int position;
+   private boolean open = true;
+
+   ByteArrayChannel(byte[] data) {
+      this.data = data;
+   }
+
+   @Override
+   public int read(ByteBuffer dst) {
+      if (position >= data.length) {
+         return -1;
+      }
+      int n = Math.min(dst.remaining(), data.length - position);
+      dst.put(data, position, n);
+      position += n;
+      return n;
+   }
+
+   @Override
+   public int write(ByteBuffer src) throws IOException {
+      throw new IOException("Read-only channel");
+   }
+
+   @Override
+   public long position() {
+      return position;
+   }
+
+   @Override
+   public SeekableByteChannel position(long newPosition) {
+      position = (int) Math.min(newPosition, data.length);
+      return this;
+   }
+
+   @Override
+   public long size() {
+      return data.length;
+   }
+
+   @Override
+   public SeekableByteChannel truncate(long size) throws IOException {
+      throw new IOException("Read-only channel");
+   }
+
+   @Override
+   public boolean isOpen() {
+      return open;
+   }
+
+   @Override
+   public void close() {
+      open = false;
+   }
+}
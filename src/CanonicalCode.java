@@ -0,0 +1,374 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The CanonicalCode class derives Huffman codewords purely from the code length
+ * of each symbol: symbols are ordered by (length, symbol) and handed
+ * consecutive codewords, so the same lengths always give the same codes no
+ * matter how the tree that produced them broke ties. Only the lengths need to
+ * be stored, and decoding can use the first-code/offset arrays of each length
+ * rather than a tree.
+ *
+ * The serialized form is: the number of coded symbols (varint), the longest
+ * code length (one byte), the gaps between successive coded symbols (varints),
+ * then the lengths in symbol order, two to a byte when no length exceeds 15 and
+ * one to a byte otherwise.
+ *
+ * @author jam
+ *
+ */
+public class CanonicalCode {
+
+   /**
+    * Longest code length that can be represented.
+    */
+   public static final int MAX_LENGTH = 64;
+   /**
+    * Most symbols a table read by read may hold: enough for every Unicode
+    * code point.
+    */
+   public static final int MAX_SYMBOLS = 1 << 21;
+
+   // Coded symbols, in canonical (length, symbol) order.
+   private final int[] symbols;
+   private final byte[] lengths;
+   private final long[] codes;
+   private final int maxLength;
+   // For each length: the first codeword, the number of codewords, and the
+   // index of the first such symbol in symbols.
+   private final long[] firstCode;
+   private final int[] count;
+   private final int[] offset;
+
+   /**
+    * Builds the canonical code for the given symbols and lengths.
+    *
+    * @param symbols The coded symbols, in any order, without duplicates.
+    * @param lengths Code length of each symbol, from 1 to MAX_LENGTH.
+    * @throws IllegalArgumentException if the lengths do not form a prefix
+    *                                  code.
+    */
+   public CanonicalCode(int[] symbols, byte[] lengths) {
+      int n = symbols.length;
+      if (lengths.length != n) {
+         throw new IllegalArgumentException(
+               "Expected " + n + " lengths but got " + lengths.length);
+      }
+      // Sort by (length, symbol) via packed keys.
+      long[] keys = new long[n];
+      for (int i = 0; i < n; i++) {
+         if (lengths[i] < 1 || lengths[i] > MAX_LENGTH) {
+            throw new IllegalArgumentException("Symbol " + symbols[i]
+                  + " has invalid code length " + lengths[i]);
+         }
+         if (symbols[i] < 0) {
+            throw new IllegalArgumentException(
+                  "Negative symbol " + symbols[i]);
+         }
+         keys[i] = ((long) lengths[i] << 32) | symbols[i];
+      }
+      Arrays.sort(keys);
+      this.symbols = new int[n];
+      this.lengths = new byte[n];
+      for (int i = 0; i < n; i++) {
+         this.symbols[i] = (int) keys[i];
+         this.lengths[i] = (byte) (keys[i] >>> 32);
+      }
+      int[] sorted = this.symbols.clone();
+      Arrays.sort(sorted);
+      for (int i = 1; i < n; i++) {
+         if (sorted[i] == sorted[i - 1]) {
+            throw new IllegalArgumentException(
+                  "Duplicate symbol " + sorted[i]);
+         }
+      }
+      maxLength = n == 0 ? 0 : this.lengths[n - 1];
+
+      count = new int[maxLength + 1];
+      for (byte len : this.lengths) {
+         count[len]++;
+      }
+      // Kraft inequality: the lengths must leave room for every codeword.
+      long left = 1;
+      for (int len = 1; len <= maxLength; len++) {
+         left = Math.min(left << 1, n + 1L) - count[len];
+         if (left < 0) {
+            throw new IllegalArgumentException(
+                  "Code lengths oversubscribe the code space");
+         }
+      }
+
+      firstCode = new long[maxLength + 1];
+      offset = new int[maxLength + 1];
+      long code = 0;
+      int index = 0;
+      for (int len = 1; len <= maxLength; len++) {
+         code = (code + count[len - 1]) << 1;
+         firstCode[len] = code;
+         offset[len] = index;
+         index += count[len];
+      }
+      codes = new long[n];
+      for (int i = 0; i < n; i++) {
+         int len = this.lengths[i];
+         codes[i] = firstCode[len] + (i - offset[len]);
+      }
+   }
+
+   /**
+    * Builds the canonical code from lengths indexed by symbol.
+    *
+    * @param lengths Code length of each symbol; 0 for symbols without a code.
+    * @return The canonical code.
+    */
+   public static CanonicalCode fromLengths(byte[] lengths) {
+      int n = 0;
+      for (byte len : lengths) {
+         if (len != 0) {
+            n++;
+         }
+      }
+      int[] symbols = new int[n];
+      byte[] coded = new byte[n];
+      n = 0;
+      for (int s = 0; s < lengths.length; s++) {
+         if (lengths[s] != 0) {
+            symbols[n] = s;
+            coded[n++] = lengths[s];
+         }
+      }
+      return new CanonicalCode(symbols, coded);
+   }
+
+   /**
+    * Number of coded symbols.
+    *
+    * @return the alphabet size.
+    */
+   public int size() {
+      return symbols.length;
+   }
+
+   /**
+    * Longest code length.
+    *
+    * @return the maximum length, or 0 for an empty code.
+    */
+   public int getMaxLength() {
+      return maxLength;
+   }
+
+   /**
+    * The i-th symbol in canonical order.
+    *
+    * @param i Index from 0 to size() - 1.
+    * @return the symbol.
+    */
+   public int getSymbol(int i) {
+      return symbols[i];
+   }
+
+   /**
+    * Code length of the i-th symbol in canonical order.
+    *
+    * @param i Index from 0 to size() - 1.
+    * @return the code length.
+    */
+   public int getLength(int i) {
+      return lengths[i];
+   }
+
+   /**
+    * Codeword of the i-th symbol in canonical order, right-aligned.
+    *
+    * @param i Index from 0 to size() - 1.
+    * @return the codeword.
+    */
+   public long getCode(int i) {
+      return codes[i];
+   }
+
+   /**
+    * Builds a lookup table decoder for this code.
+    *
+    * @return a HuffmanDecodeTable.
+    * @throws IllegalArgumentException if a code is longer than
+    *                                  HuffmanDecodeTable.MAX_CODE_LENGTH.
+    */
+   public HuffmanDecodeTable toDecodeTable() {
+      return new HuffmanDecodeTable(symbols, codes, lengths);
+   }
+
+   /**
+    * Decodes one symbol using the first-code/offset arrays: the codeword is
+    * read a bit at a time until it falls within the run of codewords of its
+    * length.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public int decodeSymbol(BitReader in) {
+      long code = 0;
+      for (int len = 1; len <= maxLength; len++) {
+         code = (code << 1) | in.readBit();
+         long index = code - firstCode[len];
+         if (Long.compareUnsigned(index, count[len]) < 0) {
+            return symbols[offset[len] + (int) index];
+         }
+      }
+      throw new IllegalArgumentException("Invalid code in stream");
+   }
+
+   /**
+    * Writes the code lengths in the compact serialized form.
+    *
+    * @param out The stream to write to.
+    * @throws IOException if the stream fails.
+    */
+   public void write(OutputStream out) throws IOException {
+      int n = symbols.length;
+      // Lengths go out in symbol order so the gaps stay small.
+      long[] bySymbol = new long[n];
+      for (int i = 0; i < n; i++) {
+         bySymbol[i] = ((long) symbols[i] << 8) | lengths[i];
+      }
+      Arrays.sort(bySymbol);
+      writeVarint(out, n);
+      out.write(maxLength);
+      int previous = -1;
+      for (long entry : bySymbol) {
+         int symbol = (int) (entry >>> 8);
+         writeVarint(out, symbol - previous - 1);
+         previous = symbol;
+      }
+      if (maxLength <= 15) {
+         for (int i = 0; i < n; i += 2) {
+            int high = (int) (bySymbol[i] & 0xFF);
+            int low = i + 1 < n ? (int) (bySymbol[i + 1] & 0xFF) : 0;
+            out.write((high << 4) | low);
+         }
+      }
+      else {
+         for (long entry : bySymbol) {
+            out.write((int) (entry & 0xFF));
+         }
+      }
+   }
+
+   /**
+    * Serialized size of this code, in bytes.
+    *
+    * @return the number of bytes write produces.
+    */
+   public int serializedSize() {
+      int size = varintSize(symbols.length) + 1;
+      int[] sorted = symbols.clone();
+      Arrays.sort(sorted);
+      int previous = -1;
+      for (int symbol : sorted) {
+         size += varintSize(symbol - previous - 1);
+         previous = symbol;
+      }
+      return size + (maxLength <= 15 ? (symbols.length + 1) / 2
+            : symbols.length);
+   }
+
+   /**
+    * Reads code lengths written by write and rebuilds the code.
+    *
+    * @param in The stream to read from.
+    * @return The canonical code.
+    * @throws IOException if the stream fails, ends early or holds an invalid
+    *                     table, such as one with a symbol above
+    *                     Character.MAX_CODE_POINT.
+    */
+   public static CanonicalCode read(InputStream in) throws IOException {
+      int n = readVarint(in);
+      int maxLength = readByte(in);
+      // Checked before allocating, so a corrupt count cannot demand
+      // gigabytes. A prefix code has at most 2^maxLength codewords.
+      if (n > MAX_SYMBOLS || (n > 0 && (maxLength < 1
+            || maxLength > MAX_LENGTH
+            || (maxLength < 21 && n > 1 << maxLength)))) {
+         throw new IOException("Corrupt code length table: " + n
+               + " symbols of up to " + maxLength + " bits");
+      }
+      int[] symbols = new int[n];
+      byte[] lengths = new byte[n];
+      int previous = -1;
+      for (int i = 0; i < n; i++) {
+         previous += readVarint(in) + 1;
+         // Symbols are code points; decode tables hold no more.
+         if (previous < 0 || previous > Character.MAX_CODE_POINT) {
+            throw new IOException("Corrupt code length table: symbol "
+                  + previous);
+         }
+         symbols[i] = previous;
+      }
+      if (maxLength <= 15) {
+         for (int i = 0; i < n; i += 2) {
+            int b = readByte(in);
+            lengths[i] = (byte) (b >>> 4);
+            if (i + 1 < n) {
+               lengths[i + 1] = (byte) (b & 0x0F);
+            }
+         }
+      }
+      else {
+         for (int i = 0; i < n; i++) {
+            lengths[i] = (byte) readByte(in);
+         }
+      }
+      try {
+         return new CanonicalCode(symbols, lengths);
+      }
+      catch (IllegalArgumentException e) {
+         throw new IOException("Corrupt code length table", e);
+      }
+   }
+
+   static void writeVarint(OutputStream out, int value)
+         throws IOException {
+      while ((value & ~0x7F) != 0) {
+         out.write((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      out.write(value);
+   }
+
+   static int readVarint(InputStream in) throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+         int b = readByte(in);
+         value |= (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            if (value < 0) {
+               break;
+            }
+            return value;
+         }
+      }
+      throw new IOException("Malformed varint");
+   }
+
+   private static int varintSize(int value) {
+      int size = 1;
+      while ((value & ~0x7F) != 0) {
+         value >>>= 7;
+         size++;
+      }
+      return size;
+   }
+
+   private static int readByte(InputStream in) throws IOException {
+      int b = in.read();
+      if (b < 0) {
+         throw new EOFException("Truncated code length table");
+      }
+      return b;
+   }
+}
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class CanonicalCodeTest {
+
+   @Test
+   void assignCodesTest() {
+      // Lengths from the DEFLATE specification example: A-H.
+      byte[] lengths = new byte['I'];
+      byte[] example = { 3, 3, 3, 3, 3, 2, 4, 4 };
+      for (int i = 0; i < example.length; i++) {
+         lengths['A' + i] = example[i];
+      }
+      CanonicalCode code = CanonicalCode.fromLengths(lengths);
+      assertEquals(8, code.size());
+      assertEquals('F', code.getSymbol(0));
+      assertEquals(0b00, code.getCode(0));
+      assertEquals('A', code.getSymbol(1));
+      assertEquals(0b010, code.getCode(1));
+      assertEquals('E', code.getSymbol(5));
+      assertEquals(0b110, code.getCode(5));
+      assertEquals('H', code.getSymbol(7));
+      assertEquals(0b1111, code.getCode(7));
+   }
+
+   @Test
+   void decodeSymbolTest() {
+      CanonicalCode code = new CanonicalCode(new int[] { 'x', 'y', 'z' },
+            new byte[] { 2, 1, 2 });
+      BitWriter out = new BitWriter();
+      // y = 0, x = 10, z = 11
+      out.writeBits(0b011100, 6);
+      BitReader in = new BitReader(out.toByteArray());
+      assertEquals('y', code.decodeSymbol(in));
+      assertEquals('z', code.decodeSymbol(in));
+      assertEquals('x', code.decodeSymbol(in));
+      assertEquals('y', code.decodeSymbol(in));
+   }
+
+   @Test
+   void serializeTest() throws IOException {
+      byte[] lengths = new byte[300];
+      lengths[3] = 2;
+      lengths[4] = 2;
+      lengths[200] = 2;
+      lengths[299] = 3;
+      lengths[250] = 3;
+      CanonicalCode code = CanonicalCode.fromLengths(lengths);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      code.write(out);
+      assertEquals(code.serializedSize(), out.size());
+      CanonicalCode read = CanonicalCode
+            .read(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals(code.size(), read.size());
+      for (int i = 0; i < code.size(); i++) {
+         assertEquals(code.getSymbol(i), read.getSymbol(i));
+         assertEquals(code.getCode(i), read.getCode(i));
+      }
+   }
+
+   @Test
+   void oversubscribedTest() {
+      assertThrows(IllegalArgumentException.class,
+            () -> new CanonicalCode(new int[] { 1, 2, 3 },
+                  new byte[] { 1, 1, 1 }));
+   }
+
+   @Test
+   void corruptCountTest() {
+      // Two billion symbols claimed by a five-byte table.
+      byte[] huge = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 15 };
+      assertThrows(IOException.class,
+            () -> CanonicalCode.read(new ByteArrayInputStream(huge)));
+      // More symbols than codes of the longest length allow.
+      byte[] crowded = { 9, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+      assertThrows(IOException.class,
+            () -> CanonicalCode.read(new ByteArrayInputStream(crowded)));
+      byte[] tooLong = { 1, 65, 0, 1 };
+      assertThrows(IOException.class,
+            () -> CanonicalCode.read(new ByteArrayInputStream(tooLong)));
+      // One symbol at 0x400000, which a decode table would wrap to 0.
+      byte[] farSymbol = { 1, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x02,
+            0x10 };
+      assertThrows(IOException.class,
+            () -> CanonicalCode.read(new ByteArrayInputStream(farSymbol)));
+   }
+}
@@ -0,0 +1,343 @@
+import java.util.Arrays;
+
+/**
+ * The CodeLengths class computes optimal Huffman code lengths from symbol
+ * counts in linear time, without building a tree or a priority queue. The
+ * counts are sorted with a radix sort of packed (count, symbol) keys, and the
+ * lengths are then computed in place over the sorted weights with the
+ * algorithm of Moffat and Katajainen ("In-Place Calculation of
+ * Minimum-Redundancy Codes", 1995), which walks the sorted leaves and the
+ * internal nodes as two FIFO queues.
+ *
+ * An instance keeps its scratch arrays, so rebuilding codes block after block
+ * allocates nothing after construction.
+ *
+ * @author jam
+ *
+ */
+public class CodeLengths {
+
+   private final int symbolBits;
+   private final long[] keys;
+   private final long[] scratch;
+   private final long[] weights;
+   private final int[] count = new int[256];
+   // Lengths handed out by scratchLengths.
+   private final byte[] lengths;
+
+   /**
+    * Creates a calculator for alphabets of up to alphabetSize symbols.
+    *
+    * @param alphabetSize Number of symbols, from 1 to 2^24.
+    */
+   public CodeLengths(int alphabetSize) {
+      if (alphabetSize < 1 || alphabetSize > 1 << 24) {
+         throw new IllegalArgumentException(
+               "Unsupported alphabet size " + alphabetSize);
+      }
+      symbolBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(
+            alphabetSize - 1));
+      keys = new long[alphabetSize];
+      scratch = new long[alphabetSize];
+      weights = new long[alphabetSize];
+      lengths = new byte[alphabetSize];
+   }
+
+   /**
+    * Largest alphabet this calculator handles.
+    *
+    * @return the alphabet size it was created for.
+    */
+   public int getAlphabetSize() {
+      return keys.length;
+   }
+
+   /**
+    * An array of getAlphabetSize() lengths owned by the calculator, for a
+    * caller that needs the lengths of one build only until the next. Its
+    * contents are left over from earlier use.
+    *
+    * @return the scratch array.
+    */
+   byte[] scratchLengths() {
+      return lengths;
+   }
+
+   /**
+    * Computes the code length of every symbol. Symbols with a count of 0 get
+    * length 0; a lone symbol gets length 1.
+    *
+    * @param counts  Counts indexed by symbol.
+    * @param lengths Array receiving the lengths, indexed by symbol.
+    * @return The longest code length.
+    * @throws IllegalArgumentException if a count is negative or too large to
+    *                                  pack with a symbol.
+    * @throws IllegalStateException    if a code would be longer than
+    *                                  CanonicalCode.MAX_LENGTH.
+    */
+   public int compute(long[] counts, byte[] lengths) {
+      int longest = huffman(counts, lengths);
+      if (longest > CanonicalCode.MAX_LENGTH) {
+         throw new IllegalStateException("Code length " + longest
+               + " exceeds " + CanonicalCode.MAX_LENGTH);
+      }
+      return longest;
+   }
+
+   /**
+    * Computes unrestricted Huffman code lengths, which may exceed
+    * CanonicalCode.MAX_LENGTH, leaving the sorted keys in place.
+    */
+   private int huffman(long[] counts, byte[] lengths) {
+      int n = 0;
+      long limit = 1L << (63 - symbolBits);
+      for (int s = 0; s < counts.length; s++) {
+         lengths[s] = 0;
+         if (counts[s] != 0) {
+            if (counts[s] < 0 || counts[s] >= limit) {
+               throw new IllegalArgumentException(
+                     "Count " + counts[s] + " out of range");
+            }
+            keys[n++] = (counts[s] << symbolBits) | s;
+         }
+      }
+      if (n == 0) {
+         return 0;
+      }
+      long symbolMask = (1L << symbolBits) - 1;
+      if (n == 1) {
+         lengths[(int) (keys[0] & symbolMask)] = 1;
+         return 1;
+      }
+      radixSort(n);
+      for (int i = 0; i < n; i++) {
+         weights[i] = keys[i] >>> symbolBits;
+      }
+      minimumRedundancy(weights, n);
+      // The first (lightest) symbol has the longest code.
+      for (int i = 0; i < n; i++) {
+         lengths[(int) (keys[i] & symbolMask)] = (byte) weights[i];
+      }
+      return (int) weights[0];
+   }
+
+   /**
+    * Computes the code length of every symbol with no code longer than
+    * maxLength. When the unrestricted Huffman code already fits it is used
+    * as is; otherwise the optimal limited lengths are found by package-merge.
+    *
+    * @param counts    Counts indexed by symbol.
+    * @param lengths   Array receiving the lengths, indexed by symbol.
+    * @param maxLength Longest code length allowed.
+    * @return The longest code length.
+    * @throws IllegalArgumentException if the coded symbols do not fit in
+    *                                  codes of maxLength bits.
+    */
+   public int compute(long[] counts, byte[] lengths, int maxLength) {
+      int longest = huffman(counts, lengths);
+      if (longest <= maxLength) {
+         return longest;
+      }
+      // keys still holds the sorted (count, symbol) pairs.
+      int n = 0;
+      for (long count : counts) {
+         if (count != 0) {
+            n++;
+         }
+      }
+      double[] sorted = new double[n];
+      for (int i = 0; i < n; i++) {
+         sorted[i] = keys[i] >>> symbolBits;
+      }
+      byte[] limited = new byte[n];
+      packageMerge(sorted, n, maxLength, limited);
+      long symbolMask = (1L << symbolBits) - 1;
+      for (int i = 0; i < n; i++) {
+         lengths[(int) (keys[i] & symbolMask)] = limited[i];
+      }
+      return limited[0];
+   }
+
+   /**
+    * Finds optimal code lengths of at most maxLength bits for n weights sorted
+    * in ascending order, using the package-merge algorithm of Larmore and
+    * Hirschberg. Starting from the leaves at the deepest level, each level's
+    * list is the leaves merged with packages formed by pairing adjacent items
+    * of the level below; the 2n - 2 cheapest items of the top list are
+    * selected, and each leaf's code length is the number of levels at which
+    * it falls inside the selection.
+    *
+    * @param weights   Weights in ascending order.
+    * @param n         Number of weights.
+    * @param maxLength Longest code length allowed.
+    * @param lengths   Array receiving the lengths, in the order of weights.
+    * @throws IllegalArgumentException if n symbols do not fit in codes of
+    *                                  maxLength bits.
+    */
+   public static void packageMerge(double[] weights, int n, int maxLength,
+         byte[] lengths) {
+      if (maxLength < 1 || maxLength > CanonicalCode.MAX_LENGTH
+            || (maxLength < 31 && n > 1 << maxLength)) {
+         throw new IllegalArgumentException(n + " symbols do not fit in "
+               + maxLength + "-bit codes");
+      }
+      Arrays.fill(lengths, 0, n, (byte) 0);
+      if (n == 1) {
+         lengths[0] = 1;
+         return;
+      }
+      // isLeaf[level][i] tells whether item i of that level's list is a leaf;
+      // level maxLength - 1 is the deepest and holds only the leaves.
+      boolean[][] isLeaf = new boolean[maxLength][];
+      double[] previous = Arrays.copyOf(weights, n);
+      int previousSize = n;
+      isLeaf[maxLength - 1] = new boolean[n];
+      Arrays.fill(isLeaf[maxLength - 1], true);
+      double[] current = new double[2 * n];
+      for (int level = maxLength - 2; level >= 0; level--) {
+         int packages = previousSize / 2;
+         int size = n + packages;
+         boolean[] leafFlags = new boolean[size];
+         int leaf = 0;
+         int pack = 0;
+         for (int i = 0; i < size; i++) {
+            double packageWeight = pack < packages
+                  ? previous[2 * pack] + previous[2 * pack + 1]
+                  : Double.POSITIVE_INFINITY;
+            if (leaf < n && weights[leaf] <= packageWeight) {
+               current[i] = weights[leaf++];
+               leafFlags[i] = true;
+            }
+            else {
+               current[i] = packageWeight;
+               pack++;
+            }
+         }
+         isLeaf[level] = leafFlags;
+         double[] t = previous.length >= current.length ? previous
+               : new double[2 * n];
+         previous = current;
+         current = t;
+         previousSize = size;
+      }
+      // Walk down from the top, expanding selected packages into the pairs
+      // they were made from.
+      int selected = 2 * n - 2;
+      for (int level = 0; level < maxLength && selected > 0; level++) {
+         boolean[] leafFlags = isLeaf[level];
+         int leaves = 0;
+         for (int i = 0; i < selected; i++) {
+            if (leafFlags[i]) {
+               leaves++;
+            }
+         }
+         // The cheapest leaves are always chosen first.
+         for (int i = 0; i < leaves; i++) {
+            lengths[i]++;
+         }
+         selected = 2 * (selected - leaves);
+      }
+   }
+
+   /**
+    * Sorts keys[0..n) with a byte-wise LSD radix sort, skipping the high bytes
+    * that are zero in every key.
+    */
+   private void radixSort(int n) {
+      long max = 0;
+      for (int i = 0; i < n; i++) {
+         max |= keys[i];
+      }
+      long[] from = keys;
+      long[] to = scratch;
+      for (int shift = 0; shift < 64 && (max >>> shift) != 0; shift += 8) {
+         Arrays.fill(count, 0);
+         for (int i = 0; i < n; i++) {
+            count[(int) (from[i] >>> shift) & 0xFF]++;
+         }
+         int sum = 0;
+         for (int d = 0; d < 256; d++) {
+            int c = count[d];
+            count[d] = sum;
+            sum += c;
+         }
+         for (int i = 0; i < n; i++) {
+            to[count[(int) (from[i] >>> shift) & 0xFF]++] = from[i];
+         }
+         long[] t = from;
+         from = to;
+         to = t;
+      }
+      if (from != keys) {
+         System.arraycopy(from, 0, keys, 0, n);
+      }
+   }
+
+   /**
+    * Replaces the n weights in a, which must be sorted in ascending order,
+    * with the lengths of an optimal prefix code for them, using no memory
+    * beyond the array itself. A single weight gets length 0.
+    *
+    * The first pass merges the lightest leaf or internal node twice for each
+    * internal node, storing parent indices; the second turns parent indices
+    * into internal node depths; the third hands out leaf depths.
+    *
+    * @param a Weights in ascending order; lengths on return.
+    * @param n Number of weights.
+    */
+   public static void minimumRedundancy(long[] a, int n) {
+      if (n == 0) {
+         return;
+      }
+      if (n == 1) {
+         a[0] = 0;
+         return;
+      }
+      // First pass, left to right, setting parent pointers.
+      a[0] += a[1];
+      int root = 0;
+      int leaf = 2;
+      for (int next = 1; next < n - 1; next++) {
+         // Select the first item for a pairing.
+         if (leaf >= n || a[root] < a[leaf]) {
+            a[next] = a[root];
+            a[root++] = next;
+         }
+         else {
+            a[next] = a[leaf++];
+         }
+         // Add on the second item.
+         if (leaf >= n || (root < next && a[root] < a[leaf])) {
+            a[next] += a[root];
+            a[root++] = next;
+         }
+         else {
+            a[next] += a[leaf++];
+         }
+      }
+      // Second pass, right to left, setting internal depths.
+      a[n - 2] = 0;
+      for (int next = n - 3; next >= 0; next--) {
+         a[next] = a[(int) a[next]] + 1;
+      }
+      // Third pass, right to left, setting leaf depths.
+      int available = 1;
+      int used = 0;
+      int depth = 0;
+      root = n - 2;
+      int next = n - 1;
+      while (available > 0) {
+         while (root >= 0 && a[root] == depth) {
+            used++;
+            root--;
+         }
+         while (available > used) {
+            a[next--] = depth;
+            available--;
+         }
+         available = 2 * used;
+         depth++;
+         used = 0;
+      }
+   }
+}
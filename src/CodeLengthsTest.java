@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CodeLengthsTest {
+
+   @Test
+   void minimumRedundancyTest() {
+      long[] a = { 1, 1, 2, 3, 5, 8, 13 };
+      CodeLengths.minimumRedundancy(a, a.length);
+      assertArrayEquals(new long[] { 6, 6, 5, 4, 3, 2, 1 }, a);
+   }
+
+   @Test
+   void computeTest() {
+      long[] counts = new long[8];
+      counts[2] = 22;
+      counts[5] = 5;
+      counts[7] = 5;
+      counts[0] = 8;
+      counts[3] = 2;
+      byte[] lengths = new byte[8];
+      assertEquals(4, new CodeLengths(8).compute(counts, lengths));
+      assertArrayEquals(new byte[] { 2, 0, 1, 4, 0, 4, 0, 3 }, lengths);
+   }
+
+   @Test
+   void singleSymbolTest() {
+      long[] counts = { 0, 0, 9 };
+      byte[] lengths = new byte[3];
+      assertEquals(1, new CodeLengths(3).compute(counts, lengths));
+      assertArrayEquals(new byte[] { 0, 0, 1 }, lengths);
+   }
+
+   @Test
+   void matchesQueueCostTest() {
+      // The total encoded size must equal that of the priority queue build.
+      Random random = new Random(11);
+      CodeLengths calculator = new CodeLengths(256);
+      byte[] lengths = new byte[256];
+      for (int round = 0; round < 20; round++) {
+         long[] counts = new long[256];
+         HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[256];
+         for (int s = 0; s < 256; s++) {
+            counts[s] = 1 + random.nextInt(1 << random.nextInt(20));
+            symbols[s] = new HuffmanTree.SymbolNodeData(counts[s], s);
+         }
+         HuffmanTree ht = new HuffmanTree();
+         ht.buildTree(symbols);
+         calculator.compute(counts, lengths);
+         long expected = 0;
+         long actual = 0;
+         for (int s = 0; s < 256; s++) {
+            expected += counts[s] * ht.codeLengths[s];
+            actual += counts[s] * lengths[s];
+         }
+         assertEquals(expected, actual);
+      }
+   }
+
+   @Test
+   void packageMergeTest() {
+      double[] weights = { 1, 1, 2, 4 };
+      byte[] lengths = new byte[4];
+      CodeLengths.packageMerge(weights, 4, 3, lengths);
+      assertArrayEquals(new byte[] { 3, 3, 2, 1 }, lengths);
+      CodeLengths.packageMerge(weights, 4, 2, lengths);
+      assertArrayEquals(new byte[] { 2, 2, 2, 2 }, lengths);
+   }
+
+   @Test
+   void limitedComputeTest() {
+      // Fibonacci counts give a 24-deep code without a limit.
+      long[] counts = new long[25];
+      counts[0] = 1;
+      counts[1] = 1;
+      for (int s = 2; s < counts.length; s++) {
+         counts[s] = counts[s - 1] + counts[s - 2];
+      }
+      byte[] lengths = new byte[counts.length];
+      CodeLengths calculator = new CodeLengths(counts.length);
+      assertEquals(24, calculator.compute(counts, lengths));
+      assertEquals(11, calculator.compute(counts, lengths, 11));
+      double kraft = 0;
+      for (byte len : lengths) {
+         assertTrue(len >= 1 && len <= 11);
+         kraft += Math.pow(2, -len);
+      }
+      assertEquals(1.0, kraft, 1e-12);
+   }
+
+   @Test
+   void tooManySymbolsTest() {
+      assertThrows(IllegalArgumentException.class,
+            () -> CodeLengths.packageMerge(new double[5], 5, 2,
+                  new byte[5]));
+   }
+}
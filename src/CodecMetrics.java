@@ -0,0 +1,53 @@
+/**
+ * The CodecMetrics interface receives a record of every tree build, encode
+ * and decode a HuffmanTree performs, for monitoring throughput, latency and
+ * compression ratio. Every method does nothing by default, so an
+ * implementation only overrides what it tracks. Methods may be called from
+ * many threads at once and should return quickly.
+ *
+ * @author jam
+ *
+ */
+public interface CodecMetrics {
+
+   /**
+    * Metrics that record nothing; the default of every HuffmanTree.
+    */
+   CodecMetrics NONE = new CodecMetrics() {
+   };
+
+   /**
+    * Records a tree build.
+    *
+    * @param nanos       Time taken.
+    * @param symbolCount Number of symbols given a code.
+    * @param weight      Sum of the symbol frequencies, or 0 when the tree
+    *                    was built from a code without them.
+    * @param codeBits    Frequency-weighted sum of the code lengths.
+    * @param entropyBits Frequency-weighted Shannon entropy of the symbols,
+    *                    the lower bound for codeBits.
+    */
+   default void recordBuild(long nanos, int symbolCount, double weight,
+         double codeBits, double entropyBits) {
+   }
+
+   /**
+    * Records an encode call.
+    *
+    * @param nanos   Time taken.
+    * @param symbols Number of symbols read.
+    * @param bits    Number of bits written.
+    */
+   default void recordEncode(long nanos, long symbols, long bits) {
+   }
+
+   /**
+    * Records a decode call.
+    *
+    * @param nanos   Time taken.
+    * @param bits    Number of bits read.
+    * @param symbols Number of symbols written.
+    */
+   default void recordDecode(long nanos, long bits, long symbols) {
+   }
+}
@@ -0,0 +1,129 @@
+/**
+ * The CodecMetricsMXBean interface is the JMX view of LongAdderCodecMetrics.
+ * Latencies are in nanoseconds and percentiles are accurate to within a
+ * factor of two; throughputs are in symbols, which for byte data are bytes,
+ * per second of time spent in the codec.
+ *
+ * @author jam
+ *
+ */
+public interface CodecMetricsMXBean {
+
+   /**
+    * @return the number of trees built.
+    */
+   long getBuildCount();
+
+   /**
+    * @return the number of encode calls.
+    */
+   long getEncodeCount();
+
+   /**
+    * @return the number of decode calls.
+    */
+   long getDecodeCount();
+
+   /**
+    * @return the number of symbols encoded.
+    */
+   long getSymbolsEncoded();
+
+   /**
+    * @return the number of bits written by encoding.
+    */
+   long getBitsEncoded();
+
+   /**
+    * @return the number of symbols decoded.
+    */
+   long getSymbolsDecoded();
+
+   /**
+    * @return the number of bits read by decoding.
+    */
+   long getBitsDecoded();
+
+   /**
+    * @return the compression ratio of the encoded data against one byte per
+    *         symbol, or 0 before anything is encoded.
+    */
+   double getCompressionRatio();
+
+   /**
+    * @return the bits per symbol spent by encoding.
+    */
+   double getAverageCodeLength();
+
+   /**
+    * @return the bits per symbol the built trees spend on the counts they
+    *         were built from.
+    */
+   double getExpectedCodeLength();
+
+   /**
+    * @return the entropy, in bits per symbol, of the counts the trees were
+    *         built from.
+    */
+   double getEntropy();
+
+   /**
+    * @return the symbols encoded per second of encoding.
+    */
+   double getEncodeThroughput();
+
+   /**
+    * @return the symbols decoded per second of decoding.
+    */
+   double getDecodeThroughput();
+
+   /**
+    * @return the median build time.
+    */
+   long getBuildNanosP50();
+
+   /**
+    * @return the 99th percentile build time.
+    */
+   long getBuildNanosP99();
+
+   /**
+    * @return the longest build time.
+    */
+   long getBuildNanosMax();
+
+   /**
+    * @return the median encode time.
+    */
+   long getEncodeNanosP50();
+
+   /**
+    * @return the 99th percentile encode time.
+    */
+   long getEncodeNanosP99();
+
+   /**
+    * @return the longest encode time.
+    */
+   long getEncodeNanosMax();
+
+   /**
+    * @return the median decode time.
+    */
+   long getDecodeNanosP50();
+
+   /**
+    * @return the 99th percentile decode time.
+    */
+   long getDecodeNanosP99();
+
+   /**
+    * @return the longest decode time.
+    */
+   long getDecodeNanosMax();
+
+   /**
+    * Clears every counter and histogram.
+    */
+   void reset();
+}
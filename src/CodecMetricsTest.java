@@ -0,0 +1,204 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CodecMetricsTest {
+
+   private static final byte[] TEXT = ("it was the best of times, it was the "
+         + "worst of times, it was the age of wisdom, it was the age of "
+         + "foolishness").getBytes(StandardCharsets.US_ASCII);
+
+   @Test
+   void defaultTest() {
+      HuffmanTree tree = HuffmanTree.forBytes(TEXT);
+      assertSame(CodecMetrics.NONE, tree.getMetrics());
+      tree.setMetrics(null);
+      assertSame(CodecMetrics.NONE, tree.getMetrics());
+   }
+
+   @Test
+   void recordTest() {
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      HuffmanTree tree = new HuffmanTree();
+      tree.setMetrics(metrics);
+      tree.buildTree(FrequencyCounter.countBytes(TEXT));
+      assertEquals(1, metrics.getBuildCount());
+      // Huffman codes come within a bit per symbol of the entropy.
+      double entropy = metrics.getEntropy();
+      assertTrue(entropy > 0);
+      assertTrue(metrics.getExpectedCodeLength() >= entropy);
+      assertTrue(metrics.getExpectedCodeLength() < entropy + 1);
+
+      BitWriter out = new BitWriter();
+      long bits = tree.encodeBytes(TEXT, out);
+      byte[] packed = out.toByteArray();
+      assertArrayEquals(TEXT, tree.decodeBytes(packed, bits));
+      assertEquals(1, metrics.getEncodeCount());
+      assertEquals(1, metrics.getDecodeCount());
+      assertEquals(TEXT.length, metrics.getSymbolsEncoded());
+      assertEquals(bits, metrics.getBitsEncoded());
+      assertEquals(TEXT.length, metrics.getSymbolsDecoded());
+      assertEquals(bits, metrics.getBitsDecoded());
+      assertEquals(8.0 * TEXT.length / bits, metrics.getCompressionRatio(),
+            1e-9);
+      // The encoded text is the text the tree was built from.
+      assertEquals(metrics.getExpectedCodeLength(),
+            metrics.getAverageCodeLength(), 1e-9);
+      assertTrue(metrics.getEncodeNanosMax() > 0);
+      assertTrue(metrics.getDecodeThroughput() > 0);
+
+      metrics.reset();
+      assertEquals(0, metrics.getBuildCount());
+      assertEquals(0, metrics.getCompressionRatio());
+   }
+
+   @Test
+   void delegatingCallsTest() {
+      // Overloads that forward to one another record a single call.
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      HuffmanTree tree = new HuffmanTree();
+      tree.setMetrics(metrics);
+      HuffmanTree.SymbolNodeData[] symbols = {
+            new HuffmanTree.SymbolNodeData(5, 'A'),
+            new HuffmanTree.SymbolNodeData(2, 'B'),
+            new HuffmanTree.SymbolNodeData(1, 'C') };
+      tree.buildTree(symbols, 1 << 10);
+      tree.buildTree(FrequencyCounter.countBytes(TEXT));
+      assertEquals(2, metrics.getBuildCount());
+      String code = tree.encodeMessage("it was");
+      tree.decode(code);
+      assertEquals(1, metrics.getEncodeCount());
+      assertEquals(1, metrics.getDecodeCount());
+      assertEquals(code.length(), metrics.getBitsDecoded());
+      // Including a build from no counts at all.
+      tree.buildTree(new long[0]);
+      assertEquals(3, metrics.getBuildCount());
+   }
+
+   @Test
+   void archiveTest(@TempDir Path dir) throws IOException {
+      // Every bulk path records the bytes and times of all its tables.
+      byte[] data = TestData.skewedLetters(100_000, 1, 4);
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, null,
+            0, true, false, metrics)) {
+         writer.write(data, 10_000);
+      }
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+            new ByteArrayChannel(out.toByteArray()), metrics)) {
+         for (int i = 0; i < reader.getBlockCount(); i++) {
+            reader.readBlock(i);
+         }
+      }
+      assertRecorded(metrics, data.length);
+
+      metrics.reset();
+      ParallelBlockCodec parallel = new ParallelBlockCodec(10_000, true, 0,
+            true, ForkJoinPool.commonPool(), metrics);
+      parallel.decompress(parallel.compress(data));
+      assertRecorded(metrics, data.length);
+
+      metrics.reset();
+      out.reset();
+      try (HuffmanOutputStream stream = new HuffmanOutputStream(out, 10_000,
+            null, 4, metrics)) {
+         stream.write(data);
+      }
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(out.toByteArray()), metrics)) {
+         in.readAllBytes();
+      }
+      assertRecorded(metrics, data.length);
+
+      metrics.reset();
+      Path source = Files.write(dir.resolve("source.bin"), data);
+      MappedFileCodec mapped = new MappedFileCodec(10_000, true, metrics);
+      mapped.compress(source, dir.resolve("source.hufa"));
+      mapped.decompress(dir.resolve("source.hufa"),
+            dir.resolve("restored.bin"));
+      assertRecorded(metrics, data.length);
+   }
+
+   private static void assertRecorded(LongAdderCodecMetrics metrics,
+         long bytes) {
+      assertTrue(metrics.getBuildCount() > 0);
+      assertEquals(bytes, metrics.getSymbolsEncoded());
+      assertEquals(bytes, metrics.getSymbolsDecoded());
+      assertTrue(metrics.getBitsEncoded() < 8 * bytes);
+      assertTrue(metrics.getEncodeNanosMax() > 0);
+      assertTrue(metrics.getDecodeNanosMax() > 0);
+   }
+
+   @Test
+   void concurrentTest() {
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try {
+         pool.submit(() -> IntStream.range(0, 10_000).parallel()
+               .forEach(i -> metrics.recordEncode(i, 10, 40))).join();
+      }
+      finally {
+         pool.shutdown();
+      }
+      assertEquals(10_000, metrics.getEncodeCount());
+      assertEquals(100_000, metrics.getSymbolsEncoded());
+      assertEquals(2.0, metrics.getCompressionRatio(), 1e-9);
+      assertEquals(9999, metrics.getEncodeNanosMax());
+   }
+
+   @Test
+   void histogramTest() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(0, histogram.getPercentileNanos(50));
+      for (int i = 0; i < 99; i++) {
+         histogram.record(100);
+      }
+      histogram.record(1_000_000);
+      assertEquals(100, histogram.getCount());
+      // 100 falls in the bucket from 64 to 127.
+      assertEquals(127, histogram.getPercentileNanos(50));
+      assertEquals(127, histogram.getPercentileNanos(99));
+      assertEquals(1_000_000, histogram.getPercentileNanos(100));
+      assertEquals(1_000_000, histogram.getMaxNanos());
+      assertEquals(99 * 100 + 1_000_000, histogram.getTotalNanos());
+      histogram.record(-5);
+      assertEquals(0, histogram.getPercentileNanos(0));
+   }
+
+   @Test
+   void jmxTest() throws JMException {
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      metrics.recordEncode(1000, 100, 200);
+      ObjectName name = metrics.register("jmx test");
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         assertEquals(100L, server.getAttribute(name, "SymbolsEncoded"));
+         assertEquals(4.0, server.getAttribute(name, "CompressionRatio"));
+         server.invoke(name, "reset", null, null);
+         assertEquals(0L, server.getAttribute(name, "EncodeCount"));
+      }
+      finally {
+         LongAdderCodecMetrics.unregister(name);
+      }
+   }
+}
@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The ContextHuffmanCode class is an order-1 model over byte values: each
+ * byte is coded with a table chosen by the byte before it, so strongly
+ * correlated data such as text spends far fewer bits on the letter after a
+ * 'q' or a space than a single table would. The first byte is coded as if it
+ * followed byte 0.
+ *
+ * A context only gets a table of its own when that saves more bits than the
+ * table costs to store; every other context, typically the rare ones, falls
+ * back to a shared order-0 table built from the bytes that follow them. The
+ * tables are ordinary HuffmanTrees limited to 15-bit codes, so each symbol is
+ * encoded from their code arrays and decoded through their lookup tables.
+ *
+ * <pre>
+ * model: bitmap of contexts with a table of their own (32 bytes),
+ *        fallback CanonicalCode table,
+ *        one CanonicalCode table per context in the bitmap, in byte order
+ * </pre>
+ *
+ * @author jam
+ *
+ */
+public class ContextHuffmanCode {
+
+   /**
+    * Number of contexts, one per preceding byte value.
+    */
+   public static final int CONTEXTS = 256;
+
+   private static final int MAX_CODE_LENGTH =
+         HuffmanArchiveWriter.MAX_CODE_LENGTH;
+
+   // Table of each context; contexts without their own share fallback.
+   private final HuffmanTree[] tables;
+   private final HuffmanTree fallback;
+   private final boolean[] ownTable;
+   private CodecMetrics metrics = CodecMetrics.NONE;
+
+   private ContextHuffmanCode(HuffmanTree[] tables, HuffmanTree fallback,
+         boolean[] ownTable) {
+      this.tables = tables;
+      this.fallback = fallback;
+      this.ownTable = ownTable;
+   }
+
+   /**
+    * Builds the model for bytes with the given pair counts, such as those
+    * returned by FrequencyCounter.countBytePairs.
+    *
+    * @param pairCounts Counts indexed by (previous byte &lt;&lt; 8) | byte.
+    * @return The model.
+    */
+   public static ContextHuffmanCode build(long[] pairCounts) {
+      if (pairCounts.length != CONTEXTS * 256) {
+         throw new IllegalArgumentException(
+               "Expected " + CONTEXTS * 256 + " pair counts");
+      }
+      long[] order0 = new long[256];
+      for (int i = 0; i < pairCounts.length; i++) {
+         order0[i & 0xFF] += pairCounts[i];
+      }
+      CodeLengths calculator = new CodeLengths(256);
+      HuffmanTree shared = newTree(order0, calculator);
+      HuffmanTree[] tables = new HuffmanTree[CONTEXTS];
+      boolean[] ownTable = new boolean[CONTEXTS];
+      long[] rest = new long[256];
+      long[] counts = new long[256];
+      // A table that loses to the shared one is rebuilt for the next context.
+      HuffmanTree own = null;
+      for (int c = 0; c < CONTEXTS; c++) {
+         System.arraycopy(pairCounts, c << 8, counts, 0, 256);
+         long sharedBits = shared.encodedBits(counts);
+         if (sharedBits > 0) {
+            if (own == null) {
+               own = new HuffmanTree();
+            }
+            own.buildTree(counts, MAX_CODE_LENGTH, calculator);
+            long ownBits = own.encodedBits(counts)
+                  + 8L * own.getCanonicalCode().serializedSize();
+            if (ownBits < sharedBits) {
+               tables[c] = own;
+               ownTable[c] = true;
+               own = null;
+               continue;
+            }
+         }
+         for (int b = 0; b < 256; b++) {
+            rest[b] += counts[b];
+         }
+      }
+      // The fallback only has to serve the contexts left without a table.
+      HuffmanTree fallback = newTree(rest, calculator);
+      for (int c = 0; c < CONTEXTS; c++) {
+         if (!ownTable[c]) {
+            tables[c] = fallback;
+         }
+      }
+      return new ContextHuffmanCode(tables, fallback, ownTable);
+   }
+
+   /**
+    * Sets the metrics that receive a record of every later encode and
+    * decode. A whole call is recorded as one, however many tables it uses;
+    * the builds of the tables are not recorded.
+    *
+    * @param metrics The metrics, or CodecMetrics.NONE to record nothing.
+    */
+   public void setMetrics(CodecMetrics metrics) {
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+   }
+
+   /**
+    * Number of contexts with a table of their own.
+    *
+    * @return the context table count.
+    */
+   public int getContextTableCount() {
+      int n = 0;
+      for (boolean own : ownTable) {
+         n += own ? 1 : 0;
+      }
+      return n;
+   }
+
+   /**
+    * Computes the exact number of bits encode would write for bytes with the
+    * given pair counts.
+    *
+    * @param pairCounts Counts indexed by (previous byte &lt;&lt; 8) | byte.
+    * @return The number of payload bits, or -1 if a counted pair has no
+    *         code.
+    */
+   public long encodedBits(long[] pairCounts) {
+      long bits = 0;
+      long[] counts = new long[256];
+      for (int c = 0; c < CONTEXTS; c++) {
+         System.arraycopy(pairCounts, c << 8, counts, 0, 256);
+         long b = tables[c].encodedBits(counts);
+         if (b < 0) {
+            return -1;
+         }
+         bits += b;
+      }
+      return bits;
+   }
+
+   /**
+    * Encodes bytes, each with the table of the byte before it.
+    *
+    * @param data The bytes to encode.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte has no code in its context.
+    */
+   public long encode(byte[] data, int off, int len, BitWriter out) {
+      return encode(ByteBuffer.wrap(data, off, len), out);
+   }
+
+   /**
+    * Encodes the remaining bytes of a buffer, advancing its position to its
+    * limit.
+    *
+    * @param src The bytes to encode.
+    * @param out The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte has no code in its context.
+    */
+   public long encode(ByteBuffer src, BitWriter out) {
+      long nanos = metrics == CodecMetrics.NONE ? 0 : System.nanoTime();
+      long symbols = src.remaining();
+      long start = out.bitLength();
+      int previous = 0;
+      while (src.hasRemaining()) {
+         int b = src.get() & 0xFF;
+         HuffmanTree table = tables[previous];
+         if (table.slotOf(b) < 0) {
+            throw new IllegalArgumentException("No code for byte " + b
+                  + " after byte " + previous);
+         }
+         table.encodeSymbol(b, out);
+         previous = b;
+      }
+      long bits = out.bitLength() - start;
+      if (metrics != CodecMetrics.NONE) {
+         metrics.recordEncode(System.nanoTime() - nanos, symbols, bits);
+      }
+      return bits;
+   }
+
+   /**
+    * Decodes exactly len bytes.
+    *
+    * @param in  The source of packed bits.
+    * @param dst Array receiving the bytes.
+    * @param off Index of the first byte in dst.
+    * @param len Number of bytes to decode.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public void decode(BitReader in, byte[] dst, int off, int len) {
+      decode(in, ByteBuffer.wrap(dst, off, len));
+   }
+
+   /**
+    * Decodes bytes into the remaining space of a buffer, advancing its
+    * position to its limit.
+    *
+    * @param in  The source of packed bits.
+    * @param dst The buffer receiving the bytes.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public void decode(BitReader in, ByteBuffer dst) {
+      long nanos = metrics == CodecMetrics.NONE ? 0 : System.nanoTime();
+      long symbols = dst.remaining();
+      long start = in.bitsRead();
+      int previous = 0;
+      while (dst.hasRemaining()) {
+         HuffmanTree table = tables[previous];
+         if (table.getCanonicalCode().size() == 0) {
+            // Only corrupt input leads to a context that was never coded.
+            throw new IllegalArgumentException("Invalid code in stream");
+         }
+         int b = table.decodeSymbol(in);
+         dst.put((byte) b);
+         previous = b & 0xFF;
+      }
+      if (metrics != CodecMetrics.NONE) {
+         metrics.recordDecode(System.nanoTime() - nanos,
+               in.bitsRead() - start, symbols);
+      }
+   }
+
+   /**
+    * Writes the model in the form read by read.
+    *
+    * @param out The stream to write to.
+    * @throws IOException if the stream fails.
+    */
+   public void write(OutputStream out) throws IOException {
+      byte[] bitmap = new byte[CONTEXTS / 8];
+      for (int c = 0; c < CONTEXTS; c++) {
+         if (ownTable[c]) {
+            bitmap[c >>> 3] |= 0x80 >>> (c & 7);
+         }
+      }
+      out.write(bitmap);
+      fallback.getCanonicalCode().write(out);
+      for (int c = 0; c < CONTEXTS; c++) {
+         if (ownTable[c]) {
+            tables[c].getCanonicalCode().write(out);
+         }
+      }
+   }
+
+   /**
+    * Serialized size of the model, in bytes.
+    *
+    * @return the number of bytes write produces.
+    */
+   public int serializedSize() {
+      int size = CONTEXTS / 8 + fallback.getCanonicalCode().serializedSize();
+      for (int c = 0; c < CONTEXTS; c++) {
+         if (ownTable[c]) {
+            size += tables[c].getCanonicalCode().serializedSize();
+         }
+      }
+      return size;
+   }
+
+   /**
+    * Reads a model written by write.
+    *
+    * @param in The stream to read from.
+    * @return The model.
+    * @throws IOException if the stream fails, ends early or holds an invalid
+    *                     table.
+    */
+   public static ContextHuffmanCode read(InputStream in) throws IOException {
+      byte[] bitmap = in.readNBytes(CONTEXTS / 8);
+      if (bitmap.length != CONTEXTS / 8) {
+         throw new IOException("Context model is truncated");
+      }
+      HuffmanTree fallback = readTree(in);
+      HuffmanTree[] tables = new HuffmanTree[CONTEXTS];
+      boolean[] ownTable = new boolean[CONTEXTS];
+      for (int c = 0; c < CONTEXTS; c++) {
+         ownTable[c] = (bitmap[c >>> 3] & (0x80 >>> (c & 7))) != 0;
+         tables[c] = ownTable[c] ? readTree(in) : fallback;
+      }
+      return new ContextHuffmanCode(tables, fallback, ownTable);
+   }
+
+   private static HuffmanTree readTree(InputStream in) throws IOException {
+      CanonicalCode code = CanonicalCode.read(in);
+      if (code.getMaxLength() > MAX_CODE_LENGTH) {
+         throw new IOException("Invalid context table");
+      }
+      for (int i = 0; i < code.size(); i++) {
+         if (code.getSymbol(i) > 255) {
+            throw new IOException("Invalid context table");
+         }
+      }
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(code);
+      return tree;
+   }
+
+   private static HuffmanTree newTree(long[] counts,
+         CodeLengths calculator) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(counts, MAX_CODE_LENGTH, calculator);
+      return tree;
+   }
+}
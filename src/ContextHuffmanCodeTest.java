@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ContextHuffmanCodeTest {
+
+   private static final String[] WORDS = { "Sally", "sells", "seashells",
+         "by", "the", "seashore", "Peter", "Piper", "picked", "a", "peck",
+         "of", "pickled", "peppers", "Houston", "Eagle", "has", "landed" };
+
+   private static byte[] text(int words, long seed) {
+      Random random = new Random(seed);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < words; i++) {
+         sb.append(WORDS[random.nextInt(WORDS.length)]);
+         sb.append(i % 12 == 11 ? ".\n" : " ");
+      }
+      return sb.toString().getBytes(StandardCharsets.US_ASCII);
+   }
+
+   private static long order0Bits(byte[] data) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(FrequencyCounter.countBytes(data), 15);
+      return tree.encodeBytes(data, new BitWriter());
+   }
+
+   @Test
+   void roundTripTest() {
+      byte[] data = text(20_000, 1);
+      long[] pairs = FrequencyCounter.countBytePairs(data, 0, data.length);
+      ContextHuffmanCode model = ContextHuffmanCode.build(pairs);
+      BitWriter out = new BitWriter();
+      long bits = model.encode(data, 0, data.length, out);
+      assertEquals(model.encodedBits(pairs), bits);
+      // The letter after a letter is far more predictable in context.
+      assertTrue(bits < order0Bits(data) * 3 / 4);
+
+      byte[] decoded = new byte[data.length];
+      model.decode(new BitReader(out.toByteArray()), decoded, 0,
+            decoded.length);
+      assertArrayEquals(data, decoded);
+   }
+
+   @Test
+   void fallbackTest() {
+      // Frequent contexts get tables; the rare ones share the fallback.
+      byte[] data = text(5000, 2);
+      data[100] = '#';
+      data[2000] = '%';
+      long[] pairs = FrequencyCounter.countBytePairs(data, 0, data.length);
+      ContextHuffmanCode model = ContextHuffmanCode.build(pairs);
+      int contexts = 0;
+      for (int c = 0; c < 256; c++) {
+         long total = 0;
+         for (int b = 0; b < 256; b++) {
+            total += pairs[(c << 8) | b];
+         }
+         contexts += total > 0 ? 1 : 0;
+      }
+      assertTrue(model.getContextTableCount() > 0);
+      assertTrue(model.getContextTableCount() < contexts);
+      BitWriter out = new BitWriter();
+      model.encode(data, 0, data.length, out);
+      byte[] decoded = new byte[data.length];
+      model.decode(new BitReader(out.toByteArray()), decoded, 0,
+            decoded.length);
+      assertArrayEquals(data, decoded);
+      // A pair that never occurred has no code.
+      assertThrows(IllegalArgumentException.class, () -> model.encode(
+            new byte[] { '#', '#' }, 0, 2, new BitWriter()));
+   }
+
+   @Test
+   void serializationTest() throws IOException {
+      byte[] data = text(3000, 3);
+      ContextHuffmanCode model = ContextHuffmanCode.build(
+            FrequencyCounter.countBytePairs(data, 0, data.length));
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      model.write(bytes);
+      assertEquals(model.serializedSize(), bytes.size());
+      ContextHuffmanCode copy = ContextHuffmanCode.read(
+            new ByteArrayInputStream(bytes.toByteArray()));
+      assertEquals(model.getContextTableCount(),
+            copy.getContextTableCount());
+      BitWriter out = new BitWriter();
+      model.encode(data, 0, data.length, out);
+      byte[] decoded = new byte[data.length];
+      copy.decode(new BitReader(out.toByteArray()), decoded, 0,
+            decoded.length);
+      assertArrayEquals(data, decoded);
+   }
+
+   @Test
+   void archiveTest() throws IOException {
+      byte[] data = text(30_000, 4);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, null,
+            0, true)) {
+         writer.write(data, 32_768);
+      }
+      byte[] archive = out.toByteArray();
+      assertTrue(archive.length < HuffmanArchiveWriter.compress(data,
+            32_768).length * 9 / 10);
+      assertArrayEquals(data, HuffmanArchiveReader.decompress(archive));
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(archive))) {
+         assertArrayEquals(data, in.readAllBytes());
+      }
+      assertThrows(IllegalArgumentException.class,
+            () -> new HuffmanArchiveWriter(out, null, 2, true));
+   }
+}
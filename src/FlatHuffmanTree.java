@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+/**
+ * The FlatHuffmanTree class stores a Huffman tree in a single int array
+ * instead of one object per node. Internal node i keeps its two children at
+ * index 2i (the 0 branch) and 2i + 1 (the 1 branch); a child is either the
+ * index of another internal node or, when negative, ~symbol for a leaf. The
+ * root is node 0, so a tree over n symbols takes 2n - 2 ints and is walked
+ * through consecutive memory.
+ *
+ * A tree is built straight from codewords and their lengths, so it can be
+ * made from a CanonicalCode without ever building BinaryTree nodes, and it
+ * decodes on its own.
+ *
+ * @author jam
+ *
+ */
+public class FlatHuffmanTree {
+
+   // Bits decoded from one peek at the stream.
+   private static final int WINDOW = 56;
+
+   private final int[] children;
+   private final int leafCount;
+
+   /**
+    * Builds the tree of a canonical code.
+    *
+    * @param code The code.
+    */
+   public FlatHuffmanTree(CanonicalCode code) {
+      this(symbolsOf(code), codesOf(code), lengthsOf(code));
+   }
+
+   /**
+    * Builds the tree holding the given codewords.
+    *
+    * @param symbols     Symbol of each codeword, or null if the index is the
+    *                    symbol.
+    * @param codeBits    Codewords, right-aligned.
+    * @param codeLengths Length of each codeword; 0 for entries without one.
+    * @throws IllegalArgumentException if the codewords are not prefix-free.
+    */
+   public FlatHuffmanTree(int[] symbols, long[] codeBits,
+         byte[] codeLengths) {
+      int n = 0;
+      long totalBits = 0;
+      for (byte len : codeLengths) {
+         if (len != 0) {
+            n++;
+            totalBits += len;
+         }
+      }
+      leafCount = n;
+      if (n == 1) {
+         // A lone symbol spends one bit; both branches lead to it.
+         for (int i = 0; i < codeLengths.length; i++) {
+            if (codeLengths[i] != 0) {
+               int symbol = symbols == null ? i : symbols[i];
+               children = new int[] { ~symbol, ~symbol };
+               return;
+            }
+         }
+      }
+      // A complete code has n - 1 internal nodes; an incomplete one may have
+      // more.
+      int[] nodes = new int[2 * Math.max(n - 1, 0)];
+      int nodeCount = n == 0 ? 0 : 1;
+      for (int i = 0; i < codeLengths.length; i++) {
+         int len = codeLengths[i];
+         if (len == 0) {
+            continue;
+         }
+         int symbol = symbols == null ? i : symbols[i];
+         int node = 0;
+         for (int b = len - 1; b >= 0; b--) {
+            int at = 2 * node + (int) ((codeBits[i] >>> b) & 1);
+            if (b == 0) {
+               if (nodes[at] != 0) {
+                  throw new IllegalArgumentException(
+                        "Codewords are not prefix-free");
+               }
+               nodes[at] = ~symbol;
+            }
+            else if (nodes[at] == 0) {
+               if (2 * nodeCount + 2 > nodes.length) {
+                  nodes = Arrays.copyOf(nodes, (int) Math.min(
+                        2 * totalBits + 2, nodes.length * 2L + 2));
+               }
+               nodes[at] = nodeCount++;
+               node = nodes[at];
+            }
+            else if (nodes[at] < 0) {
+               throw new IllegalArgumentException(
+                     "Codewords are not prefix-free");
+            }
+            else {
+               node = nodes[at];
+            }
+         }
+      }
+      children = nodes.length == 2 * nodeCount ? nodes
+            : Arrays.copyOf(nodes, 2 * nodeCount);
+   }
+
+   /**
+    * Wraps a tree already in the flat layout.
+    *
+    * @param children  Children of each internal node, laid out as described
+    *                  above.
+    * @param leafCount Number of symbols in the tree.
+    */
+   FlatHuffmanTree(int[] children, int leafCount) {
+      this.children = children;
+      this.leafCount = leafCount;
+   }
+
+   /**
+    * Number of symbols in the tree.
+    *
+    * @return the leaf count.
+    */
+   public int getLeafCount() {
+      return leafCount;
+   }
+
+   /**
+    * Number of internal nodes.
+    *
+    * @return the internal node count.
+    */
+   public int getNodeCount() {
+      return children.length / 2;
+   }
+
+   /**
+    * Child of an internal node.
+    *
+    * @param node Index of the internal node; the root is 0.
+    * @param bit  0 for the left branch, 1 for the right.
+    * @return The index of an internal node, or a negative value for a leaf
+    *         (see isLeaf and symbolOf); 0 if the branch is unused.
+    */
+   public int getChild(int node, int bit) {
+      return children[2 * node + bit];
+   }
+
+   /**
+    * Whether a child returned by getChild is a leaf.
+    *
+    * @param child The child.
+    * @return true for a leaf.
+    */
+   public static boolean isLeaf(int child) {
+      return child < 0;
+   }
+
+   /**
+    * Symbol of a leaf returned by getChild.
+    *
+    * @param child The leaf.
+    * @return the symbol.
+    */
+   public static int symbolOf(int child) {
+      return ~child;
+   }
+
+   /**
+    * Decodes one symbol.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public int decodeSymbol(BitReader in) {
+      int node = 0;
+      while (true) {
+         int child = children[2 * node + in.readBit()];
+         if (child < 0) {
+            return ~child;
+         }
+         if (child == 0) {
+            throw new IllegalArgumentException("Invalid code in stream");
+         }
+         node = child;
+      }
+   }
+
+   /**
+    * Decodes symbols into dst until bitLimit bits of the stream have been
+    * consumed or maxCount symbols have been produced. A trailing partial
+    * codeword is left unread unless it is longer than 56 bits.
+    *
+    * @param in       The source of packed bits.
+    * @param bitLimit Stream position, in bits, at which to stop.
+    * @param dst      Array receiving the symbols.
+    * @param off      Index of the first symbol in dst.
+    * @param maxCount Maximum number of symbols to decode.
+    * @return The number of symbols decoded.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public int decode(BitReader in, long bitLimit, int[] dst, int off,
+         int maxCount) {
+      if (children.length == 0) {
+         return 0;
+      }
+      int n = 0;
+      while (n < maxCount) {
+         long remaining = bitLimit - in.bitsRead();
+         if (remaining <= 0) {
+            break;
+         }
+         // Walk the tree over a window of the stream, keeping only the
+         // codewords that end inside it.
+         int available = (int) Math.min(WINDOW, remaining);
+         long window = in.peekBits(WINDOW);
+         int node = 0;
+         int consumed = 0;
+         for (int used = 0; used < available && n < maxCount;) {
+            int bit = (int) (window >>> (WINDOW - 1 - used)) & 1;
+            used++;
+            int child = children[2 * node + bit];
+            if (child < 0) {
+               dst[off + n++] = ~child;
+               node = 0;
+               consumed = used;
+            }
+            else if (child == 0) {
+               throw new IllegalArgumentException("Invalid code in stream");
+            }
+            else {
+               node = child;
+            }
+         }
+         if (consumed == 0) {
+            if (available < WINDOW) {
+               // Trailing partial codeword.
+               break;
+            }
+            // A codeword longer than the window.
+            int symbol = decodeSymbol(in, bitLimit);
+            if (symbol < 0) {
+               break;
+            }
+            dst[off + n++] = symbol;
+         }
+         in.skipBits(consumed);
+      }
+      return n;
+   }
+
+   /**
+    * Decodes one symbol a bit at a time without passing bitLimit.
+    *
+    * @return The symbol, or -1 if the stream ends inside the codeword.
+    */
+   private int decodeSymbol(BitReader in, long bitLimit) {
+      int node = 0;
+      while (in.bitsRead() < bitLimit) {
+         int child = children[2 * node + in.readBit()];
+         if (child < 0) {
+            return ~child;
+         }
+         if (child == 0) {
+            throw new IllegalArgumentException("Invalid code in stream");
+         }
+         node = child;
+      }
+      return -1;
+   }
+
+   private static int[] symbolsOf(CanonicalCode code) {
+      int[] symbols = new int[code.size()];
+      for (int i = 0; i < symbols.length; i++) {
+         symbols[i] = code.getSymbol(i);
+      }
+      return symbols;
+   }
+
+   private static long[] codesOf(CanonicalCode code) {
+      long[] codes = new long[code.size()];
+      for (int i = 0; i < codes.length; i++) {
+         codes[i] = code.getCode(i);
+      }
+      return codes;
+   }
+
+   private static byte[] lengthsOf(CanonicalCode code) {
+      byte[] lengths = new byte[code.size()];
+      for (int i = 0; i < lengths.length; i++) {
+         lengths[i] = (byte) code.getLength(i);
+      }
+      return lengths;
+   }
+}
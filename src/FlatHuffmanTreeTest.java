@@ -0,0 +1,160 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FlatHuffmanTreeTest {
+
+   /**
+    * Canonical code over 0..count-1 with Fibonacci weights, giving code
+    * lengths from 1 up to count - 1.
+    */
+   private static CanonicalCode fibonacciCode(int count) {
+      long[] counts = new long[count];
+      long a = 1;
+      long b = 1;
+      for (int i = 0; i < count; i++) {
+         counts[i] = a;
+         long next = a + b;
+         a = b;
+         b = next;
+      }
+      byte[] lengths = new byte[count];
+      new CodeLengths(count).compute(counts, lengths);
+      return CanonicalCode.fromLengths(lengths);
+   }
+
+   private static int[] roundTrip(CanonicalCode code, FlatHuffmanTree tree,
+         int[] message) {
+      BitWriter out = new BitWriter();
+      int[] index = new int[1 << 16];
+      for (int i = 0; i < code.size(); i++) {
+         index[code.getSymbol(i)] = i;
+      }
+      for (int symbol : message) {
+         out.writeBits(code.getCode(index[symbol]),
+               code.getLength(index[symbol]));
+      }
+      long bits = out.bitLength();
+      BitReader in = new BitReader(out.toByteArray());
+      int[] decoded = new int[message.length];
+      int n = 0;
+      while (n < decoded.length) {
+         int k = tree.decode(in, bits, decoded, n,
+               Math.min(100, decoded.length - n));
+         assertTrue(k > 0);
+         n += k;
+      }
+      assertEquals(bits, in.bitsRead());
+      return decoded;
+   }
+
+   @Test
+   void structureTest() {
+      CanonicalCode code = CanonicalCode.fromLengths(
+            new byte[] { 2, 0, 1, 3, 3 });
+      FlatHuffmanTree tree = new FlatHuffmanTree(code);
+      assertEquals(4, tree.getLeafCount());
+      assertEquals(3, tree.getNodeCount());
+      // 0 -> symbol 2, 10 -> symbol 0, 110 -> 3, 111 -> 4.
+      assertEquals(2, FlatHuffmanTree.symbolOf(tree.getChild(0, 0)));
+      int node = tree.getChild(0, 1);
+      assertEquals(0, FlatHuffmanTree.symbolOf(tree.getChild(node, 0)));
+      node = tree.getChild(node, 1);
+      assertTrue(FlatHuffmanTree.isLeaf(tree.getChild(node, 1)));
+      assertEquals(4, FlatHuffmanTree.symbolOf(tree.getChild(node, 1)));
+   }
+
+   @Test
+   void decodeTest() {
+      CanonicalCode code = fibonacciCode(30);
+      FlatHuffmanTree tree = new FlatHuffmanTree(code);
+      assertEquals(29, tree.getNodeCount());
+      Random random = new Random(11);
+      int[] message = new int[3000];
+      for (int i = 0; i < message.length; i++) {
+         message[i] = random.nextInt(30);
+      }
+      assertArrayEquals(message, roundTrip(code, tree, message));
+   }
+
+   @Test
+   void longCodeTest() {
+      // Codes up to 63 bits, longer than one window of the stream.
+      CanonicalCode code = fibonacciCode(64);
+      assertEquals(63, code.getMaxLength());
+      FlatHuffmanTree tree = new FlatHuffmanTree(code);
+      int[] message = { 0, 1, 63, 0, 5, 2, 1, 0, 62, 63 };
+      assertArrayEquals(message, roundTrip(code, tree, message));
+   }
+
+   @Test
+   void partialCodeTest() {
+      CanonicalCode code = CanonicalCode.fromLengths(
+            new byte[] { 1, 2, 3, 3 });
+      FlatHuffmanTree tree = new FlatHuffmanTree(code);
+      // 0 | 10 | 11 (cut short)
+      BitReader in = new BitReader(new byte[] { (byte) 0b01011000 });
+      int[] decoded = new int[4];
+      assertEquals(2, tree.decode(in, 5, decoded, 0, 4));
+      assertEquals(3, in.bitsRead());
+      assertEquals(0, decoded[0]);
+      assertEquals(1, decoded[1]);
+   }
+
+   @Test
+   void singleSymbolAndInvalidTest() {
+      FlatHuffmanTree single = new FlatHuffmanTree(
+            CanonicalCode.fromLengths(new byte[] { 0, 0, 1 }));
+      int[] decoded = new int[8];
+      assertEquals(5, single.decode(new BitReader(new byte[1]), 5, decoded,
+            0, 8));
+      assertEquals(2, decoded[4]);
+
+      // Lengths 1 and 2 leave the codeword 11 unused.
+      FlatHuffmanTree incomplete = new FlatHuffmanTree(
+            CanonicalCode.fromLengths(new byte[] { 1, 2 }));
+      assertThrows(IllegalArgumentException.class, () -> incomplete
+            .decode(new BitReader(new byte[] { (byte) 0xC0 }), 8, decoded,
+                  0, 8));
+      assertThrows(IllegalArgumentException.class,
+            () -> new FlatHuffmanTree(null, new long[] { 0, 1 },
+                  new byte[] { 1, 2 }));
+   }
+
+   @Test
+   void huffmanTreeTest() {
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(fibonacciCode(40));
+      // Codes this long have no decode table, so decode uses the flat tree.
+      BitWriter out = new BitWriter();
+      long bits = ht.encodeCodePoints("\u0000\u0001'&", out);
+      assertEquals("\u0000\u0001'&",
+            ht.decode(out.toByteArray(), bits));
+      assertEquals(39, ht.getFlatTree().getNodeCount());
+   }
+
+   @Test
+   void queueTreeTest() {
+      // The priority queue build keeps only the flat copy of its tree.
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[5];
+      double[] freqs = { 5, 2, 1, 1, 1 };
+      for (int i = 0; i < symbols.length; i++) {
+         symbols[i] = new HuffmanTree.SymbolNodeData(freqs[i],
+               (char) ('a' + i));
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols);
+      FlatHuffmanTree tree = ht.getFlatTree();
+      assertEquals(5, tree.getLeafCount());
+      assertEquals(4, tree.getNodeCount());
+      String code = ht.encodeMessage("abcdeedcba");
+      assertEquals("abcdeedcba", ht.decode(code));
+      // A trailing partial codeword is dropped.
+      assertEquals("abcdeedcba", ht.decode(code + "1"));
+   }
+}
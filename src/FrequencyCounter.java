@@ -0,0 +1,256 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The FrequencyCounter class builds symbol histograms for HuffmanTree by
+ * scanning the input itself. Large inputs are split into chunks that are
+ * counted in parallel on the common fork-join pool and merged at the end.
+ *
+ * Within a chunk, bytes are counted into four interleaved tables in turn, so
+ * that runs of the same byte do not make every increment wait on the store of
+ * the one before it; the tables are summed once the chunk is done.
+ *
+ * @author jam
+ *
+ */
+public class FrequencyCounter {
+
+   /**
+    * Inputs at or below this size are counted on the calling thread.
+    */
+   static final int CHUNK_SIZE = 1 << 20;
+
+   private FrequencyCounter() {
+   }
+
+   /**
+    * Counts how often each byte value occurs.
+    *
+    * @param data The bytes to count.
+    * @return Counts indexed by byte value (0 to 255).
+    */
+   public static long[] countBytes(byte[] data) {
+      return countBytes(data, 0, data.length);
+   }
+
+   /**
+    * Counts how often each byte value occurs in part of an array.
+    *
+    * @param data The bytes to count.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @return Counts indexed by byte value (0 to 255).
+    */
+   public static long[] countBytes(byte[] data, int off, int len) {
+      if (len <= CHUNK_SIZE) {
+         return countChunk(data, off, off + len);
+      }
+      return new ByteCountTask(data, off, off + len).invoke();
+   }
+
+   /**
+    * Counts how often each byte value occurs in the remaining bytes of a
+    * buffer, which may be a direct or memory-mapped buffer. The buffer's
+    * position is not changed.
+    *
+    * @param data The bytes to count.
+    * @return Counts indexed by byte value (0 to 255).
+    */
+   public static long[] countBytes(ByteBuffer data) {
+      if (data.hasArray()) {
+         return countBytes(data.array(), data.arrayOffset() + data.position(),
+               data.remaining());
+      }
+      int[] c0 = new int[256];
+      int[] c1 = new int[256];
+      int[] c2 = new int[256];
+      int[] c3 = new int[256];
+      int i = data.position();
+      int to = data.limit();
+      for (; i + 3 < to; i += 4) {
+         c0[data.get(i) & 0xFF]++;
+         c1[data.get(i + 1) & 0xFF]++;
+         c2[data.get(i + 2) & 0xFF]++;
+         c3[data.get(i + 3) & 0xFF]++;
+      }
+      for (; i < to; i++) {
+         c0[data.get(i) & 0xFF]++;
+      }
+      return sum(c0, c1, c2, c3);
+   }
+
+   /**
+    * Counts how often each byte value follows each other byte value, for
+    * order-1 context models. The first byte counts as following byte 0.
+    *
+    * @param data The bytes to count.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @return Counts indexed by (previous byte &lt;&lt; 8) | byte.
+    */
+   public static long[] countBytePairs(byte[] data, int off, int len) {
+      return countBytePairs(ByteBuffer.wrap(data, off, len));
+   }
+
+   /**
+    * Counts byte pairs, as countBytePairs(byte[], int, int) does, in the
+    * remaining bytes of a buffer. The buffer's position is not changed.
+    *
+    * @param data The bytes to count.
+    * @return Counts indexed by (previous byte &lt;&lt; 8) | byte.
+    */
+   public static long[] countBytePairs(ByteBuffer data) {
+      long[] counts = new long[256 * 256];
+      int previous = 0;
+      for (int i = data.position(); i < data.limit(); i++) {
+         int b = data.get(i) & 0xFF;
+         counts[(previous << 8) | b]++;
+         previous = b;
+      }
+      return counts;
+   }
+
+   /**
+    * Counts how often each Unicode code point occurs. Surrogate pairs count as
+    * one code point.
+    *
+    * @param text The text to count.
+    * @return Counts keyed by code point.
+    */
+   public static IntIntMap countCodePoints(CharSequence text) {
+      if (text.length() <= CHUNK_SIZE) {
+         return countChunk(text, 0, text.length());
+      }
+      return new CodePointCountTask(text, 0, text.length()).invoke();
+   }
+
+   /**
+    * Counts one chunk of bytes into four interleaved tables.
+    */
+   private static long[] countChunk(byte[] data, int from, int to) {
+      int[] c0 = new int[256];
+      int[] c1 = new int[256];
+      int[] c2 = new int[256];
+      int[] c3 = new int[256];
+      int i = from;
+      for (; i + 3 < to; i += 4) {
+         c0[data[i] & 0xFF]++;
+         c1[data[i + 1] & 0xFF]++;
+         c2[data[i + 2] & 0xFF]++;
+         c3[data[i + 3] & 0xFF]++;
+      }
+      for (; i < to; i++) {
+         c0[data[i] & 0xFF]++;
+      }
+      return sum(c0, c1, c2, c3);
+   }
+
+   private static long[] sum(int[] c0, int[] c1, int[] c2, int[] c3) {
+      long[] counts = new long[256];
+      for (int b = 0; b < 256; b++) {
+         counts[b] = (long) c0[b] + c1[b] + c2[b] + c3[b];
+      }
+      return counts;
+   }
+
+   /**
+    * Counts one chunk of text. Latin-1 characters go to a dense table and
+    * everything else to an IntIntMap.
+    */
+   private static IntIntMap countChunk(CharSequence text, int from,
+         int to) {
+      int[] latin = new int[256];
+      IntIntMap counts = new IntIntMap();
+      for (int i = from; i < to;) {
+         char c = text.charAt(i);
+         if (c < 256) {
+            latin[c]++;
+            i++;
+         }
+         else {
+            int codePoint = Character.codePointAt(text, i);
+            counts.addTo(codePoint, 1);
+            i += Character.charCount(codePoint);
+         }
+      }
+      for (int c = 0; c < 256; c++) {
+         if (latin[c] != 0) {
+            counts.put(c, latin[c]);
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * Splits a byte range in half until it fits in one chunk.
+    */
+   private static class ByteCountTask extends RecursiveTask<long[]> {
+
+      private static final long serialVersionUID = 1L;
+
+      private final byte[] data;
+      private final int from;
+      private final int to;
+
+      ByteCountTask(byte[] data, int from, int to) {
+         this.data = data;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected long[] compute() {
+         if (to - from <= CHUNK_SIZE) {
+            return countChunk(data, from, to);
+         }
+         int mid = (from + to) >>> 1;
+         ByteCountTask left = new ByteCountTask(data, from, mid);
+         left.fork();
+         long[] counts = new ByteCountTask(data, mid, to).compute();
+         long[] leftCounts = left.join();
+         for (int b = 0; b < 256; b++) {
+            counts[b] += leftCounts[b];
+         }
+         return counts;
+      }
+   }
+
+   /**
+    * Splits a text range in half, never between the two halves of a surrogate
+    * pair, until it fits in one chunk.
+    */
+   private static class CodePointCountTask extends RecursiveTask<IntIntMap> {
+
+      private static final long serialVersionUID = 1L;
+
+      private final CharSequence text;
+      private final int from;
+      private final int to;
+
+      CodePointCountTask(CharSequence text, int from, int to) {
+         this.text = text;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected IntIntMap compute() {
+         if (to - from <= CHUNK_SIZE) {
+            return countChunk(text, from, to);
+         }
+         int mid = (from + to) >>> 1;
+         if (Character.isLowSurrogate(text.charAt(mid))
+               && Character.isHighSurrogate(text.charAt(mid - 1))) {
+            mid++;
+         }
+         CodePointCountTask left = new CodePointCountTask(text, from, mid);
+         left.fork();
+         IntIntMap counts = new CodePointCountTask(text, mid, to).compute();
+         IntIntMap leftCounts = left.join();
+         for (int codePoint : leftCounts.keys()) {
+            counts.addTo(codePoint, leftCounts.get(codePoint, 0));
+         }
+         return counts;
+      }
+   }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FrequencyCounterTest {
+
+   @Test
+   void countBytesTest() {
+      byte[] data = { 0, 1, 1, (byte) 255, 1, 0, 7 };
+      long[] counts = FrequencyCounter.countBytes(data);
+      assertEquals(256, counts.length);
+      assertEquals(2, counts[0]);
+      assertEquals(3, counts[1]);
+      assertEquals(1, counts[7]);
+      assertEquals(1, counts[255]);
+   }
+
+   @Test
+   void parallelCountBytesTest() {
+      // Large enough to be split into several chunks.
+      byte[] data = new byte[FrequencyCounter.CHUNK_SIZE * 5 + 3];
+      new Random(7).nextBytes(data);
+      long[] expected = new long[256];
+      for (byte b : data) {
+         expected[b & 0xFF]++;
+      }
+      assertArrayEquals(expected, FrequencyCounter.countBytes(data));
+   }
+
+   @Test
+   void countBytePairsTest() {
+      byte[] data = { 5, 5, 7, 5, 7 };
+      long[] counts = FrequencyCounter.countBytePairs(data, 0, data.length);
+      assertEquals(1, counts[(0 << 8) | 5]);
+      assertEquals(1, counts[(5 << 8) | 5]);
+      assertEquals(2, counts[(5 << 8) | 7]);
+      assertEquals(1, counts[(7 << 8) | 5]);
+      assertEquals(5, Arrays.stream(counts).sum());
+   }
+
+   @Test
+   void countCodePointsTest() {
+      StringBuilder text = new StringBuilder();
+      // Repeat past the chunk size so a split may land inside a pair.
+      while (text.length() <= FrequencyCounter.CHUNK_SIZE * 2) {
+         text.append("a\uD83D\uDE00\u00E9");
+      }
+      int repeats = text.length() / 4;
+      IntIntMap counts = FrequencyCounter.countCodePoints(text);
+      assertEquals(3, counts.size());
+      assertEquals(repeats, counts.get('a', 0));
+      assertEquals(repeats, counts.get(0x1F600, 0));
+      assertEquals(repeats, counts.get(0xE9, 0));
+   }
+
+   @Test
+   void forBytesTest() {
+      byte[] data = "abracadabra".getBytes();
+      HuffmanTree ht = HuffmanTree.forBytes(data);
+      BitWriter out = new BitWriter();
+      long bits = ht.encodeBytes(data, out);
+      // a=5, b=2, r=2, c=1, d=1 gives 23 bits.
+      assertEquals(23, bits);
+      assertArrayEquals(data, ht.decodeBytes(out.toByteArray(), bits));
+   }
+
+   @Test
+   void forTextTest() {
+      String text = "\u65E5\u672C\u8A9E text \u65E5\u672C";
+      HuffmanTree ht = HuffmanTree.forText(text);
+      BitWriter out = new BitWriter();
+      long bits = ht.encodeCodePoints(text, out);
+      assertEquals(text, ht.decode(out.toByteArray(), bits));
+   }
+}
@@ -0,0 +1,797 @@
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * The HuffmanArchiveReader class reads archives written by
+ * HuffmanArchiveWriter. Opening an archive reads only its header, trailer and
+ * block index; each block is then read on demand with a single positioned
+ * read, so any block of a large archive can be decompressed without touching
+ * the others. Every block is checked against its CRC-32C before it is
+ * returned.
+ *
+ * A block that refers to a candidate table stored by an earlier block is
+ * decoded by reading that block's table, which is then kept for other blocks
+ * that refer to it.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanArchiveReader implements Closeable {
+
+   private final SeekableByteChannel channel;
+   private final HuffmanTree sharedTree;
+   // Per block: offset in the archive, offset in the original data, and
+   // original size.
+   private final long[] blockOffsets;
+   private final long[] originalOffsets;
+   private final int[] originalSizes;
+   private final long indexOffset;
+   // Off-heap tables kept at once: one per candidate slot and the shared
+   // table.
+   private static final int MAX_OFF_HEAP_TABLES =
+         HuffmanArchiveWriter.MAX_CANDIDATES + 1;
+   // Candidate tables read so far, by the block that stores them.
+   private final Map<Integer, HuffmanTree> candidateTables =
+         new ConcurrentHashMap<>();
+   // Off-heap copies of the shared and referenced tables, least recently
+   // used first, or null to decode on the heap. Inline tables serve one
+   // block and are not kept.
+   private final Map<HuffmanTree, OffHeapHuffmanCode> offHeapCodes;
+   // Receives the decodes of every table.
+   private final CodecMetrics metrics;
+   private final CandidateTables candidates = new CandidateTables() {
+      @Override
+      public void put(int slot, int block, HuffmanTree tree) {
+         candidateTables.put(block, tree);
+      }
+
+      @Override
+      public HuffmanTree get(int slot, int block) throws IOException {
+         HuffmanTree tree = candidateTables.get(block);
+         return tree != null ? tree : readCandidate(slot, block);
+      }
+   };
+
+   /**
+    * Opens an archive file.
+    *
+    * @param path The archive.
+    * @throws IOException if the file cannot be read or is not a valid
+    *                     archive.
+    */
+   public HuffmanArchiveReader(Path path) throws IOException {
+      this(FileChannel.open(path, StandardOpenOption.READ));
+   }
+
+   /**
+    * Opens an archive file, with tables that record their builds and
+    * decodes into metrics.
+    *
+    * @param path    The archive.
+    * @param metrics The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the file cannot be read or is not a valid
+    *                     archive.
+    */
+   public HuffmanArchiveReader(Path path, CodecMetrics metrics)
+         throws IOException {
+      this(FileChannel.open(path, StandardOpenOption.READ), metrics);
+   }
+
+   /**
+    * Opens an archive held by a channel. The reader takes ownership of the
+    * channel and closes it on close.
+    *
+    * @param channel The archive.
+    * @throws IOException if the channel fails or does not hold a valid
+    *                     archive.
+    */
+   public HuffmanArchiveReader(SeekableByteChannel channel)
+         throws IOException {
+      this(channel, false, CodecMetrics.NONE);
+   }
+
+   /**
+    * Opens an archive held by a channel, with tables that record their
+    * builds and decodes into metrics. The reader takes ownership of the
+    * channel and closes it on close.
+    *
+    * @param channel The archive.
+    * @param metrics The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the channel fails or does not hold a valid
+    *                     archive.
+    */
+   public HuffmanArchiveReader(SeekableByteChannel channel,
+         CodecMetrics metrics) throws IOException {
+      this(channel, false, metrics);
+   }
+
+   /**
+    * Opens an archive held by a channel, optionally decoding blocks passed
+    * as buffers to decodeBlock with OffHeapHuffmanCode tables. The reader
+    * takes ownership of the channel and closes it on close.
+    *
+    * @param channel The archive.
+    * @param offHeap Whether to decode single-stream blocks with off-heap
+    *                tables.
+    * @param metrics The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the channel fails or does not hold a valid
+    *                     archive.
+    */
+   HuffmanArchiveReader(SeekableByteChannel channel, boolean offHeap,
+         CodecMetrics metrics) throws IOException {
+      this.channel = channel;
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+      offHeapCodes = offHeap ? Collections.synchronizedMap(
+            new LinkedHashMap<HuffmanTree, OffHeapHuffmanCode>(16, 0.75f,
+                  true) {
+               @Override
+               protected boolean removeEldestEntry(
+                     Map.Entry<HuffmanTree, OffHeapHuffmanCode> eldest) {
+                  // Dropped rather than closed: another thread may still
+                  // be decoding with it.
+                  return size() > MAX_OFF_HEAP_TABLES;
+               }
+            }) : null;
+      try {
+         long size = channel.size();
+         if (size < 6 + HuffmanArchiveWriter.TRAILER_SIZE) {
+            throw new IOException("Not a Huffman archive");
+         }
+         DataInputStream header = readAt(0, 6);
+         if (header.readInt() != HuffmanArchiveWriter.MAGIC) {
+            throw new IOException("Not a Huffman archive");
+         }
+         int version = header.readUnsignedByte();
+         if (version != HuffmanArchiveWriter.VERSION) {
+            throw new IOException("Unsupported archive version " + version);
+         }
+         int flags = header.readUnsignedByte();
+
+         DataInputStream trailer = readAt(
+               size - HuffmanArchiveWriter.TRAILER_SIZE,
+               HuffmanArchiveWriter.TRAILER_SIZE);
+         indexOffset = trailer.readLong();
+         int indexCrc = trailer.readInt();
+         if (trailer.readInt() != HuffmanArchiveWriter.MAGIC
+               || indexOffset < 7
+               || indexOffset > size - HuffmanArchiveWriter.TRAILER_SIZE
+                     - 4) {
+            throw new IOException("Corrupt archive trailer");
+         }
+         int indexSize = (int) (size - HuffmanArchiveWriter.TRAILER_SIZE
+               - indexOffset);
+         byte[] index = readBytes(indexOffset, indexSize);
+         CRC32C crc = new CRC32C();
+         crc.update(index);
+         if ((int) crc.getValue() != indexCrc) {
+            throw new IOException("Block index checksum mismatch");
+         }
+         DataInputStream entries = new DataInputStream(
+               new ByteArrayInputStream(index));
+         int count = entries.readInt();
+         if (count < 0 || (long) count
+               * HuffmanArchiveWriter.INDEX_ENTRY_SIZE != indexSize - 4) {
+            throw new IOException("Corrupt block index");
+         }
+         blockOffsets = new long[count];
+         originalOffsets = new long[count];
+         originalSizes = new int[count];
+         for (int i = 0; i < count; i++) {
+            blockOffsets[i] = entries.readLong();
+            originalOffsets[i] = entries.readLong();
+            originalSizes[i] = entries.readInt();
+         }
+
+         if ((flags & HuffmanArchiveWriter.SHARED_TABLE) != 0) {
+            long tableEnd = count > 0 ? blockOffsets[0] : indexOffset - 1;
+            if (tableEnd < 6 || tableEnd > indexOffset) {
+               throw new IOException("Corrupt block index");
+            }
+            int tableSize = (int) (tableEnd - 6);
+            sharedTree = new HuffmanTree();
+            sharedTree.setMetrics(this.metrics);
+            sharedTree.buildTree(CanonicalCode.read(readAt(6, tableSize)));
+         }
+         else {
+            sharedTree = null;
+         }
+      }
+      catch (IOException | RuntimeException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Number of blocks in the archive.
+    *
+    * @return the block count.
+    */
+   public int getBlockCount() {
+      return blockOffsets.length;
+   }
+
+   /**
+    * Total size of the original data.
+    *
+    * @return the number of bytes in all blocks.
+    */
+   public long getOriginalSize() {
+      int n = blockOffsets.length;
+      return n == 0 ? 0 : originalOffsets[n - 1] + originalSizes[n - 1];
+   }
+
+   /**
+    * Offset of a block's first byte in the original data.
+    *
+    * @param block Index of the block.
+    * @return the offset.
+    */
+   public long getOriginalOffset(int block) {
+      return originalOffsets[block];
+   }
+
+   /**
+    * Size of a block's original data.
+    *
+    * @param block Index of the block.
+    * @return the number of bytes.
+    */
+   public int getOriginalSize(int block) {
+      return originalSizes[block];
+   }
+
+   /**
+    * Finds the block holding a byte of the original data.
+    *
+    * @param position Offset in the original data.
+    * @return Index of the block, or -1 if position is out of range.
+    */
+   public int blockFor(long position) {
+      if (position < 0 || position >= getOriginalSize()) {
+         return -1;
+      }
+      int low = 0;
+      int high = originalOffsets.length - 1;
+      while (low < high) {
+         int mid = (low + high + 1) >>> 1;
+         if (originalOffsets[mid] <= position) {
+            low = mid;
+         }
+         else {
+            high = mid - 1;
+         }
+      }
+      return low;
+   }
+
+   /**
+    * Reads, decompresses and verifies one block.
+    *
+    * @param block Index of the block.
+    * @return The original bytes of the block.
+    * @throws IOException if the channel fails or the block is corrupt.
+    */
+   public byte[] readBlock(int block) throws IOException {
+      return decodeBlock(block, readRawBlock(block));
+   }
+
+   /**
+    * Reads one block as stored, without decoding it.
+    *
+    * @param block Index of the block.
+    * @return The encoded block.
+    * @throws IOException if the channel fails or the index is corrupt.
+    */
+   byte[] readRawBlock(int block) throws IOException {
+      long start = blockOffsets[block];
+      return readBytes(start, (int) (blockEnd(block) - start));
+   }
+
+   /**
+    * Offset of a block in the archive.
+    *
+    * @param block Index of the block.
+    * @return the offset of its first byte.
+    */
+   long blockOffset(int block) {
+      return blockOffsets[block];
+   }
+
+   /**
+    * End of a block in the archive.
+    *
+    * @param block Index of the block.
+    * @return the offset just past its last byte.
+    * @throws IOException if the index is corrupt.
+    */
+   long blockEnd(int block) throws IOException {
+      long start = blockOffsets[block];
+      // The last block ends at the end marker.
+      long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1]
+            : indexOffset - 1;
+      if (end - start > Integer.MAX_VALUE || end < start) {
+         throw new IOException("Corrupt block index");
+      }
+      return end;
+   }
+
+   /**
+    * Decodes and verifies a block returned by readRawBlock. Blocks do not
+    * depend on each other, so this may be called from several threads at
+    * once.
+    *
+    * @param block Index of the block.
+    * @param raw   The encoded block.
+    * @return The original bytes of the block.
+    * @throws IOException if the block is corrupt.
+    */
+   byte[] decodeBlock(int block, byte[] raw) throws IOException {
+      byte[] data = new byte[originalSizes[block]];
+      decodeBlock(block, ByteBuffer.wrap(raw), ByteBuffer.wrap(data));
+      return data;
+   }
+
+   /**
+    * Decodes and verifies an encoded block held in a buffer into the
+    * remaining space of another, so a memory-mapped archive can be decoded
+    * straight into a memory-mapped file. The position of raw is not changed;
+    * that of dst is advanced to its limit.
+    *
+    * @param block Index of the block.
+    * @param raw   The encoded block.
+    * @param dst   The buffer receiving the original bytes, with exactly
+    *              getOriginalSize(block) bytes remaining.
+    * @throws IOException if the block is corrupt.
+    */
+   void decodeBlock(int block, ByteBuffer raw, ByteBuffer dst)
+         throws IOException {
+      ByteBuffer src = raw.duplicate();
+      DataInputStream in = new DataInputStream(new BufferInputStream(src));
+      BlockHeader header = readBlockHeader(in, in.readUnsignedByte(),
+            sharedTree, candidates, block, metrics);
+      if (header.originalSize != originalSizes[block]
+            || header.originalSize != dst.remaining()
+            || header.payloadSize != src.remaining()) {
+         throw new IOException("Block " + block + " header is corrupt");
+      }
+      if (!decodesOffHeap(header)) {
+         header.decode(src, dst, block, null);
+      }
+      else if (header.reusedTable) {
+         header.decode(src, dst, block, offHeapCodes.computeIfAbsent(
+               header.tree,
+               tree -> new OffHeapHuffmanCode(tree.getCanonicalCode())));
+      }
+      else {
+         try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+               header.tree.getCanonicalCode())) {
+            header.decode(src, dst, block, code);
+         }
+      }
+   }
+
+   /**
+    * Whether a block is decoded with an off-heap table. Context models,
+    * interleaved blocks and codes the off-heap table cannot hold stay on the
+    * heap.
+    */
+   private boolean decodesOffHeap(BlockHeader header) {
+      if (offHeapCodes == null || header.model != null
+            || header.interleaved) {
+         return false;
+      }
+      CanonicalCode code = header.tree.getCanonicalCode();
+      return code.size() > 0
+            && code.getMaxLength() <= HuffmanDecodeTable.MAX_CODE_LENGTH;
+   }
+
+   /**
+    * Number of off-heap tables the reader holds for later blocks.
+    *
+    * @return the count, 0 when decoding on the heap.
+    */
+   int getOffHeapTableCount() {
+      return offHeapCodes == null ? 0 : offHeapCodes.size();
+   }
+
+   /**
+    * Reads one block from a stream, after its table mode byte, then decodes
+    * and verifies it.
+    *
+    * @param in         The stream, positioned after the table mode.
+    * @param mode       The block's table mode.
+    * @param sharedTree The archive's shared tree, or null.
+    * @param candidates The candidate tables stored by earlier blocks.
+    * @param block      Index of the block.
+    * @param metrics    The metrics of the tables the block stores.
+    * @return The original bytes of the block.
+    * @throws IOException if the stream fails or the block is corrupt.
+    */
+   static byte[] decodeBlock(DataInputStream in, int mode,
+         HuffmanTree sharedTree, CandidateTables candidates, int block,
+         CodecMetrics metrics) throws IOException {
+      BlockHeader header = readBlockHeader(in, mode, sharedTree, candidates,
+            block, metrics);
+      byte[] payload = new byte[header.payloadSize];
+      in.readFully(payload);
+      byte[] data = new byte[header.originalSize];
+      header.decode(ByteBuffer.wrap(payload), ByteBuffer.wrap(data), block,
+            null);
+      return data;
+   }
+
+   /**
+    * Reads the header of a block, after its table mode byte, up to its
+    * payload.
+    */
+   private static BlockHeader readBlockHeader(DataInputStream in, int mode,
+         HuffmanTree sharedTree, CandidateTables candidates, int block,
+         CodecMetrics metrics) throws IOException {
+      HuffmanTree tree = null;
+      ContextHuffmanCode model = null;
+      boolean reusedTable = false;
+      boolean interleaved = (mode & HuffmanArchiveWriter.BLOCK_INTERLEAVED)
+            != 0;
+      int table = mode & ~HuffmanArchiveWriter.BLOCK_INTERLEAVED;
+      if (table == HuffmanArchiveWriter.TABLE_SHARED && sharedTree != null) {
+         tree = sharedTree;
+         reusedTable = true;
+      }
+      else if (table == HuffmanArchiveWriter.TABLE_INLINE) {
+         tree = new HuffmanTree();
+         tree.setMetrics(metrics);
+         tree.buildTree(CanonicalCode.read(in));
+      }
+      else if (table == HuffmanArchiveWriter.TABLE_NEW) {
+         int slot = readSlot(in, block);
+         tree = new HuffmanTree();
+         tree.setMetrics(metrics);
+         tree.buildTree(CanonicalCode.read(in));
+         candidates.put(slot, block, tree);
+      }
+      else if (table == HuffmanArchiveWriter.TABLE_REF) {
+         int slot = readSlot(in, block);
+         int source = in.readInt();
+         if (source < 0 || source >= block) {
+            throw new IOException("Block " + block
+                  + " refers to a table in block " + source);
+         }
+         tree = candidates.get(slot, source);
+         reusedTable = true;
+      }
+      else if (table == HuffmanArchiveWriter.TABLE_CONTEXT
+            && !interleaved) {
+         // Context models code a single stream.
+         model = ContextHuffmanCode.read(in);
+         model.setMetrics(metrics);
+      }
+      else {
+         throw new IOException("Block " + block
+               + " has unknown table mode " + mode);
+      }
+      int originalSize = in.readInt();
+      int payloadSize = in.readInt();
+      int expectedCrc = in.readInt();
+      // The header has no checksum of its own, so its sizes are checked
+      // before anything is allocated for them.
+      int maxLength = model != null ? HuffmanArchiveWriter.MAX_CODE_LENGTH
+            : tree.getCanonicalCode().getMaxLength();
+      if (originalSize < 0 || payloadSize < 0
+            || originalSize > HuffmanArchiveWriter.MAX_BLOCK_SIZE
+            || payloadSize > maxPayloadSize(originalSize, maxLength,
+                  interleaved)) {
+         throw new IOException("Block " + block + " header is corrupt");
+      }
+      return new BlockHeader(tree, model, reusedTable, interleaved,
+            originalSize, payloadSize, expectedCrc);
+   }
+
+   /**
+    * Largest payload the writer makes for a block of originalSize bytes
+    * coded with codes of at most maxLength bits.
+    */
+   private static long maxPayloadSize(int originalSize, int maxLength,
+         boolean interleaved) {
+      long size = ((long) originalSize * maxLength + 7) >>> 3;
+      if (interleaved) {
+         // The jump table, and padding for each of the other streams.
+         size += 4 * (HuffmanArchiveWriter.INTERLEAVED_STREAMS - 1)
+               + HuffmanArchiveWriter.INTERLEAVED_STREAMS - 1;
+      }
+      return size;
+   }
+
+   /**
+    * Reads and decompresses the whole archive.
+    *
+    * @return The original data.
+    * @throws IOException if the channel fails or a block is corrupt.
+    */
+   public byte[] readAll() throws IOException {
+      long size = getOriginalSize();
+      if (size > Integer.MAX_VALUE - 8) {
+         throw new IOException("Archive too large for one array");
+      }
+      byte[] data = new byte[(int) size];
+      for (int i = 0; i < blockOffsets.length; i++) {
+         byte[] block = readBlock(i);
+         System.arraycopy(block, 0, data, (int) originalOffsets[i],
+               block.length);
+      }
+      return data;
+   }
+
+   /**
+    * Decompresses a complete archive held in memory.
+    *
+    * @param archive The archive.
+    * @return The original data.
+    * @throws IOException if the archive is invalid or corrupt.
+    */
+   public static byte[] decompress(byte[] archive) throws IOException {
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+            new ByteArrayChannel(archive))) {
+         return reader.readAll();
+      }
+   }
+
+   /**
+    * Closes the underlying channel.
+    *
+    * @throws IOException if the channel fails to close.
+    */
+   @Override
+   public void close() throws IOException {
+      if (offHeapCodes != null) {
+         synchronized (offHeapCodes) {
+            offHeapCodes.values().forEach(OffHeapHuffmanCode::close);
+            offHeapCodes.clear();
+         }
+      }
+      channel.close();
+   }
+
+   private static int readSlot(DataInputStream in, int block)
+         throws IOException {
+      int slot = in.readUnsignedByte();
+      if (slot >= HuffmanArchiveWriter.MAX_CANDIDATES) {
+         throw new IOException("Block " + block
+               + " names candidate table " + slot);
+      }
+      return slot;
+   }
+
+   /**
+    * Reads the candidate table stored by a block, checking that the block
+    * stored it in the given slot.
+    */
+   private HuffmanTree readCandidate(int slot, int block)
+         throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+            readRawBlock(block)));
+      int mode = in.readUnsignedByte()
+            & ~HuffmanArchiveWriter.BLOCK_INTERLEAVED;
+      if (mode != HuffmanArchiveWriter.TABLE_NEW
+            || in.readUnsignedByte() != slot) {
+         throw new IOException("Block " + block
+               + " does not store candidate table " + slot);
+      }
+      HuffmanTree tree = new HuffmanTree();
+      tree.setMetrics(metrics);
+      tree.buildTree(CanonicalCode.read(in));
+      candidateTables.put(block, tree);
+      return tree;
+   }
+
+   private DataInputStream readAt(long position, int length)
+         throws IOException {
+      return new DataInputStream(new ByteArrayInputStream(
+            readBytes(position, length)));
+   }
+
+   /**
+    * Reads length bytes starting at position. The channel has a single
+    * position, so reads from different threads take turns.
+    */
+   private synchronized byte[] readBytes(long position, int length)
+         throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      channel.position(position);
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer) < 0) {
+            throw new EOFException("Archive is truncated");
+         }
+      }
+      return buffer.array();
+   }
+
+   /**
+    * What a block header says about how to decode its payload.
+    */
+   private static final class BlockHeader {
+
+      // The block's table, or its context model when tree is null.
+      final HuffmanTree tree;
+      final ContextHuffmanCode model;
+      // Whether tree is the shared table or one stored by an earlier block.
+      final boolean reusedTable;
+      // Whether the payload is split into streams behind a jump table.
+      final boolean interleaved;
+      final int originalSize;
+      final int payloadSize;
+      final int expectedCrc;
+
+      BlockHeader(HuffmanTree tree, ContextHuffmanCode model,
+            boolean reusedTable, boolean interleaved, int originalSize,
+            int payloadSize, int expectedCrc) {
+         this.tree = tree;
+         this.model = model;
+         this.reusedTable = reusedTable;
+         this.interleaved = interleaved;
+         this.originalSize = originalSize;
+         this.payloadSize = payloadSize;
+         this.expectedCrc = expectedCrc;
+      }
+
+      /**
+       * Decodes the remaining bytes of payload into the next originalSize
+       * bytes of dst and checks them against the CRC. The position of
+       * payload is not changed. A single-stream block is decoded with
+       * offHeap when it is not null.
+       */
+      void decode(ByteBuffer payload, ByteBuffer dst, int block,
+            OffHeapHuffmanCode offHeap) throws IOException {
+         ByteBuffer data = dst.duplicate();
+         data.limit(data.position() + originalSize);
+         ByteBuffer target = data.duplicate();
+         try {
+            if (model != null) {
+               model.decode(new BitReader(payload), target);
+            }
+            else if (interleaved) {
+               decodeStreams(payload, target, block);
+            }
+            else if (offHeap != null) {
+               decodeOffHeap(payload, target, offHeap);
+            }
+            else {
+               tree.decodeBytes(new BitReader(payload), target);
+            }
+         }
+         catch (IllegalArgumentException e) {
+            throw new IOException("Block " + block + " payload is corrupt",
+                  e);
+         }
+         CRC32C crc = new CRC32C();
+         crc.update(data);
+         if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Block " + block + " checksum mismatch");
+         }
+         dst.position(dst.position() + originalSize);
+      }
+
+      /**
+       * Decodes a single-stream payload with an off-heap table, recording
+       * the decode in the metrics of the block's tree, as the tree itself
+       * would.
+       */
+      private void decodeOffHeap(ByteBuffer payload, ByteBuffer target,
+            OffHeapHuffmanCode offHeap) {
+         CodecMetrics metrics = tree.getMetrics();
+         long start = metrics == CodecMetrics.NONE ? 0 : System.nanoTime();
+         ByteBuffer src = payload.duplicate();
+         offHeap.decode(src, target);
+         if (metrics != CodecMetrics.NONE) {
+            metrics.recordDecode(System.nanoTime() - start,
+                  8L * (src.position() - payload.position()), originalSize);
+         }
+      }
+
+      /**
+       * Splits an interleaved payload at its jump table and decodes the
+       * four streams together.
+       */
+      private void decodeStreams(ByteBuffer payload, ByteBuffer target,
+            int block) throws IOException {
+         int streams = HuffmanArchiveWriter.INTERLEAVED_STREAMS;
+         int offset = payload.position() + 4 * (streams - 1);
+         if (offset > payload.limit()) {
+            throw new IOException("Block " + block
+                  + " jump table is truncated");
+         }
+         BitReader[] readers = new BitReader[streams];
+         int[] sizes = new int[streams];
+         for (int k = 0; k < streams; k++) {
+            sizes[k] = k < streams - 1 ? payload.getInt(payload.position()
+                  + 4 * k) : payload.limit() - offset;
+            if (sizes[k] < 0 || sizes[k] > payload.limit() - offset) {
+               throw new IOException("Block " + block
+                     + " jump table is corrupt");
+            }
+            readers[k] = new BitReader(payload.slice(offset, sizes[k]));
+            offset += sizes[k];
+         }
+         tree.decodeInterleaved(readers[0], readers[1], readers[2],
+               readers[3], target);
+         // Readers yield zero bits past their streams rather than fail.
+         for (int k = 0; k < streams; k++) {
+            if (readers[k].bitsRead() > 8L * sizes[k]) {
+               throw new IllegalArgumentException(
+                     "Stream " + k + " ended early");
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads a buffer as a stream, advancing its position.
+    */
+   private static final class BufferInputStream extends InputStream {
+
+      private final ByteBuffer buffer;
+
+      BufferInputStream(ByteBuffer buffer) {
+         this.buffer = buffer;
+      }
+
+      @Override
+      public int read() {
+         return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+         if (len == 0) {
+            return 0;
+         }
+         if (!buffer.hasRemaining()) {
+            return -1;
+         }
+         int n = Math.min(len, buffer.remaining());
+         buffer.get(b, off, n);
+         return n;
+      }
+   }
+
+   /**
+    * Holds the candidate tables that blocks store and refer to. A reader
+    * that seeks can find a table through the block that stores it; one that
+    * streams keeps the table last stored in each slot.
+    */
+   interface CandidateTables {
+
+      /**
+       * Records a table a block stores in a slot.
+       *
+       * @param slot  The candidate slot.
+       * @param block Index of the block.
+       * @param tree  The table.
+       */
+      void put(int slot, int block, HuffmanTree tree);
+
+      /**
+       * Finds the table an earlier block stored in a slot.
+       *
+       * @param slot  The candidate slot.
+       * @param block Index of the block that stored the table.
+       * @return The table.
+       * @throws IOException if the block stored no such table.
+       */
+      HuffmanTree get(int slot, int block) throws IOException;
+   }
+}
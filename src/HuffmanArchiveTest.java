@@ -0,0 +1,267 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HuffmanArchiveTest {
+
+   @Test
+   void roundTripTest() throws IOException {
+      byte[] data = TestData.skewedLetters(100_000, 1, 4);
+      byte[] archive = HuffmanArchiveWriter.compress(data, 16_384);
+      assertTrue(archive.length < data.length / 2);
+      assertArrayEquals(data, HuffmanArchiveReader.decompress(archive));
+   }
+
+   @Test
+   void emptyTest() throws IOException {
+      byte[] archive = HuffmanArchiveWriter.compress(new byte[0], 1024);
+      assertArrayEquals(new byte[0],
+            HuffmanArchiveReader.decompress(archive));
+   }
+
+   @Test
+   void randomAccessTest(@TempDir Path dir) throws IOException {
+      byte[] data = TestData.skewedLetters(50_000, 2, 4);
+      Path file = dir.resolve("sample.hufa");
+      Files.write(file, HuffmanArchiveWriter.compress(data, 4096));
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(file)) {
+         assertEquals(13, reader.getBlockCount());
+         assertEquals(data.length, reader.getOriginalSize());
+         int block = reader.blockFor(30_000);
+         assertEquals(7, block);
+         assertEquals(28_672, reader.getOriginalOffset(block));
+         assertArrayEquals(Arrays.copyOfRange(data, 28_672, 32_768),
+               reader.readBlock(block));
+         assertArrayEquals(Arrays.copyOfRange(data, 49_152, 50_000),
+               reader.readBlock(12));
+         assertEquals(-1, reader.blockFor(50_000));
+      }
+   }
+
+   @Test
+   void sharedTableTest() throws IOException {
+      byte[] data = TestData.skewedLetters(20_000, 3, 4);
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(FrequencyCounter.countBytes(data, 0, 10_000), 15);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out,
+            tree.getCanonicalCode())) {
+         writer.write(data, 1000);
+         // A byte the shared table has no code for.
+         writer.writeBlock(new byte[] { 0, 1, 2 }, 0, 3);
+      }
+      byte[] expected = Arrays.copyOf(data, data.length + 3);
+      expected[data.length + 1] = 1;
+      expected[data.length + 2] = 2;
+      assertArrayEquals(expected,
+            HuffmanArchiveReader.decompress(out.toByteArray()));
+   }
+
+   @Test
+   void corruptionTest() throws IOException {
+      byte[] data = TestData.skewedLetters(10_000, 4, 4);
+      byte[] archive = HuffmanArchiveWriter.compress(data, 5000);
+      byte[] payload = archive.clone();
+      payload[archive.length / 3] ^= 0x10;
+      IOException e = assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(payload));
+      assertTrue(e.getMessage().startsWith("Block 0"), e.getMessage());
+
+      byte[] index = archive.clone();
+      index[archive.length - 20] ^= 1;
+      assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(index));
+
+      byte[] magic = archive.clone();
+      magic[0] = 'X';
+      assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(magic));
+
+      assertThrows(IOException.class, () -> HuffmanArchiveReader
+            .decompress(Arrays.copyOf(archive, archive.length - 1)));
+   }
+
+   @Test
+   void candidateTableTest() throws IOException {
+      // Two kinds of block, as in a log that mixes text and numbers.
+      byte[] text = TestData.skewedLetters(20_000, 4, 4);
+      byte[] digits = TestData.skewedLetters(20_000, 5, 4);
+      for (int i = 0; i < digits.length; i++) {
+         digits[i] = (byte) ('0' + (digits[i] - 'a') % 10);
+      }
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      for (int i = 0; i < 20; i++) {
+         data.write(i % 3 == 0 ? digits : text, i * 1000, 1000);
+      }
+      byte[] original = data.toByteArray();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, null,
+            2)) {
+         writer.write(original, 1000);
+      }
+      byte[] archive = out.toByteArray();
+      assertTrue(archive.length < HuffmanArchiveWriter.compress(original,
+            1000).length);
+      assertArrayEquals(original, HuffmanArchiveReader.decompress(archive));
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+            new ByteArrayChannel(archive))) {
+         // Blocks read out of order find their tables in earlier blocks.
+         for (int i = 19; i >= 0; i--) {
+            assertArrayEquals(Arrays.copyOfRange(original, i * 1000,
+                  i * 1000 + 1000), reader.readBlock(i));
+         }
+      }
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(archive))) {
+         assertArrayEquals(original, in.readAllBytes());
+      }
+      assertThrows(IllegalArgumentException.class,
+            () -> new HuffmanArchiveWriter(out, null,
+                  HuffmanArchiveWriter.MAX_CANDIDATES + 1));
+   }
+
+   @Test
+   void offHeapTableTest() throws IOException {
+      // Runs of ten blocks of twenty kinds, more than there are candidate
+      // slots, so later blocks of a run refer to its first.
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      for (int i = 0; i < 200; i++) {
+         int kind = i / 10;
+         byte[] block = TestData.skewedLetters(1000, kind, 2 + kind % 4);
+         for (int j = 0; j < block.length; j++) {
+            block[j] += 3 * kind;
+         }
+         data.write(block);
+      }
+      byte[] original = data.toByteArray();
+      ByteArrayOutputStream candidates = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(
+            candidates, null, HuffmanArchiveWriter.MAX_CANDIDATES)) {
+         writer.write(original, 1000);
+      }
+      byte[][] archives = { HuffmanArchiveWriter.compress(original, 1000),
+            candidates.toByteArray() };
+      for (byte[] archive : archives) {
+         try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+               new ByteArrayChannel(archive), true, CodecMetrics.NONE)) {
+            for (int i = 0; i < reader.getBlockCount(); i++) {
+               ByteBuffer block = ByteBuffer.allocate(
+                     reader.getOriginalSize(i));
+               reader.decodeBlock(i, ByteBuffer.wrap(reader.readRawBlock(i)),
+                     block);
+               assertArrayEquals(Arrays.copyOfRange(original, i * 1000,
+                     i * 1000 + 1000), block.array());
+               // Inline tables are dropped after their block, and only
+               // as many reused tables are kept as there are slots.
+               assertTrue(reader.getOffHeapTableCount()
+                     <= HuffmanArchiveWriter.MAX_CANDIDATES + 1);
+            }
+            if (archive == archives[0]) {
+               assertEquals(0, reader.getOffHeapTableCount());
+            }
+            else {
+               assertTrue(reader.getOffHeapTableCount() > 0);
+            }
+         }
+      }
+   }
+
+   @Test
+   void interleavedTest() throws IOException {
+      byte[] data = TestData.skewedLetters(60_003, 6, 4);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, null,
+            2, false, true)) {
+         writer.write(data, 10_001);
+         // Too small to split.
+         writer.writeBlock(data, 0, 100);
+      }
+      byte[] archive = out.toByteArray();
+      byte[] expected = Arrays.copyOf(data, data.length + 100);
+      System.arraycopy(data, 0, expected, data.length, 100);
+      assertArrayEquals(expected, HuffmanArchiveReader.decompress(archive));
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+            new ByteArrayChannel(archive))) {
+         assertEquals(HuffmanArchiveWriter.TABLE_NEW
+               | HuffmanArchiveWriter.BLOCK_INTERLEAVED,
+               reader.readRawBlock(0)[0] & 0xFF);
+         assertEquals(0, reader.readRawBlock(6)[0]
+               & HuffmanArchiveWriter.BLOCK_INTERLEAVED);
+         for (int i = 5; i >= 0; i--) {
+            int off = i * 10_001;
+            assertArrayEquals(Arrays.copyOfRange(data, off,
+                  Math.min(data.length, off + 10_001)), reader.readBlock(i));
+         }
+      }
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(archive))) {
+         assertArrayEquals(expected, in.readAllBytes());
+      }
+      // Four streams cost a jump table and some padding.
+      assertTrue(archive.length < HuffmanArchiveWriter.compress(expected,
+            10_001).length + 7 * 15);
+   }
+
+   @Test
+   void interleavedSizesTest() throws IOException {
+      // Runs of every length relation near the split threshold.
+      byte[] data = TestData.skewedLetters(
+            HuffmanArchiveWriter.MIN_INTERLEAVED_SIZE + 3, 7, 4);
+      for (int len = data.length - 4; len <= data.length; len++) {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out,
+               null, 0, false, true)) {
+            writer.writeBlock(data, 0, len);
+         }
+         assertArrayEquals(Arrays.copyOf(data, len),
+               HuffmanArchiveReader.decompress(out.toByteArray()));
+      }
+   }
+
+   @Test
+   void interleavedCorruptionTest() throws IOException {
+      byte[] data = TestData.skewedLetters(8000, 8, 4);
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(FrequencyCounter.countBytes(data), 15);
+      CanonicalCode code = tree.getCanonicalCode();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out, code,
+            0, false, true)) {
+         writer.writeBlock(data, 0, data.length);
+      }
+      byte[] archive = out.toByteArray();
+      // Header, then the block's mode, sizes and CRC.
+      int jumpTable = 6 + code.serializedSize() + 13;
+
+      byte[] oversized = archive.clone();
+      oversized[jumpTable] = 0x7F;
+      IOException e = assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(oversized));
+      assertEquals("Block 0 jump table is corrupt", e.getMessage());
+
+      // Moving bytes from one stream to the next starves the first.
+      byte[] shifted = archive.clone();
+      shifted[jumpTable + 3] -= 16;
+      assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(shifted));
+
+      byte[] context = archive.clone();
+      context[jumpTable - 13] = (byte) (HuffmanArchiveWriter.TABLE_CONTEXT
+            | HuffmanArchiveWriter.BLOCK_INTERLEAVED);
+      assertThrows(IOException.class,
+            () -> HuffmanArchiveReader.decompress(context));
+   }
+}
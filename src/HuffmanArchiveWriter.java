@@ -0,0 +1,628 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * The HuffmanArchiveWriter class writes byte data in the self-describing
+ * binary container read by HuffmanArchiveReader. All numbers are big-endian.
+ *
+ * <pre>
+ * header:  magic "HUFA", version (1 byte), flags (1 byte),
+ *          [shared CanonicalCode table, if flags has SHARED_TABLE]
+ * block:   table mode (1 byte), with BLOCK_INTERLEAVED set if the payload
+ *          is split into four streams, then by mode:
+ *            TABLE_SHARED: nothing
+ *            TABLE_INLINE: CanonicalCode table
+ *            TABLE_NEW:    candidate slot (1), CanonicalCode table
+ *            TABLE_REF:    candidate slot (1), index of the block that
+ *                          stored the table (4)
+ *            TABLE_CONTEXT: ContextHuffmanCode order-1 model
+ *          original size (4), payload size (4), CRC-32C of original (4),
+ *          payload (packed codewords, zero-padded to a byte)
+ * streams: sizes of the first three streams (4 each), then the four
+ *          streams, each packed and padded on its own
+ * end:     END_OF_BLOCKS (1 byte)
+ * index:   block count (4), then per block: file offset (8),
+ *          original offset (8), original size (4)
+ * trailer: index offset (8), CRC-32C of index (4), magic "HUFA"
+ * </pre>
+ *
+ * The trailer has a fixed size, so a reader can find the index from the end
+ * of the file and seek straight to any block. The end marker lets a reader
+ * that cannot seek, such as HuffmanInputStream, tell the last block from the
+ * index.
+ *
+ * A writer may keep a few candidate tables, as zstd and Brotli do. For each
+ * block it computes the exact payload size under the shared table and every
+ * candidate from the block's counts and compares the cheapest with the cost
+ * of a new table, table bytes included. A new table is stored in a candidate
+ * slot, replacing the least recently used one, and later blocks refer to it
+ * by slot and by the block that holds it; readers that stream the archive use
+ * the slot and readers that seek use the block.
+ *
+ * A writer may also try an order-1 context model (see ContextHuffmanCode) on
+ * each block that would carry a table of its own, and keep it when the model
+ * and its payload come out smaller than the single table and its payload.
+ *
+ * A writer may also split the payload of each block coded with a single
+ * table into four streams, as zstd's Huff0 does. The block is cut into four
+ * runs of (len + 3) / 4 bytes, the last run taking what is left, and each run
+ * is encoded on its own. A small jump table of stream sizes lets a reader
+ * start four bit readers at once and decode the runs in one loop (see
+ * HuffmanTree.decodeInterleaved), which keeps more of the processor busy
+ * than a single chain of dependent decodes. The jump table and padding cost
+ * up to 15 bytes, so only blocks of at least MIN_INTERLEAVED_SIZE bytes are
+ * split.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanArchiveWriter implements Closeable {
+
+   static final int MAGIC = 0x48554641; // "HUFA"
+   static final int VERSION = 1;
+   static final int SHARED_TABLE = 1;
+   static final int TABLE_SHARED = 0;
+   static final int TABLE_INLINE = 1;
+   static final int TABLE_NEW = 2;
+   static final int TABLE_REF = 3;
+   static final int TABLE_CONTEXT = 4;
+   static final int BLOCK_INTERLEAVED = 0x80;
+   static final int INTERLEAVED_STREAMS = 4;
+   static final int END_OF_BLOCKS = 0xFF;
+   static final int TRAILER_SIZE = 16;
+   static final int INDEX_ENTRY_SIZE = 20;
+
+   /**
+    * Block size used by the convenience methods.
+    */
+   public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+   /**
+    * Largest block a writer accepts. Readers reject block headers claiming
+    * more, so a damaged size cannot make them allocate gigabytes.
+    */
+   public static final int MAX_BLOCK_SIZE = 1 << 26;
+   /**
+    * Longest code length used for tables built per block.
+    */
+   public static final int MAX_CODE_LENGTH = 15;
+   /**
+    * Most candidate tables a writer may keep.
+    */
+   public static final int MAX_CANDIDATES = 16;
+   /**
+    * Smallest block split into four streams.
+    */
+   public static final int MIN_INTERLEAVED_SIZE = 1 << 10;
+
+   private final DataOutputStream out;
+   private final HuffmanTree sharedTree;
+   // Bytes written so far.
+   private long position;
+   // Original bytes written so far.
+   private long originalPosition;
+   // Index entries, written out on close.
+   private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+   private int blockCount;
+   private boolean finished;
+   // Candidate tables by slot, the block that stored each and the last block
+   // that used each.
+   private final HuffmanTree[] candidates;
+   private final int[] candidateBlocks;
+   private final int[] candidateUses;
+   // Blocks given a table by chooseTable so far.
+   private int blocksPlanned;
+   private final boolean contextModel;
+   // Computes the lengths of the tables chooseTable builds.
+   private final CodeLengths calculator = new CodeLengths(256);
+   private final boolean interleaved;
+   // Receives the builds, encodes and decodes of every table.
+   private final CodecMetrics metrics;
+
+   /**
+    * Creates a writer that stores a code table with each block.
+    *
+    * @param out The stream to write the archive to.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out) throws IOException {
+      this(out, null);
+   }
+
+   /**
+    * Creates a writer that encodes blocks with a shared code table stored
+    * once in the header. Blocks holding a byte the shared code cannot
+    * represent get a table of their own.
+    *
+    * @param out        The stream to write the archive to.
+    * @param sharedCode The shared code over byte values, or null.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out, CanonicalCode sharedCode)
+         throws IOException {
+      this(out, sharedCode, 0);
+   }
+
+   /**
+    * Creates a writer that picks the cheapest table for each block from the
+    * shared table, if any, a set of candidate tables made for earlier blocks
+    * and a new table made for the block.
+    *
+    * @param out             The stream to write the archive to.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        MAX_CANDIDATES; 0 stores a table with every
+    *                        block that cannot use the shared one.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out, CanonicalCode sharedCode,
+         int candidateTables) throws IOException {
+      this(out, sharedCode, candidateTables, false);
+   }
+
+   /**
+    * Creates a writer that may also code blocks with an order-1 context
+    * model. The model is tried on blocks that would otherwise carry a table
+    * of their own, so it cannot be combined with candidate tables, which
+    * leave no such blocks.
+    *
+    * @param out             The stream to write the archive to.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        MAX_CANDIDATES.
+    * @param contextModel    true to try an order-1 model on each block.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out, CanonicalCode sharedCode,
+         int candidateTables, boolean contextModel) throws IOException {
+      this(out, sharedCode, candidateTables, contextModel, false);
+   }
+
+   /**
+    * Creates a writer that may also split the payload of each block into
+    * four interleaved streams. Blocks coded with a context model and blocks
+    * smaller than MIN_INTERLEAVED_SIZE keep a single stream.
+    *
+    * @param out             The stream to write the archive to.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        MAX_CANDIDATES.
+    * @param contextModel    true to try an order-1 model on each block.
+    * @param interleaved     true to split blocks into four streams.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out, CanonicalCode sharedCode,
+         int candidateTables, boolean contextModel, boolean interleaved)
+         throws IOException {
+      this(out, sharedCode, candidateTables, contextModel, interleaved,
+            CodecMetrics.NONE);
+   }
+
+   /**
+    * Creates a writer whose tables record their builds and encodes into
+    * metrics, such as a LongAdderCodecMetrics watching a service.
+    *
+    * @param out             The stream to write the archive to.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        MAX_CANDIDATES.
+    * @param contextModel    true to try an order-1 model on each block.
+    * @param interleaved     true to split blocks into four streams.
+    * @param metrics         The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the stream fails.
+    */
+   public HuffmanArchiveWriter(OutputStream out, CanonicalCode sharedCode,
+         int candidateTables, boolean contextModel, boolean interleaved,
+         CodecMetrics metrics) throws IOException {
+      if (candidateTables < 0 || candidateTables > MAX_CANDIDATES) {
+         throw new IllegalArgumentException(
+               "Unsupported number of candidate tables " + candidateTables);
+      }
+      if (contextModel && candidateTables > 0) {
+         throw new IllegalArgumentException(
+               "Context models cannot be combined with candidate tables");
+      }
+      this.contextModel = contextModel;
+      this.interleaved = interleaved;
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+      candidates = new HuffmanTree[candidateTables];
+      candidateBlocks = new int[candidateTables];
+      candidateUses = new int[candidateTables];
+      this.out = new DataOutputStream(out);
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(header);
+      data.writeInt(MAGIC);
+      data.writeByte(VERSION);
+      data.writeByte(sharedCode != null ? SHARED_TABLE : 0);
+      if (sharedCode != null) {
+         sharedCode.write(data);
+         sharedTree = new HuffmanTree();
+         sharedTree.setMetrics(this.metrics);
+         sharedTree.buildTree(sharedCode);
+      }
+      else {
+         sharedTree = null;
+      }
+      emit(header);
+   }
+
+   /**
+    * Compresses one block.
+    *
+    * @param data The bytes to compress.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @throws IOException              if the stream fails.
+    * @throws IllegalArgumentException if the block holds more than
+    *                                  MAX_BLOCK_SIZE bytes.
+    */
+   public void writeBlock(byte[] data, int off, int len)
+         throws IOException {
+      checkBlockSize(len);
+      TableChoice table = chooseTable(
+            FrequencyCounter.countBytes(data, off, len));
+      writeEncodedBlock(encodeBlock(data, off, len, table), len);
+   }
+
+   /**
+    * Compresses the remaining bytes of a buffer as one block. The buffer may
+    * be a direct or memory-mapped buffer, which is read in place. Its
+    * position is not changed.
+    *
+    * @param data The bytes to compress.
+    * @throws IOException              if the stream fails.
+    * @throws IllegalArgumentException if the block holds more than
+    *                                  MAX_BLOCK_SIZE bytes.
+    */
+   public void writeBlock(ByteBuffer data) throws IOException {
+      checkBlockSize(data.remaining());
+      TableChoice table = chooseTable(FrequencyCounter.countBytes(data));
+      writeEncodedBlock(encodeBlock(data, table), data.remaining());
+   }
+
+   /**
+    * Chooses the table of the next block from its byte counts. Candidate
+    * tables depend on the blocks before, so this must be called once per
+    * block, in block order.
+    *
+    * @param counts Counts of the block's byte values.
+    * @return The table to encode the block with.
+    */
+   TableChoice chooseTable(long[] counts) {
+      int block = blocksPlanned++;
+      if (candidates.length == 0) {
+         if (sharedTree != null && sharedTree.encodedBits(counts) >= 0) {
+            return new TableChoice(TABLE_SHARED, 0, 0, sharedTree);
+         }
+         return new TableChoice(TABLE_INLINE, 0, 0, newTree(counts));
+      }
+      TableChoice best = null;
+      long bestCost = Long.MAX_VALUE;
+      if (sharedTree != null) {
+         long bits = sharedTree.encodedBits(counts);
+         if (bits >= 0) {
+            best = new TableChoice(TABLE_SHARED, 0, 0, sharedTree);
+            bestCost = (bits + 7) >>> 3;
+         }
+      }
+      int freeSlot = -1;
+      int oldestSlot = 0;
+      for (int slot = 0; slot < candidates.length; slot++) {
+         if (candidates[slot] == null) {
+            freeSlot = freeSlot < 0 ? slot : freeSlot;
+            continue;
+         }
+         if (candidateUses[slot] < candidateUses[oldestSlot]) {
+            oldestSlot = slot;
+         }
+         long bits = candidates[slot].encodedBits(counts);
+         // A reference costs the slot and the block index.
+         if (bits >= 0 && 5 + ((bits + 7) >>> 3) < bestCost) {
+            best = new TableChoice(TABLE_REF, slot, candidateBlocks[slot],
+                  candidates[slot]);
+            bestCost = 5 + ((bits + 7) >>> 3);
+         }
+      }
+      HuffmanTree tree = newTree(counts);
+      long newCost = 1 + tree.getCanonicalCode().serializedSize()
+            + ((tree.encodedBits(counts) + 7) >>> 3);
+      if (best == null || newCost < bestCost) {
+         int slot = freeSlot >= 0 ? freeSlot : oldestSlot;
+         candidates[slot] = tree;
+         candidateBlocks[slot] = block;
+         best = new TableChoice(TABLE_NEW, slot, block, tree);
+      }
+      if (best.mode != TABLE_SHARED) {
+         candidateUses[best.slot] = block;
+      }
+      return best;
+   }
+
+   /**
+    * Encodes one block with a table from chooseTable without writing it.
+    * This does not touch the writer's state, so blocks can be encoded on
+    * several threads at once and then written in order with
+    * writeEncodedBlock.
+    *
+    * @param data  The bytes to compress.
+    * @param off   Index of the first byte.
+    * @param len   Number of bytes.
+    * @param table The block's table.
+    * @return The block as it appears in the archive.
+    */
+   byte[] encodeBlock(byte[] data, int off, int len, TableChoice table) {
+      return encodeBlock(ByteBuffer.wrap(data, off, len), table);
+   }
+
+   /**
+    * Encodes the remaining bytes of a buffer as one block, as
+    * encodeBlock(byte[], int, int, TableChoice) does. The buffer's position
+    * is not changed.
+    *
+    * @param data  The bytes to compress.
+    * @param table The block's table.
+    * @return The block as it appears in the archive.
+    */
+   byte[] encodeBlock(ByteBuffer data, TableChoice table) {
+      int len = data.remaining();
+      HuffmanTree tree = table.tree;
+      ContextHuffmanCode model = null;
+      if (contextModel && table.mode == TABLE_INLINE) {
+         model = contextModel(data, tree);
+         if (model != null) {
+            model.setMetrics(metrics);
+         }
+      }
+      boolean split = interleaved && model == null
+            && len >= MIN_INTERLEAVED_SIZE;
+      byte[] payload;
+      if (split) {
+         payload = encodeInterleaved(data, tree);
+      }
+      else {
+         BitWriter bits = new BitWriter(len / 2 + 16);
+         if (model != null) {
+            model.encode(data.duplicate(), bits);
+         }
+         else {
+            tree.encodeBytes(data.duplicate(), bits);
+         }
+         payload = bits.toByteArray();
+      }
+      CRC32C crc = new CRC32C();
+      crc.update(data.duplicate());
+
+      ByteArrayOutputStream block = new ByteArrayOutputStream(
+            payload.length + 64);
+      DataOutputStream header = new DataOutputStream(block);
+      try {
+         if (model != null) {
+            header.writeByte(TABLE_CONTEXT);
+            model.write(header);
+         }
+         else {
+            writeTable(header, table, split);
+         }
+         header.writeInt(len);
+         header.writeInt(payload.length);
+         header.writeInt((int) crc.getValue());
+         header.write(payload);
+      }
+      catch (IOException e) {
+         // ByteArrayOutputStream does not fail.
+         throw new IllegalStateException(e);
+      }
+      return block.toByteArray();
+   }
+
+   /**
+    * Encodes the remaining bytes of a buffer as four streams behind a jump
+    * table. The buffer's position is not changed.
+    */
+   private static byte[] encodeInterleaved(ByteBuffer data,
+         HuffmanTree tree) {
+      int len = data.remaining();
+      int run = (len + 3) / INTERLEAVED_STREAMS;
+      byte[][] streams = new byte[INTERLEAVED_STREAMS][];
+      int size = 4 * (INTERLEAVED_STREAMS - 1);
+      for (int k = 0; k < INTERLEAVED_STREAMS; k++) {
+         ByteBuffer part = data.duplicate();
+         part.limit(data.position() + Math.min(len, (k + 1) * run));
+         part.position(data.position() + Math.min(len, k * run));
+         BitWriter bits = new BitWriter(run / 2 + 16);
+         tree.encodeBytes(part, bits);
+         streams[k] = bits.toByteArray();
+         size += streams[k].length;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(size);
+      for (int k = 0; k < INTERLEAVED_STREAMS - 1; k++) {
+         payload.putInt(streams[k].length);
+      }
+      for (byte[] stream : streams) {
+         payload.put(stream);
+      }
+      return payload.array();
+   }
+
+   /**
+    * Writes the table mode of a block, flagged if its payload is split into
+    * streams, and the table or reference it names.
+    */
+   private static void writeTable(DataOutputStream header, TableChoice table,
+         boolean split) throws IOException {
+      header.writeByte(table.mode | (split ? BLOCK_INTERLEAVED : 0));
+      if (table.mode == TABLE_NEW || table.mode == TABLE_REF) {
+         header.writeByte(table.slot);
+      }
+      if (table.mode == TABLE_REF) {
+         header.writeInt(table.source);
+      }
+      else if (table.mode != TABLE_SHARED) {
+         table.tree.getCanonicalCode().write(header);
+      }
+   }
+
+   /**
+    * Builds the order-1 model of a block and returns it if the block is
+    * smaller coded with it than with its own table.
+    *
+    * @return The model, or null to keep the table.
+    */
+   private static ContextHuffmanCode contextModel(ByteBuffer data,
+         HuffmanTree tree) {
+      long[] pairs = FrequencyCounter.countBytePairs(data);
+      long[] counts = new long[256];
+      for (int i = 0; i < pairs.length; i++) {
+         counts[i & 0xFF] += pairs[i];
+      }
+      long tableCost = tree.getCanonicalCode().serializedSize()
+            + ((tree.encodedBits(counts) + 7) >>> 3);
+      ContextHuffmanCode model = ContextHuffmanCode.build(pairs);
+      long modelCost = model.serializedSize()
+            + ((model.encodedBits(pairs) + 7) >>> 3);
+      return modelCost < tableCost ? model : null;
+   }
+
+   /**
+    * Appends a block made by encodeBlock and records it in the index.
+    *
+    * @param block        The encoded block.
+    * @param originalSize Number of bytes the block decodes to.
+    * @throws IOException              if the stream fails.
+    * @throws IllegalArgumentException if the block holds more than
+    *                                  MAX_BLOCK_SIZE bytes.
+    */
+   void writeEncodedBlock(byte[] block, int originalSize)
+         throws IOException {
+      if (finished) {
+         throw new IOException("Archive is finished");
+      }
+      checkBlockSize(originalSize);
+      DataOutputStream entry = new DataOutputStream(index);
+      entry.writeLong(position);
+      entry.writeLong(originalPosition);
+      entry.writeInt(originalSize);
+      blockCount++;
+      originalPosition += originalSize;
+      out.write(block);
+      position += block.length;
+   }
+
+   private static void checkBlockSize(int len) {
+      if (len > MAX_BLOCK_SIZE) {
+         throw new IllegalArgumentException("Block of " + len
+               + " bytes exceeds " + MAX_BLOCK_SIZE);
+      }
+   }
+
+   /**
+    * Splits data into blocks of blockSize bytes and compresses each.
+    *
+    * @param data      The bytes to compress.
+    * @param blockSize Number of bytes per block.
+    * @throws IOException if the stream fails.
+    */
+   public void write(byte[] data, int blockSize) throws IOException {
+      for (int off = 0; off < data.length; off += blockSize) {
+         writeBlock(data, off, Math.min(blockSize, data.length - off));
+      }
+   }
+
+   /**
+    * Writes the end marker, block index and trailer without closing the
+    * stream. No blocks can be written afterwards.
+    *
+    * @throws IOException if the stream fails.
+    */
+   public void finish() throws IOException {
+      if (finished) {
+         return;
+      }
+      finished = true;
+      out.writeByte(END_OF_BLOCKS);
+      long indexOffset = position + 1;
+      ByteArrayOutputStream tail = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(tail);
+      data.writeInt(blockCount);
+      index.writeTo(data);
+      CRC32C crc = new CRC32C();
+      crc.update(tail.toByteArray());
+      data.writeLong(indexOffset);
+      data.writeInt((int) crc.getValue());
+      data.writeInt(MAGIC);
+      position = indexOffset;
+      emit(tail);
+      out.flush();
+   }
+
+   /**
+    * Writes the end marker, block index and trailer and closes the stream.
+    *
+    * @throws IOException if the stream fails.
+    */
+   @Override
+   public void close() throws IOException {
+      finish();
+      out.close();
+   }
+
+   /**
+    * Compresses data into a complete archive held in memory.
+    *
+    * @param data      The bytes to compress.
+    * @param blockSize Number of bytes per block.
+    * @return The archive.
+    */
+   public static byte[] compress(byte[] data, int blockSize) {
+      ByteArrayOutputStream archive = new ByteArrayOutputStream(
+            data.length / 2 + 64);
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(
+            archive)) {
+         writer.write(data, blockSize);
+      }
+      catch (IOException e) {
+         // ByteArrayOutputStream does not fail.
+         throw new IllegalStateException(e);
+      }
+      return archive.toByteArray();
+   }
+
+   private HuffmanTree newTree(long[] counts) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.setMetrics(metrics);
+      tree.buildTree(counts, MAX_CODE_LENGTH, calculator);
+      return tree;
+   }
+
+   /**
+    * Writes buffered bytes to the stream and advances the position.
+    */
+   private void emit(ByteArrayOutputStream bytes) throws IOException {
+      bytes.writeTo(out);
+      position += bytes.size();
+   }
+
+   /**
+    * The table a block is encoded with and how the block names it.
+    */
+   static final class TableChoice {
+
+      final int mode;
+      // Candidate slot, for TABLE_NEW and TABLE_REF.
+      final int slot;
+      // Block that stores the table, for TABLE_NEW and TABLE_REF.
+      final int source;
+      final HuffmanTree tree;
+
+      TableChoice(int mode, int slot, int source, HuffmanTree tree) {
+         this.mode = mode;
+         this.slot = slot;
+         this.source = source;
+         this.tree = tree;
+      }
+   }
+}
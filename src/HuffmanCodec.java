@@ -0,0 +1,366 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The HuffmanCodec class is an immutable Huffman code that any number of
+ * threads can use at once. It is made by a Builder from symbol counts,
+ * weighted symbols or a stored CanonicalCode, and it never changes after
+ * that: every encode and decode keeps its working state in local variables
+ * or in the BitWriter, BitReader or buffers passed in by the caller. Request
+ * handlers can therefore share one codec per kind of data instead of
+ * building a tree per request or locking one.
+ *
+ * The codec is backed by a HuffmanTree that is built once, never exposed,
+ * and only read from afterwards.
+ *
+ * @author jam
+ *
+ */
+public final class HuffmanCodec {
+
+   private final HuffmanTree tree;
+
+   private HuffmanCodec(HuffmanTree tree) {
+      this.tree = tree;
+   }
+
+   /**
+    * Starts building a codec.
+    *
+    * @return a new Builder.
+    */
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   /**
+    * The canonical code, which is all a decoder needs to rebuild the codec.
+    *
+    * @return the canonical code.
+    */
+   public CanonicalCode getCanonicalCode() {
+      return tree.getCanonicalCode();
+   }
+
+   /**
+    * The metrics this codec records into.
+    *
+    * @return the metrics.
+    */
+   public CodecMetrics getMetrics() {
+      return tree.getMetrics();
+   }
+
+   /**
+    * Whether a symbol has a code.
+    *
+    * @param symbol The symbol.
+    * @return true if the symbol can be encoded.
+    */
+   public boolean canEncode(int symbol) {
+      return tree.slotOf(symbol) >= 0;
+   }
+
+   /**
+    * Computes the exact number of bits encodeBytes would write for input
+    * with the given symbol counts, without encoding it.
+    *
+    * @param counts Counts indexed by symbol.
+    * @return The number of payload bits, or -1 if a symbol with a nonzero
+    *         count has no code.
+    */
+   public long encodedBits(long[] counts) {
+      return tree.encodedBits(counts);
+   }
+
+   /**
+    * Encodes bytes, for codes whose symbols are byte values 0 to 255.
+    *
+    * @param data The bytes to encode.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte value has no code.
+    */
+   public long encodeBytes(byte[] data, int off, int len, BitWriter out) {
+      return tree.encodeBytes(data, off, len, out);
+   }
+
+   /**
+    * Encodes the remaining bytes of a buffer, advancing its position to its
+    * limit.
+    *
+    * @param src The bytes to encode.
+    * @param out The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte value has no code.
+    */
+   public long encodeBytes(ByteBuffer src, BitWriter out) {
+      return tree.encodeBytes(src, out);
+   }
+
+   /**
+    * Decodes exactly len bytes.
+    *
+    * @param in  The source of packed bits.
+    * @param dst Array receiving the bytes.
+    * @param off Index of the first byte in dst.
+    * @param len Number of bytes to decode.
+    * @throws IllegalArgumentException if the bits start no codeword or run
+    *                                  out.
+    */
+   public void decodeBytes(BitReader in, byte[] dst, int off, int len) {
+      tree.decodeBytes(in, dst, off, len);
+   }
+
+   /**
+    * Decodes bytes into the remaining space of a buffer, advancing its
+    * position to its limit.
+    *
+    * @param in  The source of packed bits.
+    * @param dst The buffer receiving the bytes.
+    * @throws IllegalArgumentException if the bits start no codeword or run
+    *                                  out.
+    */
+   public void decodeBytes(BitReader in, ByteBuffer dst) {
+      tree.decodeBytes(in, dst);
+   }
+
+   /**
+    * Decodes a bit-packed byte stream written by encodeBytes.
+    *
+    * @param packed    The packed bytes.
+    * @param bitLength The number of meaningful bits, excluding padding.
+    * @return The decoded bytes.
+    */
+   public byte[] decodeBytes(byte[] packed, long bitLength) {
+      return tree.decodeBytes(packed, bitLength);
+   }
+
+   /**
+    * Encodes text one Unicode code point at a time. Every code point must
+    * have a code of its own.
+    *
+    * @param text The text to encode.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a code point has no code.
+    */
+   public long encodeCodePoints(CharSequence text, BitWriter out) {
+      return tree.encodeCodePoints(text, out);
+   }
+
+   /**
+    * Encodes a message as packed bits with the rules of
+    * HuffmanTree.encodeMessage.
+    *
+    * @param message The message to encode.
+    * @param out     The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a character has no code.
+    */
+   public long encode(String message, BitWriter out) {
+      return tree.encode(message, out);
+   }
+
+   /**
+    * Encodes a message as a binary String with the rules of
+    * HuffmanTree.encodeMessage.
+    *
+    * @param message The message to encode.
+    * @return a binary String.
+    * @throws IllegalArgumentException if a character has no code.
+    */
+   public String encodeMessage(String message) {
+      return tree.encodeMessage(message);
+   }
+
+   /**
+    * Decodes a binary String.
+    *
+    * @param code A binary string that represents the coded message.
+    * @return The decoded message.
+    */
+   public String decode(String code) {
+      return tree.decode(code);
+   }
+
+   /**
+    * Decodes a bit-packed message written by encode or encodeCodePoints.
+    *
+    * @param packed    The packed bytes.
+    * @param bitLength The number of meaningful bits, excluding padding.
+    * @return The decoded message.
+    */
+   public String decode(byte[] packed, long bitLength) {
+      return tree.decode(packed, bitLength);
+   }
+
+   /**
+    * Decodes bitLength bits from a BitReader.
+    *
+    * @param in        The source of packed bits.
+    * @param bitLength The number of bits to decode.
+    * @return The decoded message.
+    */
+   public String decode(BitReader in, long bitLength) {
+      return tree.decode(in, bitLength);
+   }
+
+   /**
+    * Writes the codeword of one symbol.
+    *
+    * @param symbol The symbol, which must have a code.
+    * @param out    The BitWriter receiving the codeword.
+    */
+   void encodeSymbol(int symbol, BitWriter out) {
+      tree.encodeSymbol(symbol, out);
+   }
+
+   /**
+    * Decodes one symbol.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   int decodeSymbol(BitReader in) {
+      return tree.decodeSymbol(in);
+   }
+
+   /**
+    * Lists the code of every symbol, one per line, in codeword order.
+    *
+    * @return The code listing.
+    */
+   public String printCode() {
+      return tree.printCode();
+   }
+
+   /**
+    * The Builder class collects the settings of a HuffmanCodec. The source
+    * of the code is whichever of counts, symbols or code was set last. A
+    * Builder is not thread-safe, but it can build any number of codecs, and
+    * changing it afterwards does not affect the codecs already built.
+    */
+   public static final class Builder {
+
+      private long[] counts;
+      private HuffmanTree.SymbolNodeData[] symbols;
+      private CanonicalCode code;
+      private int maxCodeLength = CanonicalCode.MAX_LENGTH;
+      private CodecMetrics metrics = CodecMetrics.NONE;
+
+      private Builder() {
+      }
+
+      /**
+       * Builds the code from symbol counts, such as those returned by
+       * FrequencyCounter.countBytes.
+       *
+       * @param counts Counts indexed by symbol.
+       * @return this Builder.
+       */
+      public Builder counts(long[] counts) {
+         this.counts = counts.clone();
+         this.symbols = null;
+         this.code = null;
+         return this;
+      }
+
+      /**
+       * Builds the code from weighted symbols.
+       *
+       * @param symbols The symbols and their frequencies.
+       * @return this Builder.
+       */
+      public Builder symbols(HuffmanTree.SymbolNodeData[] symbols) {
+         this.symbols = copy(symbols);
+         this.counts = null;
+         this.code = null;
+         return this;
+      }
+
+      /**
+       * Uses a stored code, such as one read with CanonicalCode.read.
+       *
+       * @param code The canonical code.
+       * @return this Builder.
+       */
+      public Builder code(CanonicalCode code) {
+         this.code = code;
+         this.counts = null;
+         this.symbols = null;
+         return this;
+      }
+
+      /**
+       * Caps the code length of codes built from counts or symbols.
+       *
+       * @param maxCodeLength Longest code length allowed, from 1 to
+       *                      CanonicalCode.MAX_LENGTH.
+       * @return this Builder.
+       * @throws IllegalArgumentException if the length is out of range.
+       */
+      public Builder maxCodeLength(int maxCodeLength) {
+         if (maxCodeLength < 1 || maxCodeLength > CanonicalCode.MAX_LENGTH) {
+            throw new IllegalArgumentException(
+                  "Unsupported code length " + maxCodeLength);
+         }
+         this.maxCodeLength = maxCodeLength;
+         return this;
+      }
+
+      /**
+       * Sets the metrics that receive a record of the build and of every
+       * encode and decode.
+       *
+       * @param metrics The metrics, or CodecMetrics.NONE.
+       * @return this Builder.
+       */
+      public Builder metrics(CodecMetrics metrics) {
+         this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+         return this;
+      }
+
+      /**
+       * Builds the codec.
+       *
+       * @return The codec.
+       * @throws IllegalStateException    if no counts, symbols or code were
+       *                                  given.
+       * @throws IllegalArgumentException if the symbols do not fit in codes
+       *                                  of maxCodeLength bits.
+       */
+      public HuffmanCodec build() {
+         HuffmanTree tree = new HuffmanTree();
+         tree.setMetrics(metrics);
+         if (counts != null) {
+            tree.buildTree(counts, maxCodeLength);
+         }
+         else if (symbols != null) {
+            // The tree keeps the leaf objects, so each codec gets its own.
+            tree.buildTree(copy(symbols), maxCodeLength);
+         }
+         else if (code != null) {
+            tree.buildTree(code);
+         }
+         else {
+            throw new IllegalStateException(
+                  "No counts, symbols or code to build from");
+         }
+         return new HuffmanCodec(tree);
+      }
+
+      private static HuffmanTree.SymbolNodeData[] copy(
+            HuffmanTree.SymbolNodeData[] symbols) {
+         HuffmanTree.SymbolNodeData[] copy =
+               new HuffmanTree.SymbolNodeData[symbols.length];
+         for (int i = 0; i < symbols.length; i++) {
+            copy[i] = new HuffmanTree.SymbolNodeData(symbols[i].getFreq(),
+                  symbols[i].getCodePoint());
+         }
+         return copy;
+      }
+   }
+}
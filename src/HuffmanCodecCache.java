@@ -0,0 +1,242 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The HuffmanCodecCache class keeps the most recently used HuffmanCodecs so
+ * that data with a known, stable distribution does not pay for a tree build
+ * on every request. Codecs are looked up either by a profile ID, such as a
+ * tenant name, or by the symbol counts of the data itself.
+ *
+ * Counts are matched on a quantized histogram: two histograms share a codec
+ * when they give the same symbols a nonzero count and agree on every
+ * symbol's ideal code length, -log2 of its share of the total, to within
+ * half a bit. The codec built for the first of them is then close to optimal
+ * for the others as well, and always has a code for each of their symbols.
+ *
+ * The cache holds at most a fixed number of codecs and evicts the least
+ * recently used one to make room. It is safe for concurrent use; codecs are
+ * built outside the lock, so a slow build does not hold up hits on other
+ * keys.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanCodecCache {
+
+   // Quantization steps per bit of ideal code length.
+   private static final int STEPS_PER_BIT = 2;
+   // Highest level; level 0 is kept for symbols that do not occur.
+   private static final int MAX_LEVEL = 127;
+
+   private final int maxEntries;
+   private final int maxCodeLength;
+   private final Map<Object, HuffmanCodec> codecs;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+   private final LongAdder evictions = new LongAdder();
+
+   /**
+    * Creates a cache of codecs without a code length cap.
+    *
+    * @param maxEntries Largest number of codecs to keep.
+    */
+   public HuffmanCodecCache(int maxEntries) {
+      this(maxEntries, CanonicalCode.MAX_LENGTH);
+   }
+
+   /**
+    * Creates a cache.
+    *
+    * @param maxEntries    Largest number of codecs to keep.
+    * @param maxCodeLength Longest code length of the codecs built.
+    * @throws IllegalArgumentException if maxEntries is not positive.
+    */
+   public HuffmanCodecCache(int maxEntries, int maxCodeLength) {
+      if (maxEntries < 1) {
+         throw new IllegalArgumentException(
+               "Cache size must be positive: " + maxEntries);
+      }
+      this.maxEntries = maxEntries;
+      this.maxCodeLength = maxCodeLength;
+      codecs = new LinkedHashMap<>(16, 0.75f, true) {
+
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(
+               Map.Entry<Object, HuffmanCodec> eldest) {
+            if (size() > HuffmanCodecCache.this.maxEntries) {
+               evictions.increment();
+               return true;
+            }
+            return false;
+         }
+      };
+   }
+
+   /**
+    * Returns the codec of a profile, building it from the counts supplied on
+    * a miss.
+    *
+    * @param profile The profile ID.
+    * @param counts  Supplies counts indexed by symbol; only called on a
+    *                miss.
+    * @return The codec.
+    */
+   public HuffmanCodec get(String profile, Supplier<long[]> counts) {
+      HuffmanCodec codec = lookup(profile);
+      if (codec == null) {
+         codec = insert(profile, build(counts.get()));
+      }
+      return codec;
+   }
+
+   /**
+    * Returns a codec for data with the given symbol counts, building one on
+    * a miss.
+    *
+    * @param counts Counts indexed by symbol.
+    * @return A codec with a code for every counted symbol.
+    */
+   public HuffmanCodec get(long[] counts) {
+      HistogramKey key = new HistogramKey(counts);
+      HuffmanCodec codec = lookup(key);
+      if (codec == null) {
+         codec = insert(key, build(counts));
+      }
+      return codec;
+   }
+
+   /**
+    * Removes the codec of a profile, such as after its data changed.
+    *
+    * @param profile The profile ID.
+    */
+   public synchronized void invalidate(String profile) {
+      codecs.remove(profile);
+   }
+
+   /**
+    * Removes every codec. The statistics are kept.
+    */
+   public synchronized void clear() {
+      codecs.clear();
+   }
+
+   /**
+    * Number of codecs held.
+    *
+    * @return the size.
+    */
+   public synchronized int size() {
+      return codecs.size();
+   }
+
+   /**
+    * Number of lookups that found a codec.
+    *
+    * @return the hit count.
+    */
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Number of lookups that had to build a codec.
+    *
+    * @return the miss count.
+    */
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * Number of codecs evicted to make room.
+    *
+    * @return the eviction count.
+    */
+   public long getEvictionCount() {
+      return evictions.sum();
+   }
+
+   /**
+    * Share of lookups that found a codec.
+    *
+    * @return the hit rate, or 0 before any lookup.
+    */
+   public double getHitRate() {
+      long h = hits.sum();
+      long total = h + misses.sum();
+      return total == 0 ? 0 : (double) h / total;
+   }
+
+   private synchronized HuffmanCodec lookup(Object key) {
+      HuffmanCodec codec = codecs.get(key);
+      if (codec != null) {
+         hits.increment();
+      }
+      else {
+         misses.increment();
+      }
+      return codec;
+   }
+
+   /**
+    * Adds a codec built after a miss, unless another thread got there first,
+    * in which case its codec is kept and returned.
+    */
+   private synchronized HuffmanCodec insert(Object key, HuffmanCodec codec) {
+      HuffmanCodec existing = codecs.putIfAbsent(key, codec);
+      return existing != null ? existing : codec;
+   }
+
+   private HuffmanCodec build(long[] counts) {
+      return HuffmanCodec.builder().counts(counts)
+            .maxCodeLength(maxCodeLength).build();
+   }
+
+   /**
+    * The quantized form of a histogram: one level per symbol, 0 for a
+    * symbol that does not occur and otherwise 1 plus its ideal code length
+    * in half bits. Trailing zero counts are dropped.
+    */
+   private static final class HistogramKey {
+
+      private final byte[] levels;
+      private final int hash;
+
+      HistogramKey(long[] counts) {
+         int length = counts.length;
+         while (length > 0 && counts[length - 1] == 0) {
+            length--;
+         }
+         double total = 0;
+         for (int s = 0; s < length; s++) {
+            total += counts[s];
+         }
+         levels = new byte[length];
+         for (int s = 0; s < length; s++) {
+            if (counts[s] > 0) {
+               double bits = Math.log(total / counts[s]) / Math.log(2);
+               levels[s] = (byte) Math.min(MAX_LEVEL,
+                     1 + (int) (bits * STEPS_PER_BIT));
+            }
+         }
+         hash = Arrays.hashCode(levels);
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         return o instanceof HistogramKey
+               && Arrays.equals(levels, ((HistogramKey) o).levels);
+      }
+
+      @Override
+      public int hashCode() {
+         return hash;
+      }
+   }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class HuffmanCodecCacheTest {
+
+   private static long[] counts(long... values) {
+      long[] counts = new long[256];
+      for (int i = 0; i < values.length; i++) {
+         counts['a' + i] = values[i];
+      }
+      return counts;
+   }
+
+   @Test
+   void profileTest() {
+      HuffmanCodecCache cache = new HuffmanCodecCache(4);
+      AtomicInteger builds = new AtomicInteger();
+      HuffmanCodec first = cache.get("tenant-1", () -> {
+         builds.incrementAndGet();
+         return counts(5, 3, 1);
+      });
+      HuffmanCodec second = cache.get("tenant-1", () -> {
+         builds.incrementAndGet();
+         return counts(1, 1, 1);
+      });
+      assertSame(first, second);
+      assertEquals(1, builds.get());
+      assertEquals(1, cache.getHitCount());
+      assertEquals(1, cache.getMissCount());
+      assertEquals(0.5, cache.getHitRate());
+
+      cache.invalidate("tenant-1");
+      assertNotSame(first, cache.get("tenant-1", () -> counts(1, 1, 1)));
+   }
+
+   @Test
+   void histogramTest() {
+      HuffmanCodecCache cache = new HuffmanCodecCache(4);
+      HuffmanCodec codec = cache.get(counts(1000, 500, 250, 10));
+      // Scaled counts quantize to the same levels.
+      assertSame(codec, cache.get(counts(2000, 1000, 500, 20)));
+      assertSame(codec, cache.get(counts(1010, 495, 250, 10)));
+      // A new symbol, or a symbol whose share changes a lot, does not.
+      assertNotSame(codec, cache.get(counts(1000, 500, 250, 10, 1)));
+      assertNotSame(codec, cache.get(counts(1000, 500, 250, 200)));
+      assertEquals(2, cache.getHitCount());
+      assertEquals(3, cache.getMissCount());
+      assertEquals(3, cache.size());
+
+      long[] data = counts(7, 0, 3);
+      HuffmanCodec sparse = cache.get(data);
+      assertTrue(sparse.encodedBits(data) > 0);
+   }
+
+   @Test
+   void evictionTest() {
+      HuffmanCodecCache cache = new HuffmanCodecCache(2);
+      HuffmanCodec a = cache.get("a", () -> counts(1, 1));
+      cache.get("b", () -> counts(1, 2));
+      // Touching a makes b the least recently used.
+      assertSame(a, cache.get("a", () -> counts(9, 9)));
+      cache.get("c", () -> counts(1, 3));
+      assertEquals(2, cache.size());
+      assertEquals(1, cache.getEvictionCount());
+      assertSame(a, cache.get("a", () -> counts(9, 9)));
+      long misses = cache.getMissCount();
+      cache.get("b", () -> counts(1, 2));
+      assertEquals(misses + 1, cache.getMissCount());
+
+      cache.clear();
+      assertEquals(0, cache.size());
+      assertThrows(IllegalArgumentException.class,
+            () -> new HuffmanCodecCache(0));
+   }
+}
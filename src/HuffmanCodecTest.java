@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class HuffmanCodecTest {
+
+   @Test
+   void matchesTreeTest() {
+      byte[] data = TestData.skewedLetters(10_000, 1, 5);
+      long[] counts = FrequencyCounter.countBytes(data);
+      HuffmanCodec codec = HuffmanCodec.builder().counts(counts)
+            .maxCodeLength(15).build();
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(counts, 15);
+      assertEquals(tree.printCode(), codec.printCode());
+
+      BitWriter expected = new BitWriter();
+      tree.encodeBytes(data, expected);
+      BitWriter actual = new BitWriter();
+      long bits = codec.encodeBytes(ByteBuffer.wrap(data), actual);
+      assertEquals(codec.encodedBits(counts), bits);
+      assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+      assertArrayEquals(data, codec.decodeBytes(actual.toByteArray(), bits));
+      assertTrue(codec.canEncode('a'));
+      assertFalse(codec.canEncode('A'));
+   }
+
+   @Test
+   void concurrentTest() throws Exception {
+      long[] counts = FrequencyCounter.countBytes(
+            TestData.skewedLetters(50_000, 2, 5));
+      // Every letter gets a code, however rare.
+      for (int c = 'a'; c <= 'z'; c++) {
+         counts[c]++;
+      }
+      HuffmanCodec codec = HuffmanCodec.builder().counts(counts).build();
+      ExecutorService pool = Executors.newFixedThreadPool(8);
+      try {
+         List<Future<Boolean>> results = new ArrayList<>();
+         for (int t = 0; t < 32; t++) {
+            long seed = 100 + t;
+            results.add(pool.submit(() -> {
+               boolean ok = true;
+               for (int round = 0; round < 20; round++) {
+                  byte[] data = TestData.skewedLetters(5000,
+                        seed * 31 + round, 5);
+                  BitWriter out = new BitWriter();
+                  codec.encodeBytes(data, 0, data.length, out);
+                  byte[] decoded = new byte[data.length];
+                  codec.decodeBytes(new BitReader(out.toByteArray()),
+                        decoded, 0, decoded.length);
+                  String message = new String(data, 0, 100, "US-ASCII");
+                  ok &= Arrays.equals(data, decoded)
+                        && message.equals(codec.decode(
+                              codec.encodeMessage(message)));
+               }
+               return ok;
+            }));
+         }
+         for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+         }
+      }
+      finally {
+         pool.shutdown();
+      }
+   }
+
+   @Test
+   void longCodesTest() {
+      // Fibonacci weights give codes too long for the decode table, so
+      // decoding walks the flat tree.
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[30];
+      double a = 1;
+      double b = 1;
+      for (int i = 0; i < symbols.length; i++) {
+         symbols[i] = new HuffmanTree.SymbolNodeData(a, 'A' + i);
+         double next = a + b;
+         a = b;
+         b = next;
+      }
+      HuffmanCodec codec = HuffmanCodec.builder().symbols(symbols).build();
+      assertEquals(29, codec.getCanonicalCode().getMaxLength());
+      String message = "ABACUS";
+      assertEquals(message, codec.decode(codec.encodeMessage(message)));
+   }
+
+   @Test
+   void builderTest() {
+      assertThrows(IllegalStateException.class,
+            () -> HuffmanCodec.builder().build());
+      assertThrows(IllegalArgumentException.class,
+            () -> HuffmanCodec.builder().maxCodeLength(0));
+
+      long[] counts = new long[256];
+      counts['x'] = 3;
+      counts['y'] = 1;
+      HuffmanCodec.Builder builder = HuffmanCodec.builder().counts(counts);
+      HuffmanCodec first = builder.build();
+      // Neither the input array nor later settings reach a built codec.
+      counts['z'] = 1;
+      HuffmanCodec second = builder.build();
+      assertFalse(second.canEncode('z'));
+      HuffmanCodec third = builder.code(first.getCanonicalCode()).build();
+      assertEquals(first.printCode(), third.printCode());
+      assertFalse(first.canEncode('z'));
+   }
+
+   @Test
+   void metricsTest() {
+      LongAdderCodecMetrics metrics = new LongAdderCodecMetrics();
+      HuffmanCodec codec = HuffmanCodec.builder()
+            .counts(FrequencyCounter.countBytes(
+                  TestData.skewedLetters(1000, 3, 5)))
+            .metrics(metrics).build();
+      assertEquals(1, metrics.getBuildCount());
+      codec.encodeBytes(TestData.skewedLetters(100, 4, 5), 0, 100,
+            new BitWriter());
+      assertEquals(1, metrics.getEncodeCount());
+   }
+}
@@ -0,0 +1,306 @@
+import java.nio.LongBuffer;
+
+/**
+ * The HuffmanDecodeTable class decodes packed Huffman codes by table lookup
+ * instead of walking the tree one bit at a time. The next rootBits bits of the
+ * stream index a root table; each entry holds the symbol and code length, and
+ * where a second short code also fits in those bits, a second symbol as well,
+ * so frequent symbols are decoded two per probe. Codes longer than rootBits
+ * continue into a second-level table reached from the root entry.
+ *
+ * Entries are packed into a long:
+ *
+ * bits 0-7 total bits consumed (or the index width of a second-level table),
+ * bits 8-9 number of symbols (0 for a link to a second-level table), bits 10-31
+ * first symbol (or the offset of the second-level table), bits 32-53 second
+ * symbol, bits 56-63 length of the first code alone. An entry of 0 marks a bit
+ * pattern that starts no codeword.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanDecodeTable {
+
+   /**
+    * Default number of bits resolved by the root table.
+    */
+   public static final int DEFAULT_ROOT_BITS = 11;
+   /**
+    * Longest code length the table can be built for.
+    */
+   public static final int MAX_CODE_LENGTH = 24;
+
+   static final int SYMBOL_MASK = (1 << 22) - 1;
+
+   private final long[] table;
+   private final int rootBits;
+
+   /**
+    * Builds a decode table with the default root size.
+    *
+    * @param codeBits    Codewords (right-aligned), indexed by symbol.
+    * @param codeLengths Code lengths, indexed by symbol; 0 for unused symbols.
+    * @throws IllegalArgumentException if a code is longer than
+    *                                  MAX_CODE_LENGTH.
+    */
+   public HuffmanDecodeTable(long[] codeBits, byte[] codeLengths) {
+      this(codeBits, codeLengths, DEFAULT_ROOT_BITS);
+   }
+
+   /**
+    * Builds a decode table.
+    *
+    * @param codeBits    Codewords (right-aligned), indexed by symbol.
+    * @param codeLengths Code lengths, indexed by symbol; 0 for unused symbols.
+    * @param maxRootBits Upper bound on the bits resolved by the root table.
+    * @throws IllegalArgumentException if a code is longer than
+    *                                  MAX_CODE_LENGTH.
+    */
+   public HuffmanDecodeTable(long[] codeBits, byte[] codeLengths,
+         int maxRootBits) {
+      this(null, codeBits, codeLengths, maxRootBits);
+   }
+
+   /**
+    * Builds a decode table with the default root size from parallel arrays
+    * describing each coded symbol.
+    *
+    * @param symbols     The coded symbols.
+    * @param codeBits    Codeword (right-aligned) of each symbol.
+    * @param codeLengths Code length of each symbol.
+    * @throws IllegalArgumentException if a code is longer than
+    *                                  MAX_CODE_LENGTH.
+    */
+   public HuffmanDecodeTable(int[] symbols, long[] codeBits,
+         byte[] codeLengths) {
+      this(symbols, codeBits, codeLengths, DEFAULT_ROOT_BITS);
+   }
+
+   /**
+    * Builds a decode table. When symbols is null the arrays are indexed by
+    * symbol; otherwise entry i describes symbols[i].
+    *
+    * @param symbols     The coded symbols, or null.
+    * @param codeBits    Codewords (right-aligned).
+    * @param codeLengths Code lengths; 0 for unused entries.
+    * @param maxRootBits Upper bound on the bits resolved by the root table.
+    * @throws IllegalArgumentException if a code is longer than
+    *                                  MAX_CODE_LENGTH.
+    */
+   public HuffmanDecodeTable(int[] symbols, long[] codeBits,
+         byte[] codeLengths, int maxRootBits) {
+      int maxLen = 0;
+      for (byte len : codeLengths) {
+         maxLen = Math.max(maxLen, len);
+      }
+      if (maxLen > MAX_CODE_LENGTH) {
+         throw new IllegalArgumentException("Code length " + maxLen
+               + " exceeds " + MAX_CODE_LENGTH);
+      }
+      rootBits = Math.max(1, Math.min(maxLen, maxRootBits));
+      int rootSize = 1 << rootBits;
+
+      // Size the second-level tables: one per root prefix of long codes, wide
+      // enough for the longest code sharing that prefix.
+      int[] subBits = new int[rootSize];
+      for (int k = 0; k < codeLengths.length; k++) {
+         int len = codeLengths[k];
+         if (len > rootBits) {
+            int prefix = (int) (codeBits[k] >>> (len - rootBits));
+            subBits[prefix] = Math.max(subBits[prefix], len - rootBits);
+         }
+      }
+      int size = rootSize;
+      for (int bits : subBits) {
+         if (bits > 0) {
+            size += 1 << bits;
+         }
+      }
+      table = new long[size];
+
+      // Link the root to the second-level tables.
+      int offset = rootSize;
+      for (int prefix = 0; prefix < rootSize; prefix++) {
+         if (subBits[prefix] > 0) {
+            table[prefix] = ((long) offset << 10) | subBits[prefix];
+            offset += 1 << subBits[prefix];
+         }
+      }
+
+      // Fill every slot whose leading bits match a codeword.
+      for (int k = 0; k < codeLengths.length; k++) {
+         int len = codeLengths[k];
+         if (len == 0) {
+            continue;
+         }
+         int s = symbols == null ? k : symbols[k];
+         long code = codeBits[k];
+         if (len <= rootBits) {
+            int first = (int) (code << (rootBits - len));
+            for (int i = 0; i < 1 << (rootBits - len); i++) {
+               table[first + i] = single(s, len);
+            }
+         }
+         else {
+            long link = table[(int) (code >>> (len - rootBits))];
+            int base = (int) (link >>> 10) & SYMBOL_MASK;
+            int width = (int) (link & 0xFF);
+            int extra = len - rootBits;
+            int index = (int) (code & ((1L << extra) - 1));
+            int first = base + (index << (width - extra));
+            for (int i = 0; i < 1 << (width - extra); i++) {
+               table[first + i] = single(s, len);
+            }
+         }
+      }
+
+      // Pair up root entries whose remaining bits hold a second whole code.
+      int mask = rootSize - 1;
+      for (int i = 0; i < rootSize; i++) {
+         long e = table[i];
+         if (count(e) != 1) {
+            continue;
+         }
+         int len1 = length(e);
+         if (len1 >= rootBits) {
+            continue;
+         }
+         long next = table[(i << len1) & mask];
+         if (count(next) == 0) {
+            continue;
+         }
+         int len2 = firstLength(next);
+         if (len2 <= rootBits - len1) {
+            table[i] = ((long) len1 << 56)
+                  | ((long) (int) (next >>> 10 & SYMBOL_MASK) << 32)
+                  | (e & ((long) SYMBOL_MASK << 10)) | (2L << 8)
+                  | (len1 + len2);
+         }
+      }
+   }
+
+   /**
+    * Packs a single-symbol entry.
+    */
+   private static long single(int symbol, int len) {
+      return ((long) len << 56) | ((long) symbol << 10) | (1L << 8) | len;
+   }
+
+   static int count(long e) {
+      return (int) (e >>> 8) & 3;
+   }
+
+   static int length(long e) {
+      return (int) (e & 0xFF);
+   }
+
+   static int firstLength(long e) {
+      return (int) (e >>> 56);
+   }
+
+   /**
+    * Number of entries in the root and second-level tables together.
+    *
+    * @return the table size.
+    */
+   int size() {
+      return table.length;
+   }
+
+   /**
+    * Copies the packed entries, root table first, to dst.
+    *
+    * @param dst The buffer receiving size() entries.
+    */
+   void copyTo(LongBuffer dst) {
+      dst.put(table);
+   }
+
+   /**
+    * Number of bits resolved by the root table.
+    *
+    * @return the root index width.
+    */
+   public int getRootBits() {
+      return rootBits;
+   }
+
+   /**
+    * Decodes one symbol.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public int decodeSymbol(BitReader in) {
+      long e = table[(int) in.peekBits(rootBits)];
+      if (count(e) == 0) {
+         e = secondLevel(in, e);
+      }
+      in.skipBits(firstLength(e));
+      return (int) (e >>> 10) & SYMBOL_MASK;
+   }
+
+   /**
+    * Decodes symbols into dst until bitLimit bits of the stream have been
+    * consumed or maxCount symbols have been produced. A trailing partial
+    * codeword is left unread.
+    *
+    * @param in       The source of packed bits.
+    * @param bitLimit Stream position, in bits, at which to stop.
+    * @param dst      Array receiving the symbols.
+    * @param off      Index of the first symbol in dst.
+    * @param maxCount Maximum number of symbols to decode.
+    * @return The number of symbols decoded.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public int decode(BitReader in, long bitLimit, int[] dst, int off,
+         int maxCount) {
+      int n = 0;
+      while (n < maxCount) {
+         long remaining = bitLimit - in.bitsRead();
+         if (remaining <= 0) {
+            break;
+         }
+         long e = table[(int) in.peekBits(rootBits)];
+         int count = count(e);
+         if (count == 2 && length(e) <= remaining && n + 1 < maxCount) {
+            dst[off + n++] = (int) (e >>> 10) & SYMBOL_MASK;
+            dst[off + n++] = (int) (e >>> 32) & SYMBOL_MASK;
+            in.skipBits(length(e));
+            continue;
+         }
+         if (count == 0) {
+            e = secondLevel(in, e);
+         }
+         int len = firstLength(e);
+         if (len > remaining) {
+            break;
+         }
+         dst[off + n++] = (int) (e >>> 10) & SYMBOL_MASK;
+         in.skipBits(len);
+      }
+      return n;
+   }
+
+   /**
+    * Resolves a root entry that links to a second-level table.
+    *
+    * @param in   The source of packed bits, positioned at the codeword.
+    * @param link The root entry.
+    * @return The second-level entry.
+    */
+   private long secondLevel(BitReader in, long link) {
+      if (link == 0) {
+         throw new IllegalArgumentException("Invalid code in stream");
+      }
+      int width = length(link);
+      int base = (int) (link >>> 10) & SYMBOL_MASK;
+      int index = (int) in.peekBits(rootBits + width) & ((1 << width) - 1);
+      long e = table[base + index];
+      if (e == 0) {
+         throw new IllegalArgumentException("Invalid code in stream");
+      }
+      return e;
+   }
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HuffmanDecodeTableTest {
+
+   /**
+    * Builds a tree over 'a'.. with Fibonacci weights, giving code lengths from
+    * 1 up to the number of symbols minus one.
+    */
+   private static HuffmanTree fibonacciTree(int count) {
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[count];
+      double a = 1;
+      double b = 1;
+      for (int i = 0; i < count; i++) {
+         symbols[i] = new HuffmanTree.SymbolNodeData(a, (char) ('a' + i));
+         double next = a + b;
+         a = b;
+         b = next;
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols);
+      return ht;
+   }
+
+   @Test
+   void roundTripWithSecondLevelTest() {
+      HuffmanTree ht = fibonacciTree(20);
+      // A 4-bit root forces most codes into second-level tables.
+      var table = new HuffmanDecodeTable(ht.codeBits, ht.codeLengths, 4);
+      assertEquals(4, table.getRootBits());
+
+      Random random = new Random(42);
+      int[] message = new int[5000];
+      BitWriter out = new BitWriter();
+      for (int i = 0; i < message.length; i++) {
+         message[i] = 'a' + random.nextInt(20);
+         out.writeBits(ht.codeBits[message[i]],
+               ht.codeLengths[message[i]]);
+      }
+      long bits = out.bitLength();
+      BitReader in = new BitReader(out.toByteArray());
+      int[] decoded = new int[message.length];
+      assertEquals(message.length,
+            table.decode(in, bits, decoded, 0, decoded.length));
+      assertArrayEquals(message, decoded);
+      assertEquals(bits, in.bitsRead());
+   }
+
+   @Test
+   void decodeSymbolTest() {
+      HuffmanTree ht = fibonacciTree(12);
+      var table = new HuffmanDecodeTable(ht.codeBits, ht.codeLengths);
+      BitWriter out = new BitWriter();
+      for (char c = 'a'; c < 'a' + 12; c++) {
+         out.writeBits(ht.codeBits[c], ht.codeLengths[c]);
+      }
+      BitReader in = new BitReader(out.toByteArray());
+      for (char c = 'a'; c < 'a' + 12; c++) {
+         assertEquals(c, table.decodeSymbol(in));
+      }
+   }
+
+   @Test
+   void trailingPartialCodeTest() {
+      HuffmanTree ht = fibonacciTree(8);
+      var table = new HuffmanDecodeTable(ht.codeBits, ht.codeLengths);
+      BitWriter out = new BitWriter();
+      out.writeBits(ht.codeBits['h'], ht.codeLengths['h']);
+      out.writeBits(ht.codeBits['a'], ht.codeLengths['a']);
+      int[] decoded = new int[4];
+      // Stop one bit short of the second codeword.
+      long limit = out.bitLength() - 1;
+      int n = table.decode(new BitReader(out.toByteArray()), limit,
+            decoded, 0, 4);
+      assertEquals(1, n);
+      assertEquals('h', decoded[0]);
+   }
+
+   @Test
+   void tooLongTest() {
+      HuffmanTree ht = fibonacciTree(30);
+      assertThrows(IllegalArgumentException.class,
+            () -> new HuffmanDecodeTable(ht.codeBits, ht.codeLengths));
+   }
+}
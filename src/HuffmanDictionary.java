@@ -0,0 +1,200 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The HuffmanDictionary class is a code trained in advance on a sample
+ * corpus, for payloads too small to carry or pay for a table of their own,
+ * such as RPC messages of a few dozen bytes. Sender and receiver agree on the
+ * dictionary by its ID out of band, so a compressed payload is nothing but
+ * codewords: no header, no table and no length. Each payload ends with the
+ * codeword of the END symbol and is padded to a whole byte.
+ *
+ * Training counts the bytes of every sample plus one END per sample, and
+ * adds one to every byte value so that bytes missing from the corpus can
+ * still be coded, at a price. Dictionaries are stored as:
+ *
+ * <pre>
+ * dictionary: magic "HUFD" (4 bytes), version (1 byte), id (4 bytes),
+ *             CanonicalCode table over bytes and END
+ * </pre>
+ *
+ * @author jam
+ *
+ */
+public final class HuffmanDictionary {
+
+   /**
+    * The symbol that ends each payload.
+    */
+   public static final int END = 256;
+
+   static final int MAGIC = 0x48554644; // "HUFD"
+   static final int VERSION = 1;
+
+   private static final int MAX_CODE_LENGTH =
+         HuffmanArchiveWriter.MAX_CODE_LENGTH;
+
+   private final int id;
+   private final HuffmanCodec codec;
+
+   private HuffmanDictionary(int id, HuffmanCodec codec) {
+      this.id = id;
+      this.codec = codec;
+   }
+
+   /**
+    * Trains a dictionary on sample payloads.
+    *
+    * @param id      The ID the dictionary is known by.
+    * @param samples Payloads typical of the data to be compressed.
+    * @return The dictionary.
+    */
+   public static HuffmanDictionary train(int id, Iterable<byte[]> samples) {
+      long[] counts = new long[END + 1];
+      Arrays.fill(counts, 1);
+      for (byte[] sample : samples) {
+         for (byte b : sample) {
+            counts[b & 0xFF]++;
+         }
+         counts[END]++;
+      }
+      return new HuffmanDictionary(id, HuffmanCodec.builder().counts(counts)
+            .maxCodeLength(MAX_CODE_LENGTH).build());
+   }
+
+   /**
+    * The ID the dictionary is known by.
+    *
+    * @return the ID.
+    */
+   public int getId() {
+      return id;
+   }
+
+   /**
+    * The code, which can also be loaded into a HuffmanTree with buildTree.
+    *
+    * @return the canonical code over byte values and END.
+    */
+   public CanonicalCode getCanonicalCode() {
+      return codec.getCanonicalCode();
+   }
+
+   /**
+    * Compresses a payload.
+    *
+    * @param payload The bytes to compress.
+    * @return The codewords of the bytes and END, padded to a whole byte.
+    */
+   public byte[] compress(byte[] payload) {
+      return compress(payload, 0, payload.length);
+   }
+
+   /**
+    * Compresses part of an array.
+    *
+    * @param payload Array holding the bytes to compress.
+    * @param off     Index of the first byte.
+    * @param len     Number of bytes.
+    * @return The codewords of the bytes and END, padded to a whole byte.
+    */
+   public byte[] compress(byte[] payload, int off, int len) {
+      BitWriter out = new BitWriter(len / 2 + 16);
+      codec.encodeBytes(payload, off, len, out);
+      codec.encodeSymbol(END, out);
+      return out.toByteArray();
+   }
+
+   /**
+    * Decompresses a payload written by compress.
+    *
+    * @param packed The compressed payload.
+    * @return The original bytes.
+    * @throws IOException if the payload is truncated or was not written
+    *                     with this dictionary.
+    */
+   public byte[] decompress(byte[] packed) throws IOException {
+      BitReader in = new BitReader(packed);
+      long available = 8L * packed.length;
+      byte[] result = new byte[Math.max(16, packed.length * 2)];
+      int size = 0;
+      try {
+         while (true) {
+            int symbol = codec.decodeSymbol(in);
+            if (in.bitsRead() > available) {
+               throw new EOFException("Payload is truncated");
+            }
+            if (symbol == END) {
+               break;
+            }
+            if (size == result.length) {
+               result = Arrays.copyOf(result, size * 2);
+            }
+            result[size++] = (byte) symbol;
+         }
+      }
+      catch (IllegalArgumentException e) {
+         throw new IOException("Payload is corrupt", e);
+      }
+      if (available - in.bitsRead() >= 8) {
+         throw new IOException("Payload is corrupt");
+      }
+      return Arrays.copyOf(result, size);
+   }
+
+   /**
+    * Writes the dictionary in the form read by read.
+    *
+    * @param out The stream to write to.
+    * @throws IOException if the stream fails.
+    */
+   public void write(OutputStream out) throws IOException {
+      DataOutputStream data = new DataOutputStream(out);
+      data.writeInt(MAGIC);
+      data.writeByte(VERSION);
+      data.writeInt(id);
+      data.flush();
+      getCanonicalCode().write(out);
+   }
+
+   /**
+    * Reads a dictionary written by write.
+    *
+    * @param in The stream to read from.
+    * @return The dictionary.
+    * @throws IOException if the stream fails, ends early or does not hold a
+    *                     valid dictionary.
+    */
+   public static HuffmanDictionary read(InputStream in) throws IOException {
+      DataInputStream data = new DataInputStream(in);
+      if (data.readInt() != MAGIC) {
+         throw new IOException("Not a Huffman dictionary");
+      }
+      int version = data.readUnsignedByte();
+      if (version != VERSION) {
+         throw new IOException("Unsupported dictionary version " + version);
+      }
+      int id = data.readInt();
+      CanonicalCode code = CanonicalCode.read(in);
+      if (code.getMaxLength() > MAX_CODE_LENGTH) {
+         throw new IOException("Invalid dictionary table");
+      }
+      boolean hasEnd = false;
+      for (int i = 0; i < code.size(); i++) {
+         if (code.getSymbol(i) > END) {
+            throw new IOException("Invalid dictionary table");
+         }
+         hasEnd |= code.getSymbol(i) == END;
+      }
+      if (!hasEnd) {
+         throw new IOException("Invalid dictionary table");
+      }
+      return new HuffmanDictionary(id,
+            HuffmanCodec.builder().code(code).build());
+   }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The HuffmanDictionaryRegistry class holds the dictionaries a service knows,
+ * by ID, so a payload can be compressed and decompressed given nothing but
+ * the ID agreed on for its kind of message. It is safe for concurrent use.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanDictionaryRegistry {
+
+   /**
+    * File name extension of stored dictionaries.
+    */
+   public static final String EXTENSION = ".hufd";
+
+   private final Map<Integer, HuffmanDictionary> dictionaries =
+         new ConcurrentHashMap<>();
+
+   /**
+    * Adds a dictionary.
+    *
+    * @param dictionary The dictionary.
+    * @throws IllegalArgumentException if another dictionary has its ID.
+    */
+   public void register(HuffmanDictionary dictionary) {
+      HuffmanDictionary existing = dictionaries.putIfAbsent(
+            dictionary.getId(), dictionary);
+      if (existing != null && existing != dictionary) {
+         throw new IllegalArgumentException(
+               "Dictionary " + dictionary.getId() + " is already registered");
+      }
+   }
+
+   /**
+    * Reads a dictionary file and adds it.
+    *
+    * @param file The file, as written by HuffmanDictionary.write.
+    * @return The dictionary.
+    * @throws IOException              if the file cannot be read or is not
+    *                                  a valid dictionary.
+    * @throws IllegalArgumentException if another dictionary has its ID.
+    */
+   public HuffmanDictionary load(Path file) throws IOException {
+      HuffmanDictionary dictionary;
+      try (InputStream in = Files.newInputStream(file)) {
+         dictionary = HuffmanDictionary.read(in);
+      }
+      register(dictionary);
+      return dictionary;
+   }
+
+   /**
+    * Adds every dictionary file, by its extension, in a directory.
+    *
+    * @param dir The directory.
+    * @return The number of dictionaries added.
+    * @throws IOException if a file cannot be read or is not a valid
+    *                     dictionary.
+    */
+   public int loadAll(Path dir) throws IOException {
+      int n = 0;
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+            "*" + EXTENSION)) {
+         for (Path file : files) {
+            load(file);
+            n++;
+         }
+      }
+      return n;
+   }
+
+   /**
+    * Looks up a dictionary.
+    *
+    * @param id The dictionary ID.
+    * @return The dictionary.
+    * @throws IllegalArgumentException if no dictionary has the ID.
+    */
+   public HuffmanDictionary get(int id) {
+      HuffmanDictionary dictionary = dictionaries.get(id);
+      if (dictionary == null) {
+         throw new IllegalArgumentException("Unknown dictionary " + id);
+      }
+      return dictionary;
+   }
+
+   /**
+    * Compresses a payload with a registered dictionary.
+    *
+    * @param id      The dictionary ID.
+    * @param payload The bytes to compress.
+    * @return The compressed payload, without any header.
+    * @throws IllegalArgumentException if no dictionary has the ID.
+    */
+   public byte[] compress(int id, byte[] payload) {
+      return get(id).compress(payload);
+   }
+
+   /**
+    * Decompresses a payload with a registered dictionary.
+    *
+    * @param id     The dictionary ID.
+    * @param packed The compressed payload.
+    * @return The original bytes.
+    * @throws IOException              if the payload is truncated or
+    *                                  corrupt.
+    * @throws IllegalArgumentException if no dictionary has the ID.
+    */
+   public byte[] decompress(int id, byte[] packed) throws IOException {
+      return get(id).decompress(packed);
+   }
+}
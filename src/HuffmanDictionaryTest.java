@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HuffmanDictionaryTest {
+
+   private static final String[] PHRASES = { "get user by id",
+         "list orders for user", "update order status", "get order by id",
+         "delete user", "list users", "get status" };
+
+   private static List<byte[]> samples() {
+      List<byte[]> samples = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+         samples.add((PHRASES[i % PHRASES.length] + " " + i)
+               .getBytes(StandardCharsets.US_ASCII));
+      }
+      return samples;
+   }
+
+   @Test
+   void roundTripTest() throws IOException {
+      HuffmanDictionary dictionary = HuffmanDictionary.train(7, samples());
+      assertEquals(7, dictionary.getId());
+      byte[] payload = "get order by id 1234".getBytes(StandardCharsets.US_ASCII);
+      byte[] packed = dictionary.compress(payload);
+      // No header: the payload shrinks even at this size.
+      assertTrue(packed.length < payload.length * 3 / 4);
+      assertArrayEquals(payload, dictionary.decompress(packed));
+
+      // Bytes never seen in training still round-trip.
+      byte[] binary = new byte[256];
+      for (int i = 0; i < binary.length; i++) {
+         binary[i] = (byte) i;
+      }
+      assertArrayEquals(binary,
+            dictionary.decompress(dictionary.compress(binary)));
+      assertArrayEquals(new byte[0],
+            dictionary.decompress(dictionary.compress(new byte[0])));
+   }
+
+   @Test
+   void corruptTest() {
+      HuffmanDictionary dictionary = HuffmanDictionary.train(1, samples());
+      byte[] packed = dictionary.compress(
+            "list orders for user 42".getBytes(StandardCharsets.US_ASCII));
+      assertThrows(EOFException.class, () -> dictionary.decompress(
+            Arrays.copyOf(packed, packed.length / 2)));
+      assertThrows(IOException.class, () -> dictionary.decompress(
+            Arrays.copyOf(packed, packed.length + 2)));
+   }
+
+   @Test
+   void storeTest() throws IOException {
+      HuffmanDictionary dictionary = HuffmanDictionary.train(42, samples());
+      ByteArrayOutputStream stored = new ByteArrayOutputStream();
+      dictionary.write(stored);
+      HuffmanDictionary loaded = HuffmanDictionary.read(
+            new ByteArrayInputStream(stored.toByteArray()));
+      assertEquals(42, loaded.getId());
+      byte[] payload = "delete user 9".getBytes(StandardCharsets.US_ASCII);
+      assertArrayEquals(dictionary.compress(payload),
+            loaded.compress(payload));
+
+      // The code also loads into a HuffmanTree.
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(loaded.getCanonicalCode());
+      assertEquals(257, tree.getCanonicalCode().size());
+
+      byte[] bad = stored.toByteArray();
+      bad[0] ^= 1;
+      assertThrows(IOException.class, () -> HuffmanDictionary.read(
+            new ByteArrayInputStream(bad)));
+   }
+
+   @Test
+   void registryTest(@TempDir Path dir) throws IOException {
+      HuffmanDictionary first = HuffmanDictionary.train(1, samples());
+      HuffmanDictionary second = HuffmanDictionary.train(2,
+            List.of("something else entirely".getBytes()));
+      for (HuffmanDictionary d : List.of(first, second)) {
+         try (OutputStream out = Files.newOutputStream(dir.resolve(
+               "dict-" + d.getId() + HuffmanDictionaryRegistry.EXTENSION))) {
+            d.write(out);
+         }
+      }
+      Files.writeString(dir.resolve("notes.txt"), "not a dictionary");
+      HuffmanDictionaryRegistry registry = new HuffmanDictionaryRegistry();
+      assertEquals(2, registry.loadAll(dir));
+      byte[] payload = "list users".getBytes(StandardCharsets.US_ASCII);
+      assertArrayEquals(payload,
+            registry.decompress(1, registry.compress(1, payload)));
+      assertArrayEquals(first.compress(payload), registry.compress(1, payload));
+
+      assertThrows(IllegalArgumentException.class, () -> registry.get(3));
+      assertThrows(IllegalArgumentException.class,
+            () -> registry.register(first));
+      HuffmanDictionaryRegistry fresh = new HuffmanDictionaryRegistry();
+      fresh.register(first);
+      fresh.register(first);
+      assertSame(first, fresh.get(1));
+   }
+}
@@ -5,26 +5,56 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This driver reads in a pre-formatted text file whose name is passed as an
  * argument. It writes out the new tree codes, encoded Strings, and decoded
  * Strings to an output file.
+ *
+ * With -c or -x as the first argument it instead compresses a file into a
+ * binary archive, or extracts one: java HuffmanDriver -c|-x <IN> <OUT>
+ *
+ * With -t it trains a dictionary for small payloads on sample files, each
+ * file one payload: java HuffmanDriver -t <DICTIONARY> <ID> <SAMPLE>...
+ * A directory among the samples stands for every file below it.
  * 
  * @author jam
  *
  */
 public class HuffmanDriver {
 
+   // Files larger than this are too big for one array and are compressed
+   // through memory-mapped windows instead.
+   private static final long MAX_IN_MEMORY = Integer.MAX_VALUE - 8;
+
    public static void main(String[] args)
          throws FileNotFoundException {
 
+      if (args.length == 3
+            && (args[0].equals("-c") || args[0].equals("-x"))) {
+         archive(args[0].equals("-c"), Paths.get(args[1]),
+               Paths.get(args[2]));
+         return;
+      }
+      if (args.length >= 4 && args[0].equals("-t")) {
+         train(Paths.get(args[1]), Integer.parseInt(args[2]),
+               Arrays.copyOfRange(args, 3, args.length));
+         return;
+      }
+
       // Read in the frequency data from the input file.
 
       try {
-         HuffmanTree.SymbolNodeData[] symbolsForTree = new HuffmanTree.SymbolNodeData[26];
+         ArrayList<HuffmanTree.SymbolNodeData> symbolsForTree = new ArrayList<>();
          String inputFile = args[0];
          boolean exc = true;
          File file = new File(inputFile);
@@ -44,20 +74,21 @@ public class HuffmanDriver {
          BufferedWriter bw = new BufferedWriter(
                new OutputStreamWriter(new FileOutputStream(output)));
 
-         int i = 0;
          while (exc) {
             String unsplitLine = br.readLine();
             if (unsplitLine.equals("!!!")) {
                exc = false;
                break;
             }
-            String[] dataForNode = unsplitLine.split("-");
-            char symbolData = dataForNode[0].trim().charAt(0);
-            double freqData = Double.parseDouble(dataForNode[1]);
+            // Split on the last '-' so that '-' itself can be a symbol.
+            int split = unsplitLine.lastIndexOf('-');
+            int symbolData = unsplitLine.substring(0, split).trim()
+                  .codePointAt(0);
+            double freqData = Double
+                  .parseDouble(unsplitLine.substring(split + 1));
             HuffmanTree.SymbolNodeData node = new HuffmanTree.SymbolNodeData(
                   freqData, symbolData);
-            symbolsForTree[i] = node;
-            i++;
+            symbolsForTree.add(node);
          }
 
          // PROCESS ENCODING
@@ -86,7 +117,8 @@ public class HuffmanDriver {
          }
 
          HuffmanTree ht = new HuffmanTree();
-         ht.buildTree(symbolsForTree);
+         ht.buildTree(symbolsForTree
+               .toArray(new HuffmanTree.SymbolNodeData[0]));
          bw.write(ht.printCode());
 
          bw.write("\n---------------------\nENCODED STRINGS\n"
@@ -115,4 +147,80 @@ public class HuffmanDriver {
       }
    }
 
+   /**
+    * Compresses a file into a Huffman archive or extracts one.
+    *
+    * @param compress true to compress, false to extract.
+    * @param input    The file to read.
+    * @param output   The file to write.
+    */
+   private static void archive(boolean compress, Path input, Path output) {
+      try {
+         ParallelBlockCodec codec = new ParallelBlockCodec();
+         if (compress) {
+            if (Files.size(input) > MAX_IN_MEMORY) {
+               new MappedFileCodec().compress(input, output);
+            }
+            else {
+               codec.compress(Files.readAllBytes(input),
+                     Files.newOutputStream(output));
+            }
+         }
+         else {
+            long size;
+            try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+                  input)) {
+               size = reader.getOriginalSize();
+               if (size <= MAX_IN_MEMORY) {
+                  Files.write(output, codec.decompress(reader));
+               }
+            }
+            if (size > MAX_IN_MEMORY) {
+               new MappedFileCodec().decompress(input, output);
+            }
+         }
+         System.out.println("Wrote " + Files.size(output) + " bytes to "
+               + output);
+      }
+      catch (IOException e) {
+         System.out.println("An exception occured reading or writing the"
+               + " files.");
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Trains a dictionary on sample files and writes it.
+    *
+    * @param output  The dictionary file to write.
+    * @param id      The dictionary ID.
+    * @param samples The sample files and directories.
+    */
+   private static void train(Path output, int id, String[] samples) {
+      try {
+         List<byte[]> payloads = new ArrayList<>();
+         for (String sample : samples) {
+            try (Stream<Path> files = Files.walk(Paths.get(sample))) {
+               for (Path file : files.filter(Files::isRegularFile)
+                     .sorted().toList()) {
+                  payloads.add(Files.readAllBytes(file));
+               }
+            }
+         }
+         HuffmanDictionary dictionary = HuffmanDictionary.train(id,
+               payloads);
+         try (OutputStream out = Files.newOutputStream(output)) {
+            dictionary.write(out);
+         }
+         System.out.println("Trained dictionary " + id + " on "
+               + payloads.size() + " samples; wrote " + Files.size(output)
+               + " bytes to " + output);
+      }
+      catch (IOException e) {
+         System.out.println("An exception occured reading or writing the"
+               + " files.");
+         e.printStackTrace();
+      }
+   }
+
 }
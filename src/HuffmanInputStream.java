@@ -0,0 +1,262 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * The HuffmanInputStream class decompresses an archive written by
+ * HuffmanOutputStream or HuffmanArchiveWriter as it is read, in the manner of
+ * java.util.zip.InflaterInputStream. The archive is consumed front to back,
+ * one block at a time, so it need not be seekable and memory use is bounded
+ * by the block size. Every block is checked against its CRC-32C before any
+ * of it is returned, and the block index at the end is checked against the
+ * blocks that were read.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanInputStream extends FilterInputStream {
+
+   private final DataInputStream data;
+   private final HuffmanTree sharedTree;
+   // Receives the builds and decodes of every table.
+   private final CodecMetrics metrics;
+   // The decoded block being returned.
+   private byte[] block = new byte[0];
+   private int pos;
+   private int blockCount;
+   private boolean eof;
+   private boolean closed;
+   // The candidate table last stored in each slot and the block storing it.
+   private final HuffmanTree[] candidateTrees =
+         new HuffmanTree[HuffmanArchiveWriter.MAX_CANDIDATES];
+   private final int[] candidateBlocks =
+         new int[HuffmanArchiveWriter.MAX_CANDIDATES];
+   private final HuffmanArchiveReader.CandidateTables candidates =
+         new HuffmanArchiveReader.CandidateTables() {
+            @Override
+            public void put(int slot, int block, HuffmanTree tree) {
+               candidateTrees[slot] = tree;
+               candidateBlocks[slot] = block;
+            }
+
+            @Override
+            public HuffmanTree get(int slot, int block) throws IOException {
+               if (candidateTrees[slot] == null
+                     || candidateBlocks[slot] != block) {
+                  throw new IOException("Block " + block
+                        + " does not store candidate table " + slot);
+               }
+               return candidateTrees[slot];
+            }
+         };
+
+   /**
+    * Creates a stream that reads an archive from in, reading its header.
+    *
+    * @param in The archive.
+    * @throws IOException if the stream fails or does not hold an archive.
+    */
+   public HuffmanInputStream(InputStream in) throws IOException {
+      this(in, CodecMetrics.NONE);
+   }
+
+   /**
+    * Creates a stream that reads an archive from in, reading its header,
+    * with tables that record their builds and decodes into metrics.
+    *
+    * @param in      The archive.
+    * @param metrics The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the stream fails or does not hold an archive.
+    */
+   public HuffmanInputStream(InputStream in, CodecMetrics metrics)
+         throws IOException {
+      super(in);
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+      data = new DataInputStream(in);
+      if (data.readInt() != HuffmanArchiveWriter.MAGIC) {
+         throw new IOException("Not a Huffman archive");
+      }
+      int version = data.readUnsignedByte();
+      if (version != HuffmanArchiveWriter.VERSION) {
+         throw new IOException("Unsupported archive version " + version);
+      }
+      int flags = data.readUnsignedByte();
+      if ((flags & HuffmanArchiveWriter.SHARED_TABLE) != 0) {
+         sharedTree = new HuffmanTree();
+         sharedTree.setMetrics(this.metrics);
+         sharedTree.buildTree(CanonicalCode.read(data));
+      }
+      else {
+         sharedTree = null;
+      }
+   }
+
+   /**
+    * Reads one byte.
+    *
+    * @return The byte, or -1 at the end of the archive.
+    * @throws IOException if the stream fails or the archive is corrupt.
+    */
+   @Override
+   public int read() throws IOException {
+      ensureOpen();
+      if (pos == block.length && !nextBlock()) {
+         return -1;
+      }
+      return block[pos++] & 0xFF;
+   }
+
+   /**
+    * Reads up to len bytes into part of an array.
+    *
+    * @param b   Array receiving the bytes.
+    * @param off Index of the first byte.
+    * @param len Maximum number of bytes.
+    * @return The number of bytes read, or -1 at the end of the archive.
+    * @throws IOException if the stream fails or the archive is corrupt.
+    */
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if ((off | len | (b.length - off - len)) < 0) {
+         throw new IndexOutOfBoundsException();
+      }
+      if (len == 0) {
+         return 0;
+      }
+      if (pos == block.length && !nextBlock()) {
+         return -1;
+      }
+      int n = Math.min(len, block.length - pos);
+      System.arraycopy(block, pos, b, off, n);
+      pos += n;
+      return n;
+   }
+
+   /**
+    * Skips decompressed bytes. Blocks are still decoded and verified.
+    *
+    * @param n Number of bytes to skip.
+    * @return The number of bytes skipped.
+    * @throws IOException if the stream fails or the archive is corrupt.
+    */
+   @Override
+   public long skip(long n) throws IOException {
+      ensureOpen();
+      long skipped = 0;
+      while (skipped < n && (pos < block.length || nextBlock())) {
+         int step = (int) Math.min(n - skipped, block.length - pos);
+         pos += step;
+         skipped += step;
+      }
+      return skipped;
+   }
+
+   /**
+    * Number of decoded bytes that can be read without decoding another
+    * block.
+    *
+    * @return the bytes left in the current block.
+    * @throws IOException if the stream is closed.
+    */
+   @Override
+   public int available() throws IOException {
+      ensureOpen();
+      return block.length - pos;
+   }
+
+   /**
+    * Mark and reset are not supported.
+    *
+    * @return false.
+    */
+   @Override
+   public boolean markSupported() {
+      return false;
+   }
+
+   @Override
+   public synchronized void mark(int readlimit) {
+   }
+
+   @Override
+   public synchronized void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+   }
+
+   /**
+    * Closes the underlying stream.
+    *
+    * @throws IOException if the stream fails to close.
+    */
+   @Override
+   public void close() throws IOException {
+      if (!closed) {
+         closed = true;
+         in.close();
+      }
+   }
+
+   /**
+    * Decodes the next non-empty block into block, or checks the index once
+    * the blocks run out.
+    *
+    * @return false at the end of the archive.
+    */
+   private boolean nextBlock() throws IOException {
+      while (!eof) {
+         int mode = data.read();
+         if (mode < 0) {
+            throw new EOFException("Archive is truncated");
+         }
+         if (mode == HuffmanArchiveWriter.END_OF_BLOCKS) {
+            readIndex();
+            eof = true;
+            break;
+         }
+         block = HuffmanArchiveReader.decodeBlock(data, mode, sharedTree,
+               candidates, blockCount++, metrics);
+         pos = 0;
+         if (block.length > 0) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Reads the block index and trailer, checking them against the blocks
+    * that were decoded.
+    */
+   private void readIndex() throws IOException {
+      CRC32C crc = new CRC32C();
+      byte[] entry = new byte[HuffmanArchiveWriter.INDEX_ENTRY_SIZE];
+      data.readFully(entry, 0, 4);
+      crc.update(entry, 0, 4);
+      int count = ((entry[0] & 0xFF) << 24) | ((entry[1] & 0xFF) << 16)
+            | ((entry[2] & 0xFF) << 8) | (entry[3] & 0xFF);
+      if (count != blockCount) {
+         throw new IOException("Block index lists " + count
+               + " blocks but the archive holds " + blockCount);
+      }
+      for (int i = 0; i < count; i++) {
+         data.readFully(entry);
+         crc.update(entry);
+      }
+      data.readLong();
+      int expectedCrc = data.readInt();
+      if (data.readInt() != HuffmanArchiveWriter.MAGIC
+            || (int) crc.getValue() != expectedCrc) {
+         throw new IOException("Corrupt archive trailer");
+      }
+   }
+
+   private void ensureOpen() throws IOException {
+      if (closed) {
+         throw new IOException("Stream closed");
+      }
+   }
+}
@@ -0,0 +1,210 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The HuffmanOutputStream class compresses the bytes written to it into the
+ * archive format of HuffmanArchiveWriter, in the manner of
+ * java.util.zip.DeflaterOutputStream. Bytes are gathered into one block at a
+ * time, which is coded and written out as soon as it is full, so memory use is
+ * bounded by the block size however much data passes through. The archive is
+ * completed by finish or close; HuffmanInputStream reads it back.
+ *
+ * @author jam
+ *
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+   /**
+    * The block being filled.
+    */
+   protected byte[] buf;
+   /**
+    * Number of bytes in buf.
+    */
+   protected int count;
+
+   private final HuffmanArchiveWriter writer;
+   private boolean finished;
+
+   /**
+    * Creates a stream with per-block tables and the default block size.
+    *
+    * @param out The stream receiving the archive.
+    * @throws IOException if the archive header cannot be written.
+    */
+   public HuffmanOutputStream(OutputStream out) throws IOException {
+      this(out, HuffmanArchiveWriter.DEFAULT_BLOCK_SIZE, null);
+   }
+
+   /**
+    * Creates a stream with per-block tables.
+    *
+    * @param out       The stream receiving the archive.
+    * @param blockSize Number of bytes per block.
+    * @throws IOException if the archive header cannot be written.
+    */
+   public HuffmanOutputStream(OutputStream out, int blockSize)
+         throws IOException {
+      this(out, blockSize, null);
+   }
+
+   /**
+    * Creates a stream that codes blocks with a shared table where it can.
+    *
+    * @param out        The stream receiving the archive.
+    * @param blockSize  Number of bytes per block.
+    * @param sharedCode The shared code over byte values, or null for
+    *                   per-block tables.
+    * @throws IOException if the archive header cannot be written.
+    */
+   public HuffmanOutputStream(OutputStream out, int blockSize,
+         CanonicalCode sharedCode) throws IOException {
+      this(out, blockSize, sharedCode, 0);
+   }
+
+   /**
+    * Creates a stream that codes each block with the cheapest of the shared
+    * table, a set of candidate tables and a new table; see
+    * HuffmanArchiveWriter.
+    *
+    * @param out             The stream receiving the archive.
+    * @param blockSize       Number of bytes per block.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        HuffmanArchiveWriter.MAX_CANDIDATES.
+    * @throws IOException if the archive header cannot be written.
+    */
+   public HuffmanOutputStream(OutputStream out, int blockSize,
+         CanonicalCode sharedCode, int candidateTables) throws IOException {
+      this(out, blockSize, sharedCode, candidateTables, CodecMetrics.NONE);
+   }
+
+   /**
+    * Creates a stream whose tables record their builds and encodes into
+    * metrics.
+    *
+    * @param out             The stream receiving the archive.
+    * @param blockSize       Number of bytes per block.
+    * @param sharedCode      The shared code over byte values, or null.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        HuffmanArchiveWriter.MAX_CANDIDATES.
+    * @param metrics         The metrics, or CodecMetrics.NONE.
+    * @throws IOException if the archive header cannot be written.
+    */
+   public HuffmanOutputStream(OutputStream out, int blockSize,
+         CanonicalCode sharedCode, int candidateTables, CodecMetrics metrics)
+         throws IOException {
+      super(out);
+      if (blockSize < 1 || blockSize > HuffmanArchiveWriter.MAX_BLOCK_SIZE) {
+         throw new IllegalArgumentException(
+               "Unsupported block size " + blockSize);
+      }
+      buf = new byte[blockSize];
+      writer = new HuffmanArchiveWriter(out, sharedCode, candidateTables,
+            false, false, metrics);
+   }
+
+   /**
+    * Writes one byte.
+    *
+    * @param b The byte, in the low 8 bits.
+    * @throws IOException if the stream fails or is finished.
+    */
+   @Override
+   public void write(int b) throws IOException {
+      ensureOpen();
+      buf[count++] = (byte) b;
+      if (count == buf.length) {
+         writeBuffer();
+      }
+   }
+
+   /**
+    * Writes part of an array.
+    *
+    * @param b   The bytes to write.
+    * @param off Index of the first byte.
+    * @param len Number of bytes.
+    * @throws IOException if the stream fails or is finished.
+    */
+   @Override
+   public void write(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if ((off | len | (b.length - off - len)) < 0) {
+         throw new IndexOutOfBoundsException();
+      }
+      // Whole blocks are coded straight from the caller's array.
+      if (count == 0) {
+         while (len >= buf.length) {
+            writer.writeBlock(b, off, buf.length);
+            off += buf.length;
+            len -= buf.length;
+         }
+      }
+      while (len > 0) {
+         int n = Math.min(len, buf.length - count);
+         System.arraycopy(b, off, buf, count, n);
+         count += n;
+         off += n;
+         len -= n;
+         if (count == buf.length) {
+            writeBuffer();
+         }
+      }
+   }
+
+   /**
+    * Flushes the underlying stream. A partly filled block is kept until it
+    * fills or the stream is finished, since every block costs a header.
+    *
+    * @throws IOException if the stream fails.
+    */
+   @Override
+   public void flush() throws IOException {
+      out.flush();
+   }
+
+   /**
+    * Writes any buffered bytes as a last block and completes the archive
+    * without closing the underlying stream.
+    *
+    * @throws IOException if the stream fails.
+    */
+   public void finish() throws IOException {
+      if (finished) {
+         return;
+      }
+      if (count > 0) {
+         writeBuffer();
+      }
+      writer.finish();
+      finished = true;
+   }
+
+   /**
+    * Completes the archive and closes the underlying stream.
+    *
+    * @throws IOException if the stream fails.
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         finish();
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   private void writeBuffer() throws IOException {
+      writer.writeBlock(buf, 0, count);
+      count = 0;
+   }
+
+   private void ensureOpen() throws IOException {
+      if (finished) {
+         throw new IOException("Stream is finished");
+      }
+   }
+}
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+
+class HuffmanStreamTest {
+
+   private static byte[] compress(byte[] data, int blockSize)
+         throws IOException {
+      ByteArrayOutputStream archive = new ByteArrayOutputStream();
+      Random random = new Random(5);
+      try (HuffmanOutputStream out = new HuffmanOutputStream(archive,
+            blockSize)) {
+         // Mix single bytes, small writes and writes spanning blocks.
+         int off = 0;
+         while (off < data.length) {
+            int len = Math.min(data.length - off,
+                  random.nextInt(3 * blockSize));
+            if (len == 1) {
+               out.write(data[off]);
+            }
+            else {
+               out.write(data, off, len);
+            }
+            off += len;
+         }
+      }
+      return archive.toByteArray();
+   }
+
+   @Test
+   void roundTripTest() throws IOException {
+      byte[] data = TestData.skewedLetters(200_000, 1, 6);
+      byte[] archive = compress(data, 10_000);
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(archive))) {
+         assertArrayEquals(data, in.readAllBytes());
+         assertEquals(-1, in.read());
+      }
+      // The streams write the same format the archive reader reads.
+      assertArrayEquals(data, HuffmanArchiveReader.decompress(archive));
+      assertArrayEquals(data, new HuffmanInputStream(
+            new ByteArrayInputStream(HuffmanArchiveWriter.compress(data,
+                  7000))).readAllBytes());
+   }
+
+   @Test
+   void byteAtATimeTest() throws IOException {
+      byte[] data = TestData.skewedLetters(5000, 2, 6);
+      InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(compress(data, 512)));
+      for (int i = 0; i < 1000; i++) {
+         assertEquals(data[i] & 0xFF, in.read());
+      }
+      assertEquals(3000, in.skip(3000));
+      byte[] rest = new byte[1500];
+      assertEquals(1000, in.readNBytes(rest, 0, 1500));
+      assertArrayEquals(Arrays.copyOfRange(data, 4000, 5000),
+            Arrays.copyOf(rest, 1000));
+      assertEquals(0, in.skip(10));
+   }
+
+   @Test
+   void finishTest() throws IOException {
+      ByteArrayOutputStream archive = new ByteArrayOutputStream();
+      HuffmanOutputStream out = new HuffmanOutputStream(archive, 100);
+      out.write(new byte[0]);
+      out.finish();
+      // The underlying stream stays open after finish.
+      archive.write(42);
+      assertThrows(IOException.class, () -> out.write(1));
+      InputStream in = new ByteArrayInputStream(archive.toByteArray());
+      assertEquals(-1, new HuffmanInputStream(in).read());
+      assertEquals(42, in.read());
+   }
+
+   @Test
+   void unboundedTest() throws IOException {
+      // 32 MiB goes through in 64 KiB chunks; only the archive, a fraction
+      // of the data, is ever held in memory.
+      long size = 32L << 20;
+      CRC32C expected = new CRC32C();
+      CRC32C actual = new CRC32C();
+      Random random = new Random(3);
+      byte[] chunk = new byte[65_536];
+      ByteArrayOutputStream archive = new ByteArrayOutputStream();
+      try (HuffmanOutputStream out = new HuffmanOutputStream(archive)) {
+         for (long done = 0; done < size; done += chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+               chunk[i] = (byte) (random.nextInt(16) * random.nextInt(16));
+            }
+            expected.update(chunk);
+            out.write(chunk);
+         }
+      }
+      try (InputStream in = new HuffmanInputStream(
+            new ByteArrayInputStream(archive.toByteArray()))) {
+         long total = 0;
+         for (int n; (n = in.read(chunk)) > 0;) {
+            actual.update(chunk, 0, n);
+            total += n;
+         }
+         assertEquals(size, total);
+      }
+      assertEquals(expected.getValue(), actual.getValue());
+   }
+
+   @Test
+   void corruptionTest() throws IOException {
+      byte[] data = TestData.skewedLetters(30_000, 4, 6);
+      byte[] archive = compress(data, 10_000);
+      byte[] payload = archive.clone();
+      payload[archive.length / 2] ^= 0x08;
+      assertThrows(IOException.class, () -> new HuffmanInputStream(
+            new ByteArrayInputStream(payload)).readAllBytes());
+      byte[] truncated = Arrays.copyOf(archive, archive.length - 10);
+      assertThrows(IOException.class, () -> new HuffmanInputStream(
+            new ByteArrayInputStream(truncated)).readAllBytes());
+      assertThrows(IOException.class, () -> new HuffmanInputStream(
+            new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 })));
+   }
+
+   @Test
+   void corruptSizeTest() throws IOException {
+      byte[] archive = compress(TestData.skewedLetters(20_000, 6, 6), 10_000);
+      // The first block's original size follows its table.
+      int at = 7;
+      while (ByteBuffer.wrap(archive, at, 4).getInt() != 10_000) {
+         at++;
+      }
+      // A size the writer never produces, then a payload too large for it.
+      byte[] original = archive.clone();
+      ByteBuffer.wrap(original).putInt(at, Integer.MAX_VALUE);
+      assertThrows(IOException.class, () -> new HuffmanInputStream(
+            new ByteArrayInputStream(original)).readAllBytes());
+      byte[] payload = archive.clone();
+      ByteBuffer.wrap(payload).putInt(at + 4, 1 << 30);
+      assertThrows(IOException.class, () -> new HuffmanInputStream(
+            new ByteArrayInputStream(payload)).readAllBytes());
+      assertThrows(IllegalArgumentException.class,
+            () -> new HuffmanOutputStream(new ByteArrayOutputStream(),
+                  HuffmanArchiveWriter.MAX_BLOCK_SIZE + 1));
+   }
+}
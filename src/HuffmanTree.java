@@ -1,11 +1,21 @@
-import java.util.Map;
-import java.util.TreeMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * The HuffmanTree class provides methods for building a Huffman tree to encode
  * an array of symbols in a binary string, printing the tree in preorder
  * traversal (deployed to the BinaryTree class) as well as decoding a binary
  * message.
+ *
+ * The tree is kept as a FlatHuffmanTree, one int per branch, next to the
+ * code table. BinaryTree nodes only exist while the priority queue joins
+ * subtrees, and a tree rebuilt from a canonical code or from counts never
+ * creates them.
+ *
+ * A HuffmanTree is rebuilt in place by every buildTree call, so one instance
+ * must not be shared between threads; HuffmanCodec is the immutable form to
+ * share instead.
  * 
  * @author jam
  *
@@ -21,8 +31,8 @@ public class HuffmanTree {
 
       // Frequency assigned to a given symbol.
       private double freq;
-      // char in the node
-      private char symbol;
+      // Symbol in the node: a char, a byte value or a Unicode code point
+      private int symbol;
 
       /**
        * Constructor for the node data.
@@ -35,12 +45,38 @@ public class HuffmanTree {
          this.symbol = symbol;
       }
 
+      /**
+       * Constructor for node data holding a byte value (0 to 255) or a Unicode
+       * code point.
+       * 
+       * @param freq
+       * @param symbol
+       * @throws IllegalArgumentException if symbol is not a valid code point.
+       */
+      public SymbolNodeData(double freq, int symbol) {
+         if (!Character.isValidCodePoint(symbol)) {
+            throw new IllegalArgumentException(
+                  "Invalid symbol " + symbol);
+         }
+         this.freq = freq;
+         this.symbol = symbol;
+      }
+
       /**
        * Retriever
        * 
        * @return
        */
       public char getSymbol() {
+         return (char) symbol;
+      }
+
+      /**
+       * Retriever for symbols outside the char range.
+       * 
+       * @return the symbol as a byte value or code point.
+       */
+      public int getCodePoint() {
          return symbol;
       }
 
@@ -90,11 +126,52 @@ public class HuffmanTree {
    }
 
    /**
-    * A reference to the completed Huffman tree.
+    * The completed Huffman tree, built by every buildTree call.
+    */
+   protected FlatHuffmanTree flatTree = new FlatHuffmanTree(new int[0], 0);
+   /**
+    * Codeword bits (right-aligned) and lengths, indexed by slot. Filled in by
+    * buildTree for the bit-packed encoder. When every symbol is below
+    * DENSE_LIMIT (bytes, ASCII, Latin text) the slot is the symbol itself;
+    * otherwise symbols are given consecutive slots through symbolSlots, and
+    * slotSymbols maps them back.
+    */
+   protected long[] codeBits = new long[0];
+   protected byte[] codeLengths = new byte[0];
+   /**
+    * Frequency of the symbol in each slot, as given to buildTree; 0 for trees
+    * rebuilt from a canonical code.
+    */
+   protected double[] frequencies = new double[0];
+   protected IntIntMap symbolSlots;
+   protected int[] slotSymbols;
+
+   // Largest alphabet that is indexed directly by symbol.
+   static final int DENSE_LIMIT = 1 << 12;
+   /**
+    * Lookup table used by decode, or null when the codes are too long for one.
     */
-   protected BinaryTree<SymbolNodeData> huffTree;
-   protected String preOrderResult = "";
-   protected TreeMap<Character, String> codeMap = new TreeMap<Character, String>();
+   protected HuffmanDecodeTable decodeTable;
+   /**
+    * The canonical code the tree was laid out from, or null.
+    */
+   protected CanonicalCode canonicalCode;
+   /**
+    * Extra bits spent because of the last code length cap.
+    */
+   protected double lengthLimitCost;
+
+   /**
+    * Receives a record of every build, encode and decode.
+    */
+   protected CodecMetrics metrics = CodecMetrics.NONE;
+
+   // Computes the lengths of trees built from counts; kept so that
+   // rebuilding block after block reuses its scratch arrays.
+   private CodeLengths calculator;
+
+   // Number of symbols decode pulls from the table per call.
+   private static final int DECODE_CHUNK = 1024;
 
    /**
     * Builds the Huffman tree using the given alphabet and freqs.
@@ -104,6 +181,17 @@ public class HuffmanTree {
     * @param symbols An array of SymbolNodeData objects
     */
    public void buildTree(SymbolNodeData[] symbols) {
+      long start = System.nanoTime();
+      buildFromQueue(symbols);
+      recordBuild(start);
+   }
+
+   /**
+    * Builds the tree through the priority queue of subtrees.
+    *
+    * @param symbols An array of SymbolNodeData objects
+    */
+   private void buildFromQueue(SymbolNodeData[] symbols) {
       PriorityQueue<BinaryTree<SymbolNodeData>> huffQ = new PriorityQueue<>(
             (lt, rt) -> Double.compare(lt.getData().freq,
                   rt.getData().freq));
@@ -124,68 +212,725 @@ public class HuffmanTree {
          huffQ.offer(newTree);
       }
 
-      // The queue should now contain only one item.
-      huffTree = huffQ.poll();
+      // The queue should now contain only one item. Only its flat copy is
+      // kept.
+      BinaryTree<SymbolNodeData> huffTree = huffQ.poll();
+      if (huffTree == null) {
+         flatTree = new FlatHuffmanTree(new int[0], 0);
+      }
+      else if (huffTree.isLeaf()) {
+         int leaf = ~huffTree.getData().symbol;
+         flatTree = new FlatHuffmanTree(new int[] { leaf, leaf }, 1);
+      }
+      else {
+         int[] children = new int[2 * (symbols.length - 1)];
+         flatten(huffTree.cursor(), 0, children, 1);
+         flatTree = new FlatHuffmanTree(children, symbols.length);
+      }
+      canonicalCode = null;
+      buildCodeTable();
+      setFrequencies(symbols);
    }
 
    /**
-    * Outputs the resulting code.
+    * Copies the children of the internal node under the cursor into the
+    * flat layout, numbering internal nodes in preorder.
     *
-    * @param out  A PrintStream to write the output to
-    * @param code The code up to this node
-    * @param tree The current node in the tree
+    * @param tree     A cursor at an internal node
+    * @param node     The number of that node
+    * @param children The flat layout being filled
+    * @param next     The first unused node number
+    * @return The first node number still unused afterwards.
     */
-   private void printCode(String code,
-         BinaryTree<SymbolNodeData> tree) {
-      SymbolNodeData theData = tree.getData();
-      if (theData.symbol != '\u0000') {
-         if (theData.symbol == ' ') {
-            preOrderResult = (preOrderResult + ("space: " + code));
+   private static int flatten(BinaryTree.Cursor<SymbolNodeData> tree,
+         int node, int[] children, int next) {
+      for (int bit = 0; bit < 2; bit++) {
+         if (bit == 0 ? tree.left() : tree.right()) {
+            if (tree.isLeaf()) {
+               children[2 * node + bit] = ~tree.getData().symbol;
+            }
+            else {
+               children[2 * node + bit] = next;
+               next = flatten(tree, next, children, next + 1);
+            }
+            tree.up();
          }
-         else {
-            preOrderResult = (preOrderResult
-                  + (theData.symbol + ": " + code + "\n"));
+      }
+      return next;
+   }
+
+   /**
+    * Builds a canonical Huffman tree over byte values, counting their
+    * frequencies in data first.
+    *
+    * @param data Sample of the bytes to be encoded.
+    * @return The tree.
+    */
+   public static HuffmanTree forBytes(byte[] data) {
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(FrequencyCounter.countBytes(data));
+      return ht;
+   }
+
+   /**
+    * Builds a canonical Huffman tree over Unicode code points, counting their
+    * frequencies in text first.
+    *
+    * @param text Sample of the text to be encoded.
+    * @return The tree.
+    */
+   public static HuffmanTree forText(CharSequence text) {
+      IntIntMap counts = FrequencyCounter.countCodePoints(text);
+      int[] codePoints = counts.keys();
+      SymbolNodeData[] symbols = new SymbolNodeData[codePoints.length];
+      for (int i = 0; i < codePoints.length; i++) {
+         symbols[i] = new SymbolNodeData(
+               counts.get(codePoints[i], 0), codePoints[i]);
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols, true);
+      return ht;
+   }
+
+   /**
+    * Builds a canonical Huffman tree from symbol counts, such as those
+    * returned by FrequencyCounter.countBytes. Symbols with a count of 0 get
+    * no code. The code lengths are computed in linear time by CodeLengths
+    * rather than through the priority queue.
+    *
+    * @param counts Counts indexed by symbol.
+    */
+   public void buildTree(long[] counts) {
+      buildTree(counts, CanonicalCode.MAX_LENGTH);
+   }
+
+   /**
+    * Builds a canonical Huffman tree from symbol counts with no code longer
+    * than maxCodeLength bits. If the Huffman code is deeper than that, the
+    * optimal length-limited code is used instead, and getLengthLimitCost
+    * reports how many more bits it spends on the counted input.
+    *
+    * @param counts        Counts indexed by symbol.
+    * @param maxCodeLength Longest code length allowed, such as 11, 12 or 15.
+    * @throws IllegalArgumentException if the symbols do not fit in codes of
+    *                                  maxCodeLength bits.
+    */
+   public void buildTree(long[] counts, int maxCodeLength) {
+      if (calculator == null
+            || calculator.getAlphabetSize() < counts.length) {
+         calculator = new CodeLengths(Math.max(1, counts.length));
+      }
+      buildTree(counts, maxCodeLength, calculator);
+   }
+
+   /**
+    * Builds a canonical Huffman tree from symbol counts as
+    * buildTree(long[], int) does, with the given calculator's scratch
+    * arrays. Callers that build many trees, such as one per block, can share
+    * one calculator between them instead of giving each tree its own.
+    *
+    * @param counts        Counts indexed by symbol.
+    * @param maxCodeLength Longest code length allowed, such as 11, 12 or 15.
+    * @param calculator    Calculator for at least counts.length symbols.
+    * @throws IllegalArgumentException if the symbols do not fit in codes of
+    *                                  maxCodeLength bits, or the calculator
+    *                                  is too small.
+    */
+   public void buildTree(long[] counts, int maxCodeLength,
+         CodeLengths calculator) {
+      if (calculator.getAlphabetSize() < counts.length) {
+         throw new IllegalArgumentException("Calculator for "
+               + calculator.getAlphabetSize() + " symbols cannot take "
+               + counts.length);
+      }
+      long start = System.nanoTime();
+      buildFromCounts(counts, maxCodeLength, calculator);
+      recordBuild(start);
+   }
+
+   /**
+    * Builds the canonical tree for symbol counts under a code length cap.
+    *
+    * @param counts        Counts indexed by symbol.
+    * @param maxCodeLength Longest code length allowed.
+    * @param calculator    Calculator for at least counts.length symbols.
+    */
+   private void buildFromCounts(long[] counts, int maxCodeLength,
+         CodeLengths calculator) {
+      lengthLimitCost = 0;
+      if (counts.length == 0) {
+         layout(new CanonicalCode(new int[0], new byte[0]));
+         return;
+      }
+      byte[] lengths = calculator.scratchLengths();
+      // Only the first counts.length entries are computed.
+      Arrays.fill(lengths, counts.length, lengths.length, (byte) 0);
+      calculator.compute(counts, lengths, maxCodeLength);
+      double limitedCost = 0;
+      for (int s = 0; s < counts.length; s++) {
+         limitedCost += (double) counts[s] * lengths[s];
+      }
+      CanonicalCode code = CanonicalCode.fromLengths(lengths);
+      layout(code);
+      for (int i = 0; i < code.size(); i++) {
+         int s = code.getSymbol(i);
+         frequencies[slotOf(s)] = counts[s];
+      }
+      if (code.getMaxLength() == maxCodeLength) {
+         // The cap may have bound; compare with the unrestricted code. The
+         // code has copied the limited lengths, so the scratch is free.
+         calculator.compute(counts, lengths, Integer.MAX_VALUE);
+         double cost = 0;
+         for (int s = 0; s < counts.length; s++) {
+            cost += (double) counts[s] * lengths[s];
          }
+         lengthLimitCost = limitedCost - cost;
+      }
+   }
+
+   /**
+    * Builds a canonical Huffman tree using the given alphabet and freqs with
+    * no code longer than maxCodeLength bits, falling back to the optimal
+    * length-limited code (found by package-merge) when the Huffman code is
+    * deeper. getLengthLimitCost reports the extra frequency-weighted bits.
+    *
+    * @param symbols       An array of SymbolNodeData objects
+    * @param maxCodeLength Longest code length allowed, such as 11, 12 or 15.
+    * @throws IllegalArgumentException if the symbols do not fit in codes of
+    *                                  maxCodeLength bits.
+    */
+   public void buildTree(SymbolNodeData[] symbols, int maxCodeLength) {
+      long start = System.nanoTime();
+      buildLimited(symbols, maxCodeLength);
+      recordBuild(start);
+   }
+
+   /**
+    * Builds the canonical tree for the symbols under a code length cap.
+    *
+    * @param symbols       An array of SymbolNodeData objects
+    * @param maxCodeLength Longest code length allowed.
+    */
+   private void buildLimited(SymbolNodeData[] symbols, int maxCodeLength) {
+      buildCanonical(symbols);
+      lengthLimitCost = 0;
+      if (flatTree.getLeafCount() == 0
+            || canonicalCode.getMaxLength() <= maxCodeLength) {
+         return;
+      }
+      symbols = symbols.clone();
+      Arrays.sort(symbols, Comparator
+            .comparingDouble(SymbolNodeData::getFreq)
+            .thenComparingInt(SymbolNodeData::getCodePoint));
+      int n = symbols.length;
+      double[] weights = new double[n];
+      int[] coded = new int[n];
+      double unlimitedCost = 0;
+      for (int i = 0; i < n; i++) {
+         weights[i] = symbols[i].freq;
+         coded[i] = symbols[i].symbol;
+         unlimitedCost += symbols[i].freq
+               * codeLengths[slotOf(symbols[i].symbol)];
+      }
+      byte[] lengths = new byte[n];
+      CodeLengths.packageMerge(weights, n, maxCodeLength, lengths);
+      double limitedCost = 0;
+      for (int i = 0; i < n; i++) {
+         limitedCost += weights[i] * lengths[i];
+      }
+      layout(new CanonicalCode(coded, lengths));
+      setFrequencies(symbols);
+      lengthLimitCost = limitedCost - unlimitedCost;
+   }
+
+   /**
+    * The price of the last code length cap: how many more bits (weighted by
+    * frequency) the length-limited code spends than the unrestricted Huffman
+    * code would. It is 0 when the cap did not change the code.
+    *
+    * @return The extra frequency-weighted bits.
+    */
+   public double getLengthLimitCost() {
+      return lengthLimitCost;
+   }
+
+   /**
+    * Sets the metrics that receive a record of every later build, encode
+    * and decode, such as a LongAdderCodecMetrics shared by many trees.
+    *
+    * @param metrics The metrics, or CodecMetrics.NONE to record nothing.
+    */
+   public void setMetrics(CodecMetrics metrics) {
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+   }
+
+   /**
+    * The metrics this tree records into.
+    *
+    * @return the metrics.
+    */
+   public CodecMetrics getMetrics() {
+      return metrics;
+   }
+
+   /**
+    * Reports a finished build, with the code length and entropy of the leaf
+    * frequencies.
+    *
+    * @param start System.nanoTime() when the build started.
+    */
+   private void recordBuild(long start) {
+      if (metrics == CodecMetrics.NONE) {
+         return;
+      }
+      long nanos = System.nanoTime() - start;
+      double weight = 0;
+      for (double freq : frequencies) {
+         weight += freq;
+      }
+      double codeBits = 0;
+      double entropyBits = 0;
+      for (int slot = 0; slot < frequencies.length; slot++) {
+         double freq = frequencies[slot];
+         if (freq > 0) {
+            codeBits += freq * codeLengths[slot];
+            entropyBits -= freq * Math.log(freq / weight) / Math.log(2);
+         }
+      }
+      metrics.recordBuild(nanos, flatTree.getLeafCount(), weight, codeBits,
+            entropyBits);
+   }
+
+   /**
+    * Starts timing an encode or decode, unless nothing is recorded.
+    *
+    * @return System.nanoTime(), or 0 when there are no metrics.
+    */
+   private long startTimer() {
+      return metrics == CodecMetrics.NONE ? 0 : System.nanoTime();
+   }
+
+   private void recordEncode(long start, long symbols, long bits) {
+      if (metrics != CodecMetrics.NONE) {
+         metrics.recordEncode(System.nanoTime() - start, symbols, bits);
+      }
+   }
+
+   private void recordDecode(long start, long bits, long symbols) {
+      if (metrics != CodecMetrics.NONE) {
+         metrics.recordDecode(System.nanoTime() - start, bits, symbols);
+      }
+   }
+
+   /**
+    * Builds the Huffman tree using the given alphabet and freqs. In canonical
+    * mode only the code length of each symbol is kept from the Huffman
+    * construction, and the tree is rebuilt so that codewords are assigned in
+    * (length, symbol) order. The symbols are sorted by (frequency, symbol)
+    * before the construction, so the resulting codes depend only on the
+    * frequency table and not on the order it was given in or on how the queue
+    * breaks ties. The table can be shipped as getCanonicalCode().
+    *
+    * @param symbols   An array of SymbolNodeData objects
+    * @param canonical Whether to assign canonical codewords
+    */
+   public void buildTree(SymbolNodeData[] symbols, boolean canonical) {
+      long start = System.nanoTime();
+      if (canonical) {
+         buildCanonical(symbols);
       }
       else {
-         printCode(code + "0", tree.getLeftSubtree());
-         printCode(code + "1", tree.getRightSubtree());
+         buildFromQueue(symbols);
       }
+      recordBuild(start);
    }
 
    /**
-    * Outputs the resulting code.
+    * Builds the canonical tree for the symbols.
     *
-    * @param out A PrintStream to write the output to
+    * @param symbols An array of SymbolNodeData objects
     */
-   public String printCode() {
-      preOrderResult = "";
-      printCode("", huffTree);
-      return preOrderResult;
+   private void buildCanonical(SymbolNodeData[] symbols) {
+      symbols = symbols.clone();
+      Arrays.sort(symbols, Comparator
+            .comparingDouble(SymbolNodeData::getFreq)
+            .thenComparingInt(SymbolNodeData::getCodePoint));
+      byte[] heapLengths = codeLengths(symbols);
+      if (heapLengths != null) {
+         int[] coded = new int[symbols.length];
+         for (int i = 0; i < coded.length; i++) {
+            coded[i] = symbols[i].symbol;
+         }
+         layout(new CanonicalCode(coded, heapLengths));
+         setFrequencies(symbols);
+         return;
+      }
+      // Fractional frequencies: build through the object queue.
+      buildFromQueue(symbols);
+      if (flatTree.getLeafCount() > 0) {
+         int n = 0;
+         for (byte len : codeLengths) {
+            if (len != 0) {
+               n++;
+            }
+         }
+         int[] coded = new int[n];
+         byte[] lengths = new byte[n];
+         n = 0;
+         for (int slot = 0; slot < codeLengths.length; slot++) {
+            if (codeLengths[slot] != 0) {
+               coded[n] = symbolSlots == null ? slot : slotSymbols[slot];
+               lengths[n++] = codeLengths[slot];
+            }
+         }
+         layout(new CanonicalCode(coded, lengths));
+         setFrequencies(symbols);
+      }
    }
 
-   private void printCodeWithFrequency(String code,
-         BinaryTree<SymbolNodeData> tree) {
-      SymbolNodeData theData = tree.getData();
-      if (theData.symbol != '\u0000') {
-         if (theData.symbol == ' ') {
-            preOrderResult = (preOrderResult + ("space: " + code));
+   /**
+    * Computes Huffman code lengths for symbols with whole-number frequencies
+    * using a LongHeap of packed (frequency, node) keys, so that no tree
+    * nodes are created and ties always go to the lower node index: the
+    * leaves in the order given, then internal nodes in the order made.
+    *
+    * @param sorted The symbols, sorted by (frequency, symbol).
+    * @return The code length of each symbol, or null if a frequency is
+    *         fractional or the total is too large to pack.
+    * @throws IllegalStateException if a code would be longer than 64 bits.
+    */
+   private static byte[] codeLengths(SymbolNodeData[] sorted) {
+      int n = sorted.length;
+      if (n == 1) {
+         return new byte[] { 1 };
+      }
+      int nodes = Math.max(2 * n - 1, 0);
+      int indexBits = 32 - Integer.numberOfLeadingZeros(nodes);
+      long limit = 1L << (63 - indexBits);
+      long[] keys = new long[n];
+      double total = 0;
+      for (int i = 0; i < n; i++) {
+         double freq = sorted[i].freq;
+         total += freq;
+         if (freq < 0 || freq != Math.rint(freq) || total >= limit) {
+            return null;
          }
-         else {
-            preOrderResult = (preOrderResult
-                  + (theData.getNodeData() + ": " + code + "\n"));
+         keys[i] = LongHeap.pack((long) freq, i, indexBits);
+      }
+      LongHeap heap = LongHeap.heapify(keys, n, 4);
+      long indexMask = (1L << indexBits) - 1;
+      int[] parent = new int[nodes];
+      for (int next = n; heap.size() > 1; next++) {
+         long a = heap.poll();
+         long b = heap.poll();
+         parent[(int) (a & indexMask)] = next;
+         parent[(int) (b & indexMask)] = next;
+         heap.offer(LongHeap.pack((a >>> indexBits) + (b >>> indexBits),
+               next, indexBits));
+      }
+      // Parents come after their children, so depths fill in from the root
+      // down.
+      int[] depth = new int[nodes];
+      for (int i = nodes - 2; i >= 0; i--) {
+         depth[i] = depth[parent[i]] + 1;
+      }
+      byte[] lengths = new byte[n];
+      for (int i = 0; i < n; i++) {
+         if (depth[i] > CanonicalCode.MAX_LENGTH) {
+            throw new IllegalStateException("Code for '"
+                  + Character.toString(sorted[i].symbol)
+                  + "' is longer than 64 bits");
+         }
+         lengths[i] = (byte) depth[i];
+      }
+      return lengths;
+   }
+
+   /**
+    * Rebuilds the Huffman tree from a canonical code, such as one read back
+    * with CanonicalCode.read. The leaves carry no frequencies.
+    *
+    * @param code The canonical code.
+    */
+   public void buildTree(CanonicalCode code) {
+      long start = System.nanoTime();
+      layout(code);
+      recordBuild(start);
+   }
+
+   /**
+    * Lays out the tree so each symbol sits at the end of the path spelled by
+    * its canonical codeword. The frequencies are left at 0.
+    *
+    * @param code The canonical code.
+    */
+   private void layout(CanonicalCode code) {
+      flatTree = new FlatHuffmanTree(code);
+      canonicalCode = code;
+      buildCodeTable();
+   }
+
+   /**
+    * Records the frequency of each coded symbol.
+    *
+    * @param symbols The symbols the tree was built from.
+    */
+   private void setFrequencies(SymbolNodeData[] symbols) {
+      for (SymbolNodeData symbol : symbols) {
+         int slot = slotOf(symbol.symbol);
+         if (slot >= 0) {
+            frequencies[slot] = symbol.freq;
          }
       }
+   }
+
+   /**
+    * The canonical code of a tree built in canonical mode or from a canonical
+    * code.
+    *
+    * @return The canonical code.
+    * @throws IllegalStateException if the tree was built otherwise.
+    */
+   public CanonicalCode getCanonicalCode() {
+      if (canonicalCode == null) {
+         throw new IllegalStateException(
+               "The tree was not built in canonical mode");
+      }
+      return canonicalCode;
+   }
+
+   /**
+    * Returns the tree as a FlatHuffmanTree, which holds every node in one int
+    * array and can decode on its own.
+    *
+    * @return The flat tree.
+    */
+   public FlatHuffmanTree getFlatTree() {
+      return flatTree;
+   }
+
+   /**
+    * Fills codeBits and codeLengths from the finished flat tree. A tree
+    * holding a single symbol gets the one-bit code 0 so the packed stream
+    * stays decodable.
+    */
+   private void buildCodeTable() {
+      symbolSlots = null;
+      slotSymbols = null;
+      decodeTable = null;
+      int[] order = leafSymbols();
+      if (order.length == 0) {
+         codeBits = new long[0];
+         codeLengths = new byte[0];
+         frequencies = new double[0];
+         return;
+      }
+      int maxSymbol = 0;
+      for (int symbol : order) {
+         maxSymbol = Math.max(maxSymbol, symbol);
+      }
+      int slots = order.length;
+      if (maxSymbol < DENSE_LIMIT) {
+         slots = maxSymbol + 1;
+      }
+      else {
+         symbolSlots = new IntIntMap(order.length);
+         slotSymbols = order;
+         for (int slot = 0; slot < order.length; slot++) {
+            symbolSlots.put(order[slot], slot);
+         }
+      }
+      // A rebuild over the same alphabet reuses the arrays.
+      if (codeBits.length != slots) {
+         codeBits = new long[slots];
+         codeLengths = new byte[slots];
+         frequencies = new double[slots];
+      }
+      else {
+         Arrays.fill(codeBits, 0);
+         Arrays.fill(codeLengths, (byte) 0);
+         Arrays.fill(frequencies, 0);
+      }
+      if (order.length == 1) {
+         // Lengths are still empty, so slotOf would not find the symbol.
+         codeLengths[symbolSlots == null ? order[0] : 0] = 1;
+      }
       else {
-         printCode(code + "0", tree.getLeftSubtree());
-         printCode(code + "1", tree.getRightSubtree());
+         assignCodes(0, 0L, 1);
+      }
+      int maxLen = 0;
+      for (byte len : codeLengths) {
+         maxLen = Math.max(maxLen, len);
+      }
+      if (maxLen <= HuffmanDecodeTable.MAX_CODE_LENGTH) {
+         decodeTable = symbolSlots == null
+               ? new HuffmanDecodeTable(codeBits, codeLengths)
+               : new HuffmanDecodeTable(slotSymbols, codeBits, codeLengths);
+      }
+   }
+
+   /**
+    * The symbols of the flat tree's leaves from left to right, which is the
+    * order of their codewords.
+    *
+    * @return The symbols.
+    */
+   private int[] leafSymbols() {
+      int[] symbols = new int[flatTree.getLeafCount()];
+      if (symbols.length == 1) {
+         // Both branches of the root lead to the lone leaf.
+         symbols[0] = FlatHuffmanTree.symbolOf(flatTree.getChild(0, 0));
+      }
+      else if (symbols.length > 1) {
+         collectLeaves(0, symbols, 0);
+      }
+      return symbols;
+   }
+
+   /**
+    * Stores the symbols of the leaves below an internal node, left to right.
+    *
+    * @param node    Index of the internal node
+    * @param symbols Array receiving the symbols.
+    * @param next    Index of the next free entry in symbols.
+    * @return The index after the last symbol stored.
+    */
+   private int collectLeaves(int node, int[] symbols, int next) {
+      for (int bit = 0; bit < 2; bit++) {
+         int child = flatTree.getChild(node, bit);
+         if (FlatHuffmanTree.isLeaf(child)) {
+            symbols[next++] = FlatHuffmanTree.symbolOf(child);
+         }
+         else if (child != 0) {
+            next = collectLeaves(child, symbols, next);
+         }
+      }
+      return next;
+   }
+
+   /**
+    * Finds the slot holding the code of a symbol.
+    *
+    * @param symbol The symbol.
+    * @return The slot, or -1 if the symbol has no code.
+    */
+   protected int slotOf(int symbol) {
+      if (symbolSlots != null) {
+         return symbolSlots.get(symbol, -1);
+      }
+      if (symbol >= 0 && symbol < codeLengths.length
+            && codeLengths[symbol] != 0) {
+         return symbol;
+      }
+      return -1;
+   }
+
+   /**
+    * Computes the exact number of bits encodeBytes would write for input
+    * with the given symbol counts, without encoding it.
+    *
+    * @param counts Counts indexed by symbol.
+    * @return The number of payload bits, or -1 if a symbol with a nonzero
+    *         count has no code.
+    */
+   long encodedBits(long[] counts) {
+      long bits = 0;
+      for (int s = 0; s < counts.length; s++) {
+         if (counts[s] != 0) {
+            int slot = slotOf(s);
+            if (slot < 0) {
+               return -1;
+            }
+            bits += counts[s] * codeLengths[slot];
+         }
+      }
+      return bits;
+   }
+
+   /**
+    * Records the codeword of every leaf below an internal node.
+    *
+    * @param node  Index of the internal node
+    * @param code  The code up to this node
+    * @param depth Length of the codes of the node's children
+    */
+   private void assignCodes(int node, long code, int depth) {
+      for (int bit = 0; bit < 2; bit++) {
+         int child = flatTree.getChild(node, bit);
+         if (FlatHuffmanTree.isLeaf(child)) {
+            int symbol = FlatHuffmanTree.symbolOf(child);
+            if (depth > 64) {
+               throw new IllegalStateException("Code for '" + symbol
+                     + "' is longer than 64 bits");
+            }
+            int slot = symbolSlots == null ? symbol
+                  : symbolSlots.get(symbol, -1);
+            codeBits[slot] = (code << 1) | bit;
+            codeLengths[slot] = (byte) depth;
+         }
+         else if (child != 0) {
+            assignCodes(child, (code << 1) | bit, depth + 1);
+         }
+      }
+   }
+
+   /**
+    * Appends the codeword held in a slot as '0' and '1' characters.
+    *
+    * @param sb   The StringBuilder to append to
+    * @param slot The slot of the symbol
+    */
+   private void appendCode(StringBuilder sb, int slot) {
+      long bits = codeBits[slot];
+      for (int i = codeLengths[slot] - 1; i >= 0; i--) {
+         sb.append((char) ('0' + ((bits >>> i) & 1)));
+      }
+   }
+
+   /**
+    * Lists the code of every leaf, left to right, one per line.
+    *
+    * @param withFreq Whether to print each symbol's frequency too.
+    * @return The code listing.
+    */
+   private String printCode(boolean withFreq) {
+      int[] order = leafSymbols();
+      StringBuilder sb = new StringBuilder(order.length * 16);
+      for (int symbol : order) {
+         int slot = slotOf(symbol);
+         if (symbol == ' ') {
+            sb.append("space");
+         }
+         else {
+            sb.appendCodePoint(symbol);
+            if (withFreq) {
+               sb.append(": ").append(frequencies[slot]);
+            }
+         }
+         sb.append(": ");
+         appendCode(sb, slot);
+         sb.append('\n');
       }
+      return sb.toString();
+   }
+
+   /**
+    * Outputs the resulting code. The listing walks the flat tree for the
+    * order of the symbols and takes their codes from the code table.
+    *
+    * @return The code of each symbol, one per line.
+    */
+   public String printCode() {
+      return printCode(false);
    }
 
+   /**
+    * Outputs the resulting code with the frequency of each symbol.
+    *
+    * @return The frequency and code of each symbol, one per line.
+    */
    public String printCodeWithFrequency() {
-      preOrderResult = "";
-      printCodeWithFrequency("", huffTree);
-      return preOrderResult;
+      return printCode(true);
    }
 
    /**
@@ -196,107 +941,473 @@ public class HuffmanTree {
     * @return The decoded message as a String
     */
    public String decode(String code) {
+      long start = startTimer();
+      String result = decodeString(code);
+      recordDecode(start, code.length(), result.length());
+      return result;
+   }
+
+   /**
+    * Decodes a binary String without recording it.
+    */
+   private String decodeString(String code) {
       StringBuilder result = new StringBuilder();
-      var currentTree = huffTree;
-      // uses the binary as a guide to "climb down" the tree while
-      // iterating through
-      for (int i = 0; i < code.length(); i++) {
-         if (code.charAt(i) == '1') {
-            currentTree = currentTree.getRightSubtree();
+      // Walk the flat tree a character at a time; a trailing partial
+      // codeword is ignored.
+      FlatHuffmanTree tree = flatTree;
+      int node = 0;
+      for (int i = 0; i < code.length() && tree.getNodeCount() > 0; i++) {
+         int child = tree.getChild(node, code.charAt(i) == '1' ? 1 : 0);
+         if (FlatHuffmanTree.isLeaf(child)) {
+            result.appendCodePoint(FlatHuffmanTree.symbolOf(child));
+            node = 0;
          }
-         else {
-            currentTree = currentTree.getLeftSubtree();
+         else if (child == 0) {
+            throw new IllegalArgumentException("Invalid code in stream");
          }
-         // if it is a leaf, it is a symbol
-         if (currentTree.isLeaf()) {
-            SymbolNodeData theData = currentTree.getData();
-            result.append(theData.symbol);
-            currentTree = huffTree;
+         else {
+            node = child;
          }
       }
       return result.toString();
    }
 
    /**
-    * This helper method encodes a message passed in as a String using the codes in
-    * the tree. It is activated by the encodeMessage method.
-    * 
-    * @param str   Message to be encoded.
-    * @param codes Array of codes that match characters.
-    * @return String of binary representations.
+    * Decodes a bit-packed message written by encode(String, BitWriter).
+    *
+    * @param packed    The packed bytes.
+    * @param bitLength The number of meaningful bits, excluding padding.
+    * @return The decoded message as a String
+    */
+   public String decode(byte[] packed, long bitLength) {
+      return decode(new BitReader(packed), bitLength);
+   }
+
+   /**
+    * Decodes bitLength bits from a BitReader. The decode table is used when
+    * the tree has one; otherwise the flat tree is walked.
+    *
+    * @param in        The source of packed bits.
+    * @param bitLength The number of bits to decode.
+    * @return The decoded message as a String
+    */
+   public String decode(BitReader in, long bitLength) {
+      long start = startTimer();
+      long bitsBefore = in.bitsRead();
+      String result = decodeText(in, bitLength);
+      recordDecode(start, in.bitsRead() - bitsBefore, result.length());
+      return result;
+   }
+
+   /**
+    * Decodes bitLength bits into text without recording it.
     */
-   private static String encode(String str, String[] codes) {
+   private String decodeText(BitReader in, long bitLength) {
       StringBuilder result = new StringBuilder();
-      for (int i = 0; i < str.length(); i++) {
-         char c = str.charAt(i);
-         int index = 0;
-         if (c != ' ' && c != '.' && c != '?' && c != '!'
-               && c != ',') {
-            index = Character.toUpperCase(c) - 'A' + 1;
+      long bitLimit = in.bitsRead() + bitLength;
+      int[] symbols = new int[DECODE_CHUNK];
+      int n;
+      do {
+         n = decodeSymbols(in, bitLimit, symbols, DECODE_CHUNK);
+         for (int i = 0; i < n; i++) {
+            result.appendCodePoint(symbols[i]);
          }
-         result.append(codes[index]);
-      }
+      } while (n == DECODE_CHUNK);
       return result.toString();
    }
 
    /**
-    * Processes the String generated by traversal into a final array of codes. A
-    * TreeMap from Java Collections is used to aid in the processing and sorting
-    * alphabetically.
-    * 
-    * @return An array of binary Strings.
+    * Decodes a bit-packed byte stream written by encodeBytes.
+    *
+    * @param packed    The packed bytes.
+    * @param bitLength The number of meaningful bits, excluding padding.
+    * @return The decoded bytes.
     */
-   public String[] processCodes() {
-      String[] codeArray = new String[27];
-      codeArray[0] = "";
-      String treeCode = printCode();
+   public byte[] decodeBytes(byte[] packed, long bitLength) {
+      return decodeBytes(new BitReader(packed), bitLength);
+   }
 
-      // Split treeCode by newline and feed it into an array of Strings
-      String[] arrayOfStrings1 = treeCode
-            .split(System.lineSeparator());
-      String[][] arrayOfStrings2 = new String[arrayOfStrings1.length][];
-      // trim and test print statement
-      int i = 0;
-      for (String s : arrayOfStrings1) {
-         s.trim();
-         arrayOfStrings2[i] = s.split(":");
-         arrayOfStrings2[i][0].replaceAll("\\s", "");
-         arrayOfStrings2[i][1].replaceAll("\\s", "");
-         i++;
+   /**
+    * Decodes bitLength bits from a BitReader into bytes.
+    *
+    * @param in        The source of packed bits.
+    * @param bitLength The number of bits to decode.
+    * @return The decoded bytes.
+    */
+   public byte[] decodeBytes(BitReader in, long bitLength) {
+      long start = startTimer();
+      long bitsBefore = in.bitsRead();
+      byte[] result = new byte[DECODE_CHUNK];
+      int size = 0;
+      long bitLimit = in.bitsRead() + bitLength;
+      int[] symbols = new int[DECODE_CHUNK];
+      int n;
+      do {
+         n = decodeSymbols(in, bitLimit, symbols, DECODE_CHUNK);
+         if (size + n > result.length) {
+            result = Arrays.copyOf(result, result.length * 2);
+         }
+         for (int i = 0; i < n; i++) {
+            result[size++] = (byte) symbols[i];
+         }
+      } while (n == DECODE_CHUNK);
+      recordDecode(start, in.bitsRead() - bitsBefore, size);
+      return Arrays.copyOf(result, size);
+   }
+
+   /**
+    * Decodes exactly len bytes, for streams whose symbol count is known
+    * rather than their bit length.
+    *
+    * @param in  The source of packed bits.
+    * @param dst Array receiving the bytes.
+    * @param off Index of the first byte in dst.
+    * @param len Number of bytes to decode.
+    * @throws IllegalArgumentException if the bits start no codeword or run
+    *                                  out.
+    */
+   public void decodeBytes(BitReader in, byte[] dst, int off, int len) {
+      long start = startTimer();
+      long bitsBefore = in.bitsRead();
+      int[] symbols = new int[Math.min(len, DECODE_CHUNK)];
+      int done = 0;
+      while (done < len) {
+         int n = decodeSymbols(in, Long.MAX_VALUE, symbols,
+               Math.min(len - done, symbols.length));
+         if (n == 0) {
+            throw new IllegalArgumentException(
+                  "Stream ended after " + done + " of " + len + " bytes");
+         }
+         for (int i = 0; i < n; i++) {
+            dst[off + done + i] = (byte) symbols[i];
+         }
+         done += n;
+      }
+      recordDecode(start, in.bitsRead() - bitsBefore, len);
+   }
+
+   /**
+    * Decodes bytes into the remaining space of a buffer, which may be a
+    * direct or memory-mapped buffer, advancing its position to its limit.
+    *
+    * @param in  The source of packed bits.
+    * @param dst The buffer receiving the bytes.
+    * @throws IllegalArgumentException if the bits start no codeword or run
+    *                                  out.
+    */
+   public void decodeBytes(BitReader in, ByteBuffer dst) {
+      int len = dst.remaining();
+      if (dst.hasArray()) {
+         decodeBytes(in, dst.array(), dst.arrayOffset() + dst.position(),
+               len);
+         dst.position(dst.limit());
+         return;
+      }
+      long start = startTimer();
+      long bitsBefore = in.bitsRead();
+      int[] symbols = new int[Math.min(len, DECODE_CHUNK)];
+      int done = 0;
+      while (done < len) {
+         int n = decodeSymbols(in, Long.MAX_VALUE, symbols,
+               Math.min(len - done, symbols.length));
+         if (n == 0) {
+            throw new IllegalArgumentException(
+                  "Stream ended after " + done + " of " + len + " bytes");
+         }
+         for (int i = 0; i < n; i++) {
+            dst.put((byte) symbols[i]);
+         }
+         done += n;
+      }
+      recordDecode(start, in.bitsRead() - bitsBefore, len);
+   }
+
+   /**
+    * Decodes bytes written as four separate streams, as zstd's Huff0 does.
+    * The remaining space of dst is split into four runs of (len + 3) / 4
+    * bytes, the last run taking what is left, and the run with index k is
+    * decoded from the stream read by the k-th reader. One loop takes a
+    * symbol from each stream in turn; the four decodes do not depend on one
+    * another, so the processor can overlap their table lookups and shifts.
+    * The position of dst is advanced to its limit.
+    *
+    * @param in0 The stream of the first run.
+    * @param in1 The stream of the second run.
+    * @param in2 The stream of the third run.
+    * @param in3 The stream of the last run.
+    * @param dst The buffer receiving the bytes.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   public void decodeInterleaved(BitReader in0, BitReader in1, BitReader in2,
+         BitReader in3, ByteBuffer dst) {
+      long start = startTimer();
+      long bitsBefore = in0.bitsRead() + in1.bitsRead() + in2.bitsRead()
+            + in3.bitsRead();
+      int len = dst.remaining();
+      int base = dst.position();
+      int run = (len + 3) / 4;
+      // Every stream has a symbol left until the last run is done.
+      int steps = Math.max(0, len - 3 * run);
+      for (int i = base; i < base + steps; i++) {
+         byte b0 = (byte) decodeSymbol(in0);
+         byte b1 = (byte) decodeSymbol(in1);
+         byte b2 = (byte) decodeSymbol(in2);
+         byte b3 = (byte) decodeSymbol(in3);
+         dst.put(i, b0);
+         dst.put(i + run, b1);
+         dst.put(i + 2 * run, b2);
+         dst.put(i + 3 * run, b3);
+      }
+      // The first runs may be a few bytes longer than the last.
+      BitReader[] streams = { in0, in1, in2, in3 };
+      for (int k = 0; k < streams.length; k++) {
+         int end = base + Math.min(len, (k + 1) * run);
+         for (int i = base + k * run + steps; i < end; i++) {
+            dst.put(i, (byte) decodeSymbol(streams[k]));
+         }
       }
-      // end testing
+      dst.position(base + len);
+      recordDecode(start, in0.bitsRead() + in1.bitsRead() + in2.bitsRead()
+            + in3.bitsRead() - bitsBefore, len);
+   }
 
-      for (String[] s : arrayOfStrings2) {
-         char newChar = s[0].charAt(0);
-         codeMap.put(Character.toUpperCase(newChar), s[1].trim());
+   /**
+    * Decodes up to maxCount whole symbols, stopping at bitLimit. The decode
+    * table is used when the tree has one; otherwise the flat tree is walked
+    * one bit at a time.
+    *
+    * @param in       The source of packed bits.
+    * @param bitLimit Stream position, in bits, at which to stop.
+    * @param symbols  Array receiving the symbols.
+    * @param maxCount Maximum number of symbols to decode.
+    * @return The number of symbols decoded.
+    */
+   private int decodeSymbols(BitReader in, long bitLimit, int[] symbols,
+         int maxCount) {
+      if (decodeTable != null) {
+         return decodeTable.decode(in, bitLimit, symbols, 0, maxCount);
+      }
+      return flatTree.decode(in, bitLimit, symbols, 0, maxCount);
+   }
 
+   /**
+    * Encodes a message as packed bits, following the same symbol rules as
+    * encodeMessage: a character without a code of its own falls back to its
+    * upper-case form, and space and basic punctuation are dropped.
+    *
+    * @param message The message to encode.
+    * @param out     The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a character has no code.
+    */
+   public long encode(String message, BitWriter out) {
+      long startTime = startTimer();
+      long start = out.bitLength();
+      for (int i = 0; i < message.length(); i++) {
+         char c = message.charAt(i);
+         int slot = messageSlot(c);
+         if (slot >= 0) {
+            out.writeBits(codeBits[slot], codeLengths[slot]);
+         }
+         else if (!isDropped(c)) {
+            throw new IllegalArgumentException(
+                  "No code for symbol '" + c + "'");
+         }
       }
+      recordEncode(startTime, message.length(), out.bitLength() - start);
+      return out.bitLength() - start;
+   }
 
-      i = 1;
-//ITERATE THROUGH TREEMAP TO TEST
-      for (Map.Entry<Character, String> e : codeMap.entrySet()) {
-         Character key = e.getKey();
-         String value = e.getValue();
-         codeArray[i] = value;
-         i++;
+   /**
+    * Encodes text one Unicode code point at a time, for trees whose symbols
+    * are code points. Every code point must have a code of its own.
+    *
+    * @param text The text to encode.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a code point has no code.
+    */
+   public long encodeCodePoints(CharSequence text, BitWriter out) {
+      long startTime = startTimer();
+      long start = out.bitLength();
+      int count = 0;
+      for (int i = 0; i < text.length(); count++) {
+         int codePoint = Character.codePointAt(text, i);
+         int slot = slotOf(codePoint);
+         if (slot < 0) {
+            throw new IllegalArgumentException("No code for U+"
+                  + Integer.toHexString(codePoint).toUpperCase());
+         }
+         out.writeBits(codeBits[slot], codeLengths[slot]);
+         i += Character.charCount(codePoint);
       }
+      recordEncode(startTime, count, out.bitLength() - start);
+      return out.bitLength() - start;
+   }
 
-      // test print statement
-      for (String s : codeArray) {
+   /**
+    * Encodes bytes, for trees whose symbols are byte values 0 to 255.
+    *
+    * @param data The bytes to encode.
+    * @param off  Index of the first byte.
+    * @param len  Number of bytes.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte value has no code.
+    */
+   public long encodeBytes(byte[] data, int off, int len, BitWriter out) {
+      long startTime = startTimer();
+      long start = out.bitLength();
+      for (int i = off; i < off + len; i++) {
+         int slot = slotOf(data[i] & 0xFF);
+         if (slot < 0) {
+            throw new IllegalArgumentException(
+                  "No code for byte " + (data[i] & 0xFF));
+         }
+         out.writeBits(codeBits[slot], codeLengths[slot]);
+      }
+      recordEncode(startTime, len, out.bitLength() - start);
+      return out.bitLength() - start;
+   }
+
+   /**
+    * Writes the codeword of one symbol.
+    *
+    * @param symbol The symbol, which must have a code.
+    * @param out    The BitWriter receiving the codeword.
+    */
+   void encodeSymbol(int symbol, BitWriter out) {
+      int slot = slotOf(symbol);
+      out.writeBits(codeBits[slot], codeLengths[slot]);
+   }
+
+   /**
+    * Decodes one symbol with the decode table, or the flat tree when the
+    * tree has no table.
+    *
+    * @param in The source of packed bits.
+    * @return The decoded symbol.
+    * @throws IllegalArgumentException if the bits start no codeword.
+    */
+   int decodeSymbol(BitReader in) {
+      if (decodeTable != null) {
+         return decodeTable.decodeSymbol(in);
+      }
+      return flatTree.decodeSymbol(in);
+   }
+
+   /**
+    * Encodes the remaining bytes of a buffer, which may be a direct or
+    * memory-mapped buffer, advancing its position to its limit.
+    *
+    * @param src The bytes to encode.
+    * @param out The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte value has no code.
+    */
+   public long encodeBytes(ByteBuffer src, BitWriter out) {
+      if (src.hasArray()) {
+         long bits = encodeBytes(src.array(),
+               src.arrayOffset() + src.position(), src.remaining(), out);
+         src.position(src.limit());
+         return bits;
+      }
+      long startTime = startTimer();
+      int count = src.remaining();
+      long start = out.bitLength();
+      while (src.hasRemaining()) {
+         int b = src.get() & 0xFF;
+         int slot = slotOf(b);
+         if (slot < 0) {
+            throw new IllegalArgumentException("No code for byte " + b);
+         }
+         out.writeBits(codeBits[slot], codeLengths[slot]);
+      }
+      recordEncode(startTime, count, out.bitLength() - start);
+      return out.bitLength() - start;
+   }
+
+   /**
+    * Encodes a whole byte array, for trees whose symbols are byte values.
+    *
+    * @param data The bytes to encode.
+    * @param out  The BitWriter receiving the codewords.
+    * @return The number of bits written.
+    * @throws IllegalArgumentException if a byte value has no code.
+    */
+   public long encodeBytes(byte[] data, BitWriter out) {
+      return encodeBytes(data, 0, data.length, out);
+   }
+
+   /**
+    * Processes the code table into an array of codes for the letters of the
+    * alphabet: entry 0 is the empty code given to space and punctuation, and
+    * entries 1 to 26 hold the codes of 'A' to 'Z' (null for a letter with no
+    * code).
+    * 
+    * @return An array of binary Strings.
+    */
+   public String[] processCodes() {
+      String[] codeArray = new String[27];
+      codeArray[0] = "";
+      StringBuilder sb = new StringBuilder();
+      for (int i = 1; i < codeArray.length; i++) {
+         int slot = messageSlot((char) ('A' + i - 1));
+         if (slot >= 0) {
+            sb.setLength(0);
+            appendCode(sb, slot);
+            codeArray[i] = sb.toString();
+         }
       }
-      // end testing
       return codeArray;
    }
 
    /**
-    * This method calls the processCodes and encode methods in order to encode a
-    * message passed in as an argument.
+    * Encodes a message as a binary String, using the code table filled in by
+    * buildTree. A character without a code of its own falls back to its
+    * upper-case form, and space and basic punctuation are dropped.
     * 
-    * @param originalMessage The message to decode.
+    * @param originalMessage The message to encode.
     * @return a binary String.
+    * @throws IllegalArgumentException if a character has no code.
     */
    public String encodeMessage(String originalMessage) {
-      String[] huffCodes = processCodes();
-      return encode(originalMessage, huffCodes);
+      long start = startTimer();
+      StringBuilder result = new StringBuilder(originalMessage.length() * 8);
+      for (int i = 0; i < originalMessage.length(); i++) {
+         char c = originalMessage.charAt(i);
+         int slot = messageSlot(c);
+         if (slot >= 0) {
+            appendCode(result, slot);
+         }
+         else if (!isDropped(c)) {
+            throw new IllegalArgumentException(
+                  "No code for symbol '" + c + "'");
+         }
+      }
+      recordEncode(start, originalMessage.length(), result.length());
+      return result.toString();
+   }
+
+   /**
+    * Finds the slot used for a message character: its own, else that of its
+    * upper-case form.
+    *
+    * @param c The character.
+    * @return The slot, or -1 if neither form has a code.
+    */
+   private int messageSlot(char c) {
+      int slot = slotOf(c);
+      if (slot < 0 && !isDropped(c)) {
+         slot = slotOf(Character.toUpperCase(c));
+      }
+      return slot;
+   }
+
+   /**
+    * Whether a message character without a code is silently dropped.
+    */
+   private static boolean isDropped(char c) {
+      return c == ' ' || c == '.' || c == '?' || c == '!' || c == ',';
    }
 }
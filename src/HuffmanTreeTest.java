@@ -1,6 +1,12 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import org.junit.jupiter.api.Test;
 
 class HuffmanTreeTest {
@@ -103,4 +109,175 @@ class HuffmanTreeTest {
       ht.buildTree(testArray);
       assertTrue((ht.printCode().contains("v: 001011")));
    }
-}
\ No newline at end of file
+
+   @Test
+   public void packedEncodeTest() {
+      HuffmanTree ht = new HuffmanTree();
+      var testNode1 = new HuffmanTree.SymbolNodeData(5, 'e');
+      var testNode2 = new HuffmanTree.SymbolNodeData(22, 'f');
+      var testNode3 = new HuffmanTree.SymbolNodeData(2, 'p');
+      var testNode4 = new HuffmanTree.SymbolNodeData(8, 'l');
+      var testNode5 = new HuffmanTree.SymbolNodeData(5, 't');
+      HuffmanTree.SymbolNodeData[] testArray = { testNode2, testNode1,
+            testNode3, testNode4, testNode5 };
+      ht.buildTree(testArray);
+      BitWriter out = new BitWriter();
+      long bits = ht.encode("felt", out);
+      byte[] packed = out.toByteArray();
+      assertEquals(10, bits);
+      assertEquals(2, packed.length);
+      // 1010000111 padded to 10100001 11000000
+      assertEquals((byte) 0xA1, packed[0]);
+      assertEquals((byte) 0xC0, packed[1]);
+      assertEquals("felt", ht.decode(packed, bits));
+   }
+
+   @Test
+   public void encodeMessageTest() {
+      HuffmanTree ht = new HuffmanTree();
+      var testNode1 = new HuffmanTree.SymbolNodeData(5, 'E');
+      var testNode2 = new HuffmanTree.SymbolNodeData(22, 'F');
+      var testNode3 = new HuffmanTree.SymbolNodeData(2, 'P');
+      var testNode4 = new HuffmanTree.SymbolNodeData(8, 'L');
+      var testNode5 = new HuffmanTree.SymbolNodeData(5, 'T');
+      HuffmanTree.SymbolNodeData[] testArray = { testNode2, testNode1,
+            testNode3, testNode4, testNode5 };
+      ht.buildTree(testArray, true);
+      assertEquals("F: 0\nL: 10\nT: 110\nE: 1110\nP: 1111\n",
+            ht.printCode());
+      assertEquals("F: 22.0: 0\nL: 8.0: 10\nT: 5.0: 110\nE: 5.0: 1110\n"
+            + "P: 2.0: 1111\n", ht.printCodeWithFrequency());
+      // Lower case falls back to upper case; space and punctuation drop.
+      assertEquals("0111010110", ht.encodeMessage("Fe, lt!"));
+      assertEquals("0111010110", ht.encodeMessage("Fe, lt!"));
+      String[] codes = ht.processCodes();
+      assertEquals("", codes[0]);
+      assertEquals("1110", codes['E' - 'A' + 1]);
+      assertEquals(null, codes['A' - 'A' + 1]);
+      assertThrows(IllegalArgumentException.class,
+            () -> ht.encodeMessage("fax"));
+   }
+
+   @Test
+   public void canonicalTest() throws IOException {
+      // 'e' and 't' tie, so listing them in either order must give the same
+      // codes.
+      var testNode1 = new HuffmanTree.SymbolNodeData(5, 'e');
+      var testNode2 = new HuffmanTree.SymbolNodeData(22, 'f');
+      var testNode3 = new HuffmanTree.SymbolNodeData(2, 'p');
+      var testNode4 = new HuffmanTree.SymbolNodeData(8, 'l');
+      var testNode5 = new HuffmanTree.SymbolNodeData(5, 't');
+      HuffmanTree ht1 = new HuffmanTree();
+      ht1.buildTree(new HuffmanTree.SymbolNodeData[] { testNode2,
+            testNode1, testNode3, testNode4, testNode5 }, true);
+      HuffmanTree ht2 = new HuffmanTree();
+      ht2.buildTree(new HuffmanTree.SymbolNodeData[] { testNode5,
+            testNode4, testNode3, testNode2, testNode1 }, true);
+      assertEquals(ht1.printCode(), ht2.printCode());
+      assertEquals("f: 0\nl: 10\nt: 110\ne: 1110\np: 1111\n",
+            ht1.printCode());
+
+      // Ship the lengths and decode on the other side.
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      ht1.getCanonicalCode().write(header);
+      assertTrue(header.size() < 16);
+      HuffmanTree reader = new HuffmanTree();
+      reader.buildTree(CanonicalCode
+            .read(new ByteArrayInputStream(header.toByteArray())));
+      BitWriter out = new BitWriter();
+      long bits = ht1.encode("felt", out);
+      assertEquals("felt", reader.decode(out.toByteArray(), bits));
+   }
+
+   @Test
+   public void byteAlphabetTest() {
+      // All 256 byte values, including 0 and the high half.
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[256];
+      for (int b = 0; b < 256; b++) {
+         symbols[b] = new HuffmanTree.SymbolNodeData(1 + b % 7, b);
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols);
+      byte[] data = new byte[1000];
+      for (int i = 0; i < data.length; i++) {
+         data[i] = (byte) (i * 37);
+      }
+      BitWriter out = new BitWriter();
+      long bits = ht.encodeBytes(data, out);
+      assertArrayEquals(data, ht.decodeBytes(out.toByteArray(), bits));
+   }
+
+   @Test
+   public void codePointAlphabetTest() {
+      String text = "na\u00efve caf\u00e9 \uD83D\uDE00 \u65E5\u672C";
+      int[] codePoints = text.codePoints().distinct().toArray();
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[codePoints.length];
+      for (int i = 0; i < codePoints.length; i++) {
+         symbols[i] = new HuffmanTree.SymbolNodeData(i + 1, codePoints[i]);
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols, true);
+      BitWriter out = new BitWriter();
+      long bits = ht.encodeCodePoints(text, out);
+      assertEquals(text, ht.decode(out.toByteArray(), bits));
+      assertThrows(IllegalArgumentException.class,
+            () -> ht.encodeCodePoints("x", new BitWriter()));
+   }
+
+   @Test
+   public void lengthLimitTest() {
+      // Fibonacci weights make a 19-deep tree over 20 symbols.
+      HuffmanTree.SymbolNodeData[] symbols = new HuffmanTree.SymbolNodeData[20];
+      double a = 1;
+      double b = 1;
+      for (int i = 0; i < symbols.length; i++) {
+         symbols[i] = new HuffmanTree.SymbolNodeData(a, (char) ('a' + i));
+         double next = a + b;
+         a = b;
+         b = next;
+      }
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(symbols, 8);
+      assertEquals(8, ht.getCanonicalCode().getMaxLength());
+      assertTrue(ht.getLengthLimitCost() > 0);
+      String message = "abcdefghijklmnopqrst";
+      BitWriter out = new BitWriter();
+      long bits = ht.encode(message, out);
+      assertEquals(message, ht.decode(out.toByteArray(), bits));
+
+      ht.buildTree(symbols, 30);
+      assertEquals(19, ht.getCanonicalCode().getMaxLength());
+      assertEquals(0.0, ht.getLengthLimitCost());
+   }
+
+   @Test
+   public void rebuildFromCountsTest() {
+      long[] bytes = FrequencyCounter.countBytes(
+            "the quick brown fox jumps over the lazy dog".getBytes());
+      long[] small = new long[8];
+      small[1] = 9;
+      small[6] = 2;
+      small[7] = 1;
+      HuffmanTree fresh = new HuffmanTree();
+      fresh.buildTree(bytes, 15);
+      // One instance rebuilt over alphabets of different sizes.
+      HuffmanTree ht = new HuffmanTree();
+      ht.buildTree(bytes, 15);
+      ht.buildTree(small, 15);
+      assertEquals(3, ht.getFlatTree().getLeafCount());
+      assertEquals(-1, ht.encodedBits(bytes));
+      ht.buildTree(bytes, 15);
+      assertEquals(fresh.printCodeWithFrequency(),
+            ht.printCodeWithFrequency());
+      assertEquals(fresh.encodedBits(bytes), ht.encodedBits(bytes));
+
+      // Trees built with a shared calculator match their own.
+      CodeLengths calculator = new CodeLengths(256);
+      HuffmanTree shared = new HuffmanTree();
+      shared.buildTree(small, 2, calculator);
+      shared.buildTree(bytes, 15, calculator);
+      assertEquals(fresh.printCode(), shared.printCode());
+      assertThrows(IllegalArgumentException.class,
+            () -> shared.buildTree(new long[300], 15, calculator));
+   }
+}
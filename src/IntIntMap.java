@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * The IntIntMap class is a hash map from int keys to int values stored in two
+ * primitive arrays with open addressing and linear probing, so lookups neither
+ * box nor allocate. Entries can be added and updated but not removed. It is
+ * used for sparse alphabets such as Unicode code points, where an array indexed
+ * by symbol would be mostly empty.
+ *
+ * @author jam
+ *
+ */
+public class IntIntMap {
+
+   /**
+    * The one key that cannot be stored; it marks an empty slot.
+    */
+   public static final int EMPTY_KEY = Integer.MIN_VALUE;
+
+   private int[] keys;
+   private int[] values;
+   private int size;
+   // Number of low bits of the hash used as the slot index.
+   private int shift;
+
+   /**
+    * Creates an empty map.
+    */
+   public IntIntMap() {
+      this(16);
+   }
+
+   /**
+    * Creates an empty map sized for the expected number of entries.
+    *
+    * @param expectedSize Number of entries the map should hold without
+    *                     resizing.
+    */
+   public IntIntMap(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1)
+            << 1;
+      allocate(capacity);
+   }
+
+   /**
+    * Number of entries.
+    *
+    * @return the size of the map.
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Looks up a key.
+    *
+    * @param key          The key.
+    * @param defaultValue Value to return when the key is absent.
+    * @return The value mapped to key, or defaultValue.
+    */
+   public int get(int key, int defaultValue) {
+      int mask = keys.length - 1;
+      for (int i = slot(key);; i = (i + 1) & mask) {
+         int k = keys[i];
+         if (k == key) {
+            return values[i];
+         }
+         if (k == EMPTY_KEY) {
+            return defaultValue;
+         }
+      }
+   }
+
+   /**
+    * Whether the map holds a key.
+    *
+    * @param key The key.
+    * @return true if the key is present.
+    */
+   public boolean containsKey(int key) {
+      int mask = keys.length - 1;
+      for (int i = slot(key);; i = (i + 1) & mask) {
+         int k = keys[i];
+         if (k == key) {
+            return true;
+         }
+         if (k == EMPTY_KEY) {
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Maps key to value, replacing any previous value.
+    *
+    * @param key   The key, anything but EMPTY_KEY.
+    * @param value The value.
+    */
+   public void put(int key, int value) {
+      values[insert(key)] = value;
+   }
+
+   /**
+    * Adds delta to the value of key, treating an absent key as 0.
+    *
+    * @param key   The key, anything but EMPTY_KEY.
+    * @param delta The amount to add.
+    * @return The new value.
+    */
+   public int addTo(int key, int delta) {
+      int i = insert(key);
+      values[i] += delta;
+      return values[i];
+   }
+
+   /**
+    * The keys of the map, in no particular order.
+    *
+    * @return A new array of the keys.
+    */
+   public int[] keys() {
+      int[] result = new int[size];
+      int n = 0;
+      for (int k : keys) {
+         if (k != EMPTY_KEY) {
+            result[n++] = k;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Finds the slot of key, claiming an empty one (with value 0) if absent.
+    */
+   private int insert(int key) {
+      if (key == EMPTY_KEY) {
+         throw new IllegalArgumentException(
+               "Integer.MIN_VALUE cannot be used as a key");
+      }
+      int mask = keys.length - 1;
+      for (int i = slot(key);; i = (i + 1) & mask) {
+         int k = keys[i];
+         if (k == key) {
+            return i;
+         }
+         if (k == EMPTY_KEY) {
+            if ((size + 1) * 2 > keys.length) {
+               rehash(keys.length * 2);
+               return insert(key);
+            }
+            keys[i] = key;
+            size++;
+            return i;
+         }
+      }
+   }
+
+   private int slot(int key) {
+      return (key * 0x9E3779B9) >>> shift;
+   }
+
+   private void allocate(int capacity) {
+      keys = new int[capacity];
+      values = new int[capacity];
+      Arrays.fill(keys, EMPTY_KEY);
+      shift = Integer.numberOfLeadingZeros(capacity - 1);
+   }
+
+   private void rehash(int capacity) {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      allocate(capacity);
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldKeys[i] != EMPTY_KEY) {
+            int mask = keys.length - 1;
+            int j = slot(oldKeys[i]);
+            while (keys[j] != EMPTY_KEY) {
+               j = (j + 1) & mask;
+            }
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+         }
+      }
+   }
+}
@@ -0,0 +1,60 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class IntIntMapTest {
+
+   @Test
+   void putGetTest() {
+      IntIntMap map = new IntIntMap();
+      map.put(0x1F600, 7);
+      map.put(-5, 3);
+      map.put(0, 1);
+      assertEquals(7, map.get(0x1F600, -1));
+      assertEquals(3, map.get(-5, -1));
+      assertEquals(1, map.get(0, -1));
+      assertEquals(-1, map.get(42, -1));
+      assertTrue(map.containsKey(0));
+      assertFalse(map.containsKey(42));
+      map.put(0, 9);
+      assertEquals(9, map.get(0, -1));
+      assertEquals(3, map.size());
+   }
+
+   @Test
+   void growTest() {
+      IntIntMap map = new IntIntMap(2);
+      for (int i = 0; i < 10000; i++) {
+         map.addTo(i * 31, i);
+      }
+      assertEquals(10000, map.size());
+      for (int i = 0; i < 10000; i++) {
+         assertEquals(i, map.get(i * 31, -1));
+      }
+      int[] keys = map.keys();
+      Arrays.sort(keys);
+      assertEquals(0, keys[0]);
+      assertEquals(9999 * 31, keys[9999]);
+   }
+
+   @Test
+   void addToTest() {
+      IntIntMap map = new IntIntMap();
+      map.addTo(5, 2);
+      assertEquals(5, map.addTo(5, 3));
+      assertArrayEquals(new int[] { 5 }, map.keys());
+   }
+
+   @Test
+   void emptyKeyTest() {
+      IntIntMap map = new IntIntMap();
+      assertThrows(IllegalArgumentException.class,
+            () -> map.put(IntIntMap.EMPTY_KEY, 1));
+   }
+}
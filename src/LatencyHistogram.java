@@ -0,0 +1,110 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in power-of-two buckets of
+ * nanoseconds: bucket i holds durations from 2^(i-1) up to 2^i - 1, and
+ * bucket 0 holds 0. Recording is lock-free and cheap enough for every call on
+ * a hot path; in exchange, percentiles are only known to within a factor of
+ * two and are reported as the upper end of their bucket.
+ *
+ * @author jam
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int BUCKETS = 64;
+
+   private final LongAdder[] buckets = new LongAdder[BUCKETS];
+   private final LongAdder total = new LongAdder();
+   private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+   /**
+    * Creates an empty histogram.
+    */
+   public LatencyHistogram() {
+      for (int i = 0; i < BUCKETS; i++) {
+         buckets[i] = new LongAdder();
+      }
+   }
+
+   /**
+    * Records one duration. Negative durations count as 0.
+    *
+    * @param nanos The duration.
+    */
+   public void record(long nanos) {
+      nanos = Math.max(nanos, 0);
+      buckets[Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)]
+            .increment();
+      total.add(nanos);
+      max.accumulate(nanos);
+   }
+
+   /**
+    * Number of durations recorded.
+    *
+    * @return the count.
+    */
+   public long getCount() {
+      long count = 0;
+      for (LongAdder bucket : buckets) {
+         count += bucket.sum();
+      }
+      return count;
+   }
+
+   /**
+    * Sum of the durations recorded.
+    *
+    * @return the total in nanoseconds.
+    */
+   public long getTotalNanos() {
+      return total.sum();
+   }
+
+   /**
+    * Longest duration recorded.
+    *
+    * @return the maximum in nanoseconds, or 0 if none was recorded.
+    */
+   public long getMaxNanos() {
+      return max.get();
+   }
+
+   /**
+    * Estimates a percentile as the upper end of the bucket it falls in.
+    *
+    * @param percentile The percentile, from 0 to 100.
+    * @return The estimate in nanoseconds, or 0 if nothing was recorded.
+    */
+   public long getPercentileNanos(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         counts[i] = buckets[i].sum();
+         count += counts[i];
+      }
+      // Rank of the wanted duration, counting from 1.
+      long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += counts[i];
+         if (seen >= rank && counts[i] > 0) {
+            return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaxNanos());
+         }
+      }
+      return 0;
+   }
+
+   /**
+    * Clears the histogram. Durations recorded meanwhile may be lost.
+    */
+   public void reset() {
+      for (LongAdder bucket : buckets) {
+         bucket.reset();
+      }
+      total.reset();
+      max.reset();
+   }
+}
@@ -0,0 +1,222 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The LongAdderCodecMetrics class keeps CodecMetrics in LongAdders and
+ * LatencyHistograms, so any number of threads can record into one instance
+ * without locking or contending on a shared counter. One instance is meant
+ * to be shared by every HuffmanTree serving a data feed and published
+ * through JMX with register, where the compression ratio, code length
+ * against entropy, and latency percentiles can be watched and alerted on.
+ *
+ * @author jam
+ *
+ */
+public class LongAdderCodecMetrics implements CodecMetrics,
+      CodecMetricsMXBean {
+
+   /**
+    * Domain and type of the names register uses.
+    */
+   public static final String OBJECT_NAME_PREFIX =
+         "huffman:type=CodecMetrics,name=";
+
+   private final LatencyHistogram buildNanos = new LatencyHistogram();
+   private final LatencyHistogram encodeNanos = new LatencyHistogram();
+   private final LatencyHistogram decodeNanos = new LatencyHistogram();
+   private final LongAdder symbolsEncoded = new LongAdder();
+   private final LongAdder bitsEncoded = new LongAdder();
+   private final LongAdder symbolsDecoded = new LongAdder();
+   private final LongAdder bitsDecoded = new LongAdder();
+   // Frequency-weighted sums over the builds that had frequencies.
+   private final DoubleAdder buildWeight = new DoubleAdder();
+   private final DoubleAdder buildCodeBits = new DoubleAdder();
+   private final DoubleAdder buildEntropyBits = new DoubleAdder();
+
+   @Override
+   public void recordBuild(long nanos, int symbolCount, double weight,
+         double codeBits, double entropyBits) {
+      buildNanos.record(nanos);
+      if (weight > 0) {
+         buildWeight.add(weight);
+         buildCodeBits.add(codeBits);
+         buildEntropyBits.add(entropyBits);
+      }
+   }
+
+   @Override
+   public void recordEncode(long nanos, long symbols, long bits) {
+      encodeNanos.record(nanos);
+      symbolsEncoded.add(symbols);
+      bitsEncoded.add(bits);
+   }
+
+   @Override
+   public void recordDecode(long nanos, long bits, long symbols) {
+      decodeNanos.record(nanos);
+      bitsDecoded.add(bits);
+      symbolsDecoded.add(symbols);
+   }
+
+   /**
+    * Publishes these metrics on the platform MBean server under
+    * OBJECT_NAME_PREFIX + name.
+    *
+    * @param name Name of the data feed or codec measured.
+    * @return The name registered.
+    * @throws JMException if the name is invalid or already registered.
+    */
+   public ObjectName register(String name) throws JMException {
+      ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX
+            + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+            objectName);
+      return objectName;
+   }
+
+   /**
+    * Removes metrics published by register.
+    *
+    * @param objectName The name register returned.
+    * @throws JMException if nothing is registered under the name.
+    */
+   public static void unregister(ObjectName objectName) throws JMException {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+   }
+
+   @Override
+   public long getBuildCount() {
+      return buildNanos.getCount();
+   }
+
+   @Override
+   public long getEncodeCount() {
+      return encodeNanos.getCount();
+   }
+
+   @Override
+   public long getDecodeCount() {
+      return decodeNanos.getCount();
+   }
+
+   @Override
+   public long getSymbolsEncoded() {
+      return symbolsEncoded.sum();
+   }
+
+   @Override
+   public long getBitsEncoded() {
+      return bitsEncoded.sum();
+   }
+
+   @Override
+   public long getSymbolsDecoded() {
+      return symbolsDecoded.sum();
+   }
+
+   @Override
+   public long getBitsDecoded() {
+      return bitsDecoded.sum();
+   }
+
+   @Override
+   public double getCompressionRatio() {
+      long bits = bitsEncoded.sum();
+      return bits == 0 ? 0 : 8.0 * symbolsEncoded.sum() / bits;
+   }
+
+   @Override
+   public double getAverageCodeLength() {
+      long symbols = symbolsEncoded.sum();
+      return symbols == 0 ? 0 : (double) bitsEncoded.sum() / symbols;
+   }
+
+   @Override
+   public double getExpectedCodeLength() {
+      double weight = buildWeight.sum();
+      return weight == 0 ? 0 : buildCodeBits.sum() / weight;
+   }
+
+   @Override
+   public double getEntropy() {
+      double weight = buildWeight.sum();
+      return weight == 0 ? 0 : buildEntropyBits.sum() / weight;
+   }
+
+   @Override
+   public double getEncodeThroughput() {
+      return perSecond(symbolsEncoded.sum(), encodeNanos.getTotalNanos());
+   }
+
+   @Override
+   public double getDecodeThroughput() {
+      return perSecond(symbolsDecoded.sum(), decodeNanos.getTotalNanos());
+   }
+
+   private static double perSecond(long count, long nanos) {
+      return nanos == 0 ? 0 : count * 1e9 / nanos;
+   }
+
+   @Override
+   public long getBuildNanosP50() {
+      return buildNanos.getPercentileNanos(50);
+   }
+
+   @Override
+   public long getBuildNanosP99() {
+      return buildNanos.getPercentileNanos(99);
+   }
+
+   @Override
+   public long getBuildNanosMax() {
+      return buildNanos.getMaxNanos();
+   }
+
+   @Override
+   public long getEncodeNanosP50() {
+      return encodeNanos.getPercentileNanos(50);
+   }
+
+   @Override
+   public long getEncodeNanosP99() {
+      return encodeNanos.getPercentileNanos(99);
+   }
+
+   @Override
+   public long getEncodeNanosMax() {
+      return encodeNanos.getMaxNanos();
+   }
+
+   @Override
+   public long getDecodeNanosP50() {
+      return decodeNanos.getPercentileNanos(50);
+   }
+
+   @Override
+   public long getDecodeNanosP99() {
+      return decodeNanos.getPercentileNanos(99);
+   }
+
+   @Override
+   public long getDecodeNanosMax() {
+      return decodeNanos.getMaxNanos();
+   }
+
+   @Override
+   public void reset() {
+      buildNanos.reset();
+      encodeNanos.reset();
+      decodeNanos.reset();
+      symbolsEncoded.reset();
+      bitsEncoded.reset();
+      symbolsDecoded.reset();
+      bitsDecoded.reset();
+      buildWeight.reset();
+      buildCodeBits.reset();
+      buildEntropyBits.reset();
+   }
+}
@@ -0,0 +1,184 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The LongHeap class is a min-heap of primitive long keys held in one array,
+ * with no boxing and no Comparator calls. Callers that need to know which
+ * item a key belongs to pack the item's index into the low bits (see pack);
+ * equal priorities then come out in index order, so the order never depends
+ * on the shape of the heap.
+ *
+ * Each node has 2 or 4 children. A 4-ary heap is half as deep as a binary
+ * one, and the four children of a node sit next to each other in the array,
+ * so a sift touches fewer cache lines. A heap can be built from an array of
+ * keys in linear time with heapify.
+ *
+ * @author jam
+ *
+ */
+public class LongHeap {
+
+   private long[] heap;
+   private int size;
+   // log2 of the number of children per node.
+   private final int shift;
+
+   /**
+    * Creates an empty binary heap.
+    */
+   public LongHeap() {
+      this(16, 2);
+   }
+
+   /**
+    * Creates an empty heap.
+    *
+    * @param capacity Number of keys the heap holds before growing.
+    * @param arity    Children per node, 2 or 4.
+    */
+   public LongHeap(int capacity, int arity) {
+      if (arity != 2 && arity != 4) {
+         throw new IllegalArgumentException(
+               "Arity must be 2 or 4: " + arity);
+      }
+      heap = new long[Math.max(capacity, 1)];
+      shift = arity == 2 ? 1 : 2;
+   }
+
+   /**
+    * Builds a heap holding the first n keys of an array in O(n) time, by
+    * sifting down every node from the last parent to the root.
+    *
+    * @param keys  The keys; the array is not modified.
+    * @param n     Number of keys.
+    * @param arity Children per node, 2 or 4.
+    * @return The heap.
+    */
+   public static LongHeap heapify(long[] keys, int n, int arity) {
+      LongHeap h = new LongHeap(n, arity);
+      System.arraycopy(keys, 0, h.heap, 0, n);
+      h.size = n;
+      for (int i = (n - 2) >> h.shift; i >= 0; i--) {
+         h.siftDown(i, h.heap[i]);
+      }
+      return h;
+   }
+
+   /**
+    * Packs a priority and an item index into one key. Keys order by
+    * priority, then by index.
+    *
+    * @param priority  The priority, from 0 to 2^(63 - indexBits) - 1.
+    * @param index     The item index, from 0 to 2^indexBits - 1.
+    * @param indexBits Number of low bits that hold the index.
+    * @return The key.
+    */
+   public static long pack(long priority, int index, int indexBits) {
+      return (priority << indexBits) | index;
+   }
+
+   /**
+    * Number of keys in the heap.
+    *
+    * @return the size.
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Whether the heap is empty.
+    *
+    * @return true if there are no keys.
+    */
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * Removes every key.
+    */
+   public void clear() {
+      size = 0;
+   }
+
+   /**
+    * Inserts a key.
+    *
+    * @param key The key.
+    */
+   public void offer(long key) {
+      if (size == heap.length) {
+         heap = Arrays.copyOf(heap, heap.length * 2);
+      }
+      // Move parents down into the hole until key fits.
+      int child = size++;
+      while (child > 0) {
+         int parent = (child - 1) >> shift;
+         long p = heap[parent];
+         if (p <= key) {
+            break;
+         }
+         heap[child] = p;
+         child = parent;
+      }
+      heap[child] = key;
+   }
+
+   /**
+    * Returns the smallest key without removing it.
+    *
+    * @return the smallest key.
+    * @throws NoSuchElementException if the heap is empty.
+    */
+   public long peek() {
+      if (size == 0) {
+         throw new NoSuchElementException("Heap is empty");
+      }
+      return heap[0];
+   }
+
+   /**
+    * Removes and returns the smallest key.
+    *
+    * @return the smallest key.
+    * @throws NoSuchElementException if the heap is empty.
+    */
+   public long poll() {
+      long result = peek();
+      long last = heap[--size];
+      if (size > 0) {
+         siftDown(0, last);
+      }
+      return result;
+   }
+
+   /**
+    * Places key at the hole at index i, moving smaller children up until
+    * it fits.
+    */
+   private void siftDown(int i, long key) {
+      int arity = 1 << shift;
+      while (true) {
+         int first = (i << shift) + 1;
+         if (first >= size) {
+            break;
+         }
+         int end = Math.min(first + arity, size);
+         int min = first;
+         long minKey = heap[first];
+         for (int c = first + 1; c < end; c++) {
+            if (heap[c] < minKey) {
+               minKey = heap[c];
+               min = c;
+            }
+         }
+         if (key <= minKey) {
+            break;
+         }
+         heap[i] = minKey;
+         i = min;
+      }
+      heap[i] = key;
+   }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongHeapTest {
+
+   private static long[] drain(LongHeap heap) {
+      long[] result = new long[heap.size()];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = heap.poll();
+      }
+      assertTrue(heap.isEmpty());
+      return result;
+   }
+
+   @Test
+   void offerPollTest() {
+      Random random = new Random(1);
+      for (int arity : new int[] { 2, 4 }) {
+         LongHeap heap = new LongHeap(1, arity);
+         long[] keys = new long[1000];
+         for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(200) - 100;
+            heap.offer(keys[i]);
+         }
+         Arrays.sort(keys);
+         assertEquals(keys[0], heap.peek());
+         assertArrayEquals(keys, drain(heap));
+      }
+   }
+
+   @Test
+   void heapifyTest() {
+      Random random = new Random(2);
+      long[] keys = new long[777];
+      for (int i = 0; i < keys.length; i++) {
+         keys[i] = random.nextLong();
+      }
+      long[] copy = keys.clone();
+      for (int arity : new int[] { 2, 4 }) {
+         LongHeap heap = LongHeap.heapify(keys, 500, arity);
+         assertEquals(500, heap.size());
+         long[] expected = Arrays.copyOf(keys, 500);
+         Arrays.sort(expected);
+         assertArrayEquals(expected, drain(heap));
+      }
+      assertArrayEquals(copy, keys);
+      assertTrue(LongHeap.heapify(keys, 0, 4).isEmpty());
+   }
+
+   @Test
+   void packTest() {
+      // Equal priorities come out in index order.
+      LongHeap heap = new LongHeap();
+      heap.offer(LongHeap.pack(5, 3, 4));
+      heap.offer(LongHeap.pack(5, 1, 4));
+      heap.offer(LongHeap.pack(2, 9, 4));
+      heap.offer(LongHeap.pack(5, 2, 4));
+      int[] order = new int[4];
+      for (int i = 0; i < order.length; i++) {
+         order[i] = (int) (heap.poll() & 15);
+      }
+      assertArrayEquals(new int[] { 9, 1, 2, 3 }, order);
+   }
+
+   @Test
+   void emptyTest() {
+      LongHeap heap = new LongHeap();
+      assertThrows(NoSuchElementException.class, heap::peek);
+      assertThrows(NoSuchElementException.class, heap::poll);
+      heap.offer(7);
+      heap.clear();
+      assertEquals(0, heap.size());
+      assertThrows(IllegalArgumentException.class,
+            () -> new LongHeap(4, 3));
+   }
+}
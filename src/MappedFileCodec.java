@@ -0,0 +1,221 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MappedFileCodec class compresses and decompresses whole files in the
+ * archive format of HuffmanArchiveWriter through memory-mapped I/O. The input
+ * file is mapped with FileChannel.map and each block is counted, encoded or
+ * decoded in place in the mapping, so no bytes are copied through Java
+ * buffers on the way in and the operating system's page cache does the
+ * buffering. On the way out, the decompressed file is mapped as well and
+ * every block is decoded straight into it.
+ *
+ * A mapping holds at most 2 GB, so larger files are mapped one window of
+ * whole blocks at a time. The size of a compressed file is not known until
+ * it is written, so archives are written through the channel rather than
+ * mapped.
+ *
+ * Optionally, single-stream blocks are decoded with OffHeapHuffmanCode tables,
+ * so decoding between the two mappings reads no heap arrays at all.
+ *
+ * @author jam
+ *
+ */
+public class MappedFileCodec {
+
+   /**
+    * Largest region mapped at once.
+    */
+   static final long DEFAULT_MAP_SIZE = 1L << 30;
+
+   private final int blockSize;
+   private final long mapSize;
+   private final boolean offHeap;
+   private final CodecMetrics metrics;
+
+   /**
+    * Creates a codec with the default block size.
+    */
+   public MappedFileCodec() {
+      this(HuffmanArchiveWriter.DEFAULT_BLOCK_SIZE);
+   }
+
+   /**
+    * Creates a codec.
+    *
+    * @param blockSize Number of bytes per block.
+    */
+   public MappedFileCodec(int blockSize) {
+      this(blockSize, false);
+   }
+
+   /**
+    * Creates a codec that may decode with off-heap tables.
+    *
+    * @param blockSize Number of bytes per block.
+    * @param offHeap   Whether to decode single-stream blocks with
+    *                  OffHeapHuffmanCode tables.
+    */
+   public MappedFileCodec(int blockSize, boolean offHeap) {
+      this(blockSize, DEFAULT_MAP_SIZE, offHeap);
+   }
+
+   /**
+    * Creates a codec that maps at most mapSize bytes at once, or one block
+    * if that is larger.
+    *
+    * @param blockSize Number of bytes per block.
+    * @param mapSize   Largest region to map at once.
+    */
+   MappedFileCodec(int blockSize, long mapSize) {
+      this(blockSize, mapSize, false);
+   }
+
+   /**
+    * Creates a codec that maps at most mapSize bytes at once and may decode
+    * with off-heap tables.
+    *
+    * @param blockSize Number of bytes per block.
+    * @param mapSize   Largest region to map at once.
+    * @param offHeap   Whether to decode single-stream blocks with
+    *                  OffHeapHuffmanCode tables.
+    */
+   MappedFileCodec(int blockSize, long mapSize, boolean offHeap) {
+      this(blockSize, mapSize, offHeap, CodecMetrics.NONE);
+   }
+
+   /**
+    * Creates a codec whose tables record their builds, encodes and decodes
+    * into metrics.
+    *
+    * @param blockSize Number of bytes per block.
+    * @param offHeap   Whether to decode single-stream blocks with
+    *                  OffHeapHuffmanCode tables.
+    * @param metrics   The metrics, or CodecMetrics.NONE.
+    */
+   public MappedFileCodec(int blockSize, boolean offHeap,
+         CodecMetrics metrics) {
+      this(blockSize, DEFAULT_MAP_SIZE, offHeap, metrics);
+   }
+
+   /**
+    * Creates a codec that maps at most mapSize bytes at once, may decode
+    * with off-heap tables and records into metrics.
+    *
+    * @param blockSize Number of bytes per block.
+    * @param mapSize   Largest region to map at once.
+    * @param offHeap   Whether to decode single-stream blocks with
+    *                  OffHeapHuffmanCode tables.
+    * @param metrics   The metrics, or CodecMetrics.NONE.
+    */
+   MappedFileCodec(int blockSize, long mapSize, boolean offHeap,
+         CodecMetrics metrics) {
+      if (blockSize < 1 || blockSize > HuffmanArchiveWriter.MAX_BLOCK_SIZE) {
+         throw new IllegalArgumentException(
+               "Unsupported block size " + blockSize);
+      }
+      if (mapSize < 1 || mapSize > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException(
+               "Unsupported mapping size " + mapSize);
+      }
+      this.blockSize = blockSize;
+      this.mapSize = mapSize;
+      this.offHeap = offHeap;
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+   }
+
+   /**
+    * Compresses a file into an archive, replacing any existing file.
+    *
+    * @param source  The file to compress.
+    * @param archive The archive to write.
+    * @return The size of the archive.
+    * @throws IOException if a file cannot be read or written.
+    */
+   public long compress(Path source, Path archive) throws IOException {
+      try (FileChannel in = FileChannel.open(source,
+            StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(archive,
+                  StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING)) {
+         OutputStream stream = new BufferedOutputStream(
+               Channels.newOutputStream(out), 1 << 16);
+         HuffmanArchiveWriter writer = new HuffmanArchiveWriter(stream, null,
+               0, false, false, metrics);
+         long size = in.size();
+         // Windows hold whole blocks.
+         long window = Math.max(blockSize, mapSize / blockSize * blockSize);
+         for (long pos = 0; pos < size; pos += window) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, pos,
+                  Math.min(window, size - pos));
+            for (int off = 0; off < map.limit(); off += blockSize) {
+               writer.writeBlock(map.slice(off,
+                     Math.min(blockSize, map.limit() - off)));
+            }
+         }
+         // Flushes the buffered archive; the channel closes below.
+         writer.finish();
+         return out.size();
+      }
+   }
+
+   /**
+    * Decompresses an archive into a file, replacing any existing file.
+    *
+    * @param archive The archive to read.
+    * @param target  The file to write.
+    * @return The size of the decompressed file.
+    * @throws IOException if a file cannot be read or written, or the archive
+    *                     is invalid or corrupt.
+    */
+   public long decompress(Path archive, Path target) throws IOException {
+      try (FileChannel in = FileChannel.open(archive,
+            StandardOpenOption.READ);
+            HuffmanArchiveReader reader = new HuffmanArchiveReader(in,
+                  offHeap, metrics);
+            FileChannel out = FileChannel.open(target,
+                  StandardOpenOption.CREATE, StandardOpenOption.READ,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING)) {
+         int count = reader.getBlockCount();
+         for (int first = 0; first < count;) {
+            // Map as many blocks as fit in one window on both sides.
+            long inStart = reader.blockOffset(first);
+            long outStart = reader.getOriginalOffset(first);
+            int last = first + 1;
+            while (last < count
+                  && reader.blockEnd(last) - inStart <= mapSize
+                  && originalEnd(reader, last) - outStart <= mapSize) {
+               last++;
+            }
+            MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY,
+                  inStart, reader.blockEnd(last - 1) - inStart);
+            MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE,
+                  outStart, originalEnd(reader, last - 1) - outStart);
+            for (int i = first; i < last; i++) {
+               ByteBuffer raw = src.slice(
+                     (int) (reader.blockOffset(i) - inStart),
+                     (int) (reader.blockEnd(i) - reader.blockOffset(i)));
+               ByteBuffer block = dst.slice(
+                     (int) (reader.getOriginalOffset(i) - outStart),
+                     reader.getOriginalSize(i));
+               reader.decodeBlock(i, raw, block);
+            }
+            first = last;
+         }
+         return reader.getOriginalSize();
+      }
+   }
+
+   private static long originalEnd(HuffmanArchiveReader reader, int block) {
+      return reader.getOriginalOffset(block)
+            + reader.getOriginalSize(block);
+   }
+}
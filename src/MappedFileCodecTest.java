@@ -0,0 +1,108 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedFileCodecTest {
+
+   @Test
+   void roundTripTest(@TempDir Path dir) throws IOException {
+      byte[] data = TestData.skewedLetters(300_001, 1, 4);
+      Path source = dir.resolve("source.bin");
+      Path archive = dir.resolve("source.hufa");
+      Path restored = dir.resolve("restored.bin");
+      Files.write(source, data);
+      MappedFileCodec codec = new MappedFileCodec(16_384);
+      long size = codec.compress(source, archive);
+      assertEquals(Files.size(archive), size);
+      assertTrue(size < data.length / 2);
+      // The same archive the in-memory writer produces.
+      assertArrayEquals(HuffmanArchiveWriter.compress(data, 16_384),
+            Files.readAllBytes(archive));
+      assertEquals(data.length, codec.decompress(archive, restored));
+      assertArrayEquals(data, Files.readAllBytes(restored));
+   }
+
+   @Test
+   void windowTest(@TempDir Path dir) throws IOException {
+      // Small windows stand in for files larger than one mapping.
+      byte[] data = TestData.skewedLetters(100_000, 2, 4);
+      Path source = dir.resolve("source.bin");
+      Path archive = dir.resolve("source.hufa");
+      Path restored = dir.resolve("restored.bin");
+      Files.write(source, data);
+      MappedFileCodec codec = new MappedFileCodec(3000, 10_000);
+      codec.compress(source, archive);
+      assertArrayEquals(data, HuffmanArchiveReader.decompress(
+            Files.readAllBytes(archive)));
+      codec.decompress(archive, restored);
+      assertArrayEquals(data, Files.readAllBytes(restored));
+   }
+
+   @Test
+   void offHeapTest(@TempDir Path dir) throws IOException {
+      // A block of one repeated byte as well as ordinary ones.
+      byte[] data = TestData.skewedLetters(40_000, 4, 4);
+      Arrays.fill(data, 9000, 12_000, (byte) 'q');
+      Path source = dir.resolve("source.bin");
+      Path archive = dir.resolve("source.hufa");
+      Path restored = dir.resolve("restored.bin");
+      Files.write(source, data);
+      MappedFileCodec codec = new MappedFileCodec(3000, 10_000, true);
+      codec.compress(source, archive);
+      assertEquals(data.length, codec.decompress(archive, restored));
+      assertArrayEquals(data, Files.readAllBytes(restored));
+
+      byte[] corrupt = Files.readAllBytes(archive);
+      corrupt[corrupt.length / 2] ^= 0x10;
+      Path file = Files.write(dir.resolve("corrupt.hufa"), corrupt);
+      assertThrows(IOException.class, () -> new MappedFileCodec(8192, true)
+            .decompress(file, dir.resolve("corrupt.bin")));
+   }
+
+   @Test
+   void emptyTest(@TempDir Path dir) throws IOException {
+      Path source = Files.createFile(dir.resolve("empty.bin"));
+      Path archive = dir.resolve("empty.hufa");
+      Path restored = dir.resolve("restored.bin");
+      MappedFileCodec codec = new MappedFileCodec();
+      codec.compress(source, archive);
+      assertEquals(0, codec.decompress(archive, restored));
+      assertEquals(0, Files.size(restored));
+   }
+
+   @Test
+   void corruptionTest(@TempDir Path dir) throws IOException {
+      byte[] archive = HuffmanArchiveWriter.compress(
+            TestData.skewedLetters(50_000, 3, 4), 8192);
+      archive[archive.length / 2] ^= 0x10;
+      Path file = Files.write(dir.resolve("corrupt.hufa"), archive);
+      assertThrows(IOException.class, () -> new MappedFileCodec()
+            .decompress(file, dir.resolve("restored.bin")));
+   }
+
+   @Test
+   void directBufferTest() throws IOException {
+      // Blocks read from a direct buffer code the same as from an array.
+      byte[] data = TestData.skewedLetters(20_000, 4, 4);
+      ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+      direct.put(data).flip();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out)) {
+         writer.writeBlock(direct);
+      }
+      assertEquals(0, direct.position());
+      assertArrayEquals(HuffmanArchiveWriter.compress(data, data.length),
+            out.toByteArray());
+   }
+}
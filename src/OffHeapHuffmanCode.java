@@ -0,0 +1,199 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * The OffHeapHuffmanCode class codes bytes with tables held outside the Java
+ * heap. The codeword of every byte value and the lookup table of a
+ * HuffmanDecodeTable are copied into direct buffers, and the encode and decode
+ * loops read and write direct or memory-mapped buffers given by the caller,
+ * so a worker holding many tables and large I/O buffers leaves the garbage
+ * collector little to trace or copy. The output is the same packed, most
+ * significant bit first stream as HuffmanTree.encodeBytes.
+ *
+ * close drops the code's references to its tables, after which every method
+ * throws IllegalStateException. It does not free the memory: direct buffers
+ * are released by the garbage collector once nothing refers to them. Coding
+ * is safe from many threads at once as long as none of them closes the code
+ * meanwhile.
+ *
+ * @author jam
+ *
+ */
+public class OffHeapHuffmanCode implements AutoCloseable {
+
+   private static final int SYMBOL_MASK = HuffmanDecodeTable.SYMBOL_MASK;
+
+   // Codeword of each byte value, packed as (code << 8) | length; 0 for none.
+   private LongBuffer encodeTable;
+   // Entries of the decode table, laid out as in HuffmanDecodeTable.
+   private LongBuffer decodeTable;
+   private final int rootBits;
+
+   /**
+    * Copies the tables of a code over byte values off the heap.
+    *
+    * @param code The code; its symbols must be byte values.
+    * @throws IllegalArgumentException if a symbol is not a byte value, the
+    *                                  code is empty, or a code is longer
+    *                                  than HuffmanDecodeTable.MAX_CODE_LENGTH.
+    */
+   public OffHeapHuffmanCode(CanonicalCode code) {
+      if (code.size() == 0) {
+         throw new IllegalArgumentException("Code has no symbols");
+      }
+      HuffmanDecodeTable table = code.toDecodeTable();
+      encodeTable = allocate(256);
+      for (int i = 0; i < code.size(); i++) {
+         int s = code.getSymbol(i);
+         if (s > 255) {
+            throw new IllegalArgumentException(
+                  "Symbol " + s + " is not a byte value");
+         }
+         encodeTable.put(s, (code.getCode(i) << 8) | code.getLength(i));
+      }
+      decodeTable = allocate(table.size());
+      table.copyTo(decodeTable);
+      decodeTable.clear();
+      rootBits = table.getRootBits();
+   }
+
+   /**
+    * Allocates a zeroed table of n longs in native byte order.
+    */
+   private static LongBuffer allocate(int n) {
+      return ByteBuffer.allocateDirect(n * Long.BYTES)
+            .order(ByteOrder.nativeOrder()).asLongBuffer();
+   }
+
+   /**
+    * Encodes the remaining bytes of src into dst, padding the last byte with
+    * zero bits. Both positions advance past the bytes used.
+    *
+    * @param src The bytes to encode.
+    * @param dst The buffer receiving the packed bits.
+    * @return The number of bits written, not counting padding.
+    * @throws IllegalArgumentException        if a byte has no code.
+    * @throws java.nio.BufferOverflowException if dst fills up.
+    * @throws IllegalStateException           if the code is closed.
+    */
+   public long encode(ByteBuffer src, ByteBuffer dst) {
+      LongBuffer codes = encodeTable();
+      long bits = 0;
+      long acc = 0;
+      int pending = 0;
+      while (src.hasRemaining()) {
+         int b = src.get() & 0xFF;
+         long e = codes.get(b);
+         if (e == 0) {
+            throw new IllegalArgumentException("No code for byte " + b);
+         }
+         int len = (int) e & 0xFF;
+         // Only the low pending bits of the accumulator are live.
+         acc = (acc << len) | (e >>> 8);
+         pending += len;
+         bits += len;
+         while (pending >= 8) {
+            pending -= 8;
+            dst.put((byte) (acc >>> pending));
+         }
+      }
+      if (pending > 0) {
+         dst.put((byte) (acc << (8 - pending)));
+      }
+      return bits;
+   }
+
+   /**
+    * Decodes bytes from src until dst is full. The position of src advances
+    * past the last byte holding bits of a decoded code.
+    *
+    * @param src The packed bits.
+    * @param dst The buffer receiving the bytes.
+    * @throws IllegalArgumentException if the bits start no codeword or run
+    *                                  out.
+    * @throws IllegalStateException    if the code is closed.
+    */
+   public void decode(ByteBuffer src, ByteBuffer dst) {
+      LongBuffer table = decodeTable();
+      long available = 8L * src.remaining();
+      int start = dst.position();
+      BitReader in = new BitReader(src);
+      while (dst.hasRemaining()) {
+         // Each codeword is checked against the bits left before its
+         // symbols are written, as in HuffmanDecodeTable.decode.
+         long remaining = available - in.bitsRead();
+         if (remaining <= 0) {
+            throw streamEnded(dst, start);
+         }
+         long e = table.get((int) in.peekBits(rootBits));
+         int count = HuffmanDecodeTable.count(e);
+         if (count == 2 && HuffmanDecodeTable.length(e) <= remaining
+               && dst.remaining() > 1) {
+            dst.put((byte) (e >>> 10));
+            dst.put((byte) (e >>> 32));
+            in.skipBits(HuffmanDecodeTable.length(e));
+            continue;
+         }
+         if (count == 0) {
+            e = secondLevel(table, in, e);
+         }
+         int len = HuffmanDecodeTable.firstLength(e);
+         if (len > remaining) {
+            throw streamEnded(dst, start);
+         }
+         dst.put((byte) (e >>> 10));
+         in.skipBits(len);
+      }
+      src.position(src.position() + (int) ((in.bitsRead() + 7) >>> 3));
+   }
+
+   private static IllegalArgumentException streamEnded(ByteBuffer dst,
+         int start) {
+      return new IllegalArgumentException("Stream ended after "
+            + (dst.position() - start) + " bytes");
+   }
+
+   /**
+    * Resolves a root entry that links to a second-level table.
+    */
+   private long secondLevel(LongBuffer table, BitReader in, long link) {
+      if (link == 0) {
+         throw new IllegalArgumentException("Invalid code in stream");
+      }
+      int width = HuffmanDecodeTable.length(link);
+      int base = (int) (link >>> 10) & SYMBOL_MASK;
+      int index = (int) in.peekBits(rootBits + width) & ((1 << width) - 1);
+      long e = table.get(base + index);
+      if (e == 0) {
+         throw new IllegalArgumentException("Invalid code in stream");
+      }
+      return e;
+   }
+
+   /**
+    * Drops the references to the tables so that they can be collected.
+    * Closing twice has no effect.
+    */
+   @Override
+   public void close() {
+      encodeTable = null;
+      decodeTable = null;
+   }
+
+   private LongBuffer encodeTable() {
+      LongBuffer table = encodeTable;
+      if (table == null) {
+         throw new IllegalStateException("Code tables are closed");
+      }
+      return table;
+   }
+
+   private LongBuffer decodeTable() {
+      LongBuffer table = decodeTable;
+      if (table == null) {
+         throw new IllegalStateException("Code tables are closed");
+      }
+      return table;
+   }
+}
@@ -0,0 +1,172 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapHuffmanCodeTest {
+
+   /**
+    * Bytes 'a'.. with Fibonacci-like frequencies, so the rare ones get codes
+    * longer than the root table resolves.
+    */
+   private static byte[] sample(int size, long seed) {
+      Random random = new Random(seed);
+      byte[] data = new byte[size];
+      for (int i = 0; i < size; i++) {
+         int s = 0;
+         while (s < 19 && random.nextInt(8) < 5) {
+            s++;
+         }
+         data[i] = (byte) ('a' + s);
+      }
+      return data;
+   }
+
+   private static HuffmanTree treeFor(byte[] data) {
+      HuffmanTree tree = new HuffmanTree();
+      tree.buildTree(FrequencyCounter.countBytes(data, 0, data.length),
+            HuffmanDecodeTable.MAX_CODE_LENGTH);
+      return tree;
+   }
+
+   @Test
+   void roundTripTest() {
+      byte[] data = sample(50_000, 1);
+      HuffmanTree tree = treeFor(data);
+      BitWriter expected = new BitWriter();
+      long bits = tree.encodeBytes(data, expected);
+      byte[] packed = expected.toByteArray();
+
+      try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+            tree.getCanonicalCode())) {
+         ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+         src.put(data).flip();
+         ByteBuffer encoded = ByteBuffer.allocateDirect(packed.length);
+         assertEquals(bits, code.encode(src, encoded));
+         assertEquals(packed.length, encoded.position());
+         // The same stream the heap encoder writes.
+         byte[] copy = new byte[packed.length];
+         encoded.flip().get(copy);
+         assertArrayEquals(packed, copy);
+
+         encoded.flip();
+         ByteBuffer decoded = ByteBuffer.allocateDirect(data.length);
+         code.decode(encoded, decoded);
+         assertEquals(packed.length, encoded.position());
+         byte[] result = new byte[data.length];
+         decoded.flip().get(result);
+         assertArrayEquals(data, result);
+      }
+   }
+
+   @Test
+   void heapBufferTest() {
+      byte[] data = "abracadabra".getBytes();
+      HuffmanTree tree = treeFor(data);
+      try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+            tree.getCanonicalCode())) {
+         ByteBuffer encoded = ByteBuffer.allocate(16);
+         code.encode(ByteBuffer.wrap(data), encoded);
+         byte[] result = new byte[data.length];
+         code.decode(encoded.flip(), ByteBuffer.wrap(result));
+         assertArrayEquals(data, result);
+      }
+   }
+
+   @Test
+   void truncatedTest() {
+      byte[] data = sample(1000, 2);
+      HuffmanTree tree = treeFor(data);
+      try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+            tree.getCanonicalCode())) {
+         ByteBuffer encoded = ByteBuffer.allocateDirect(1000);
+         code.encode(ByteBuffer.wrap(data), encoded);
+         encoded.flip().limit(encoded.limit() / 2);
+         assertThrows(IllegalArgumentException.class,
+               () -> code.decode(encoded, ByteBuffer.allocate(data.length)));
+      }
+   }
+
+   @Test
+   void overrunTest() {
+      // Each cut ends the stream at a different point of a codeword or a
+      // paired entry; only whole codewords are written before the error.
+      byte[] data = "abababcabababcaab".getBytes();
+      HuffmanTree tree = treeFor(data);
+      CanonicalCode canonical = tree.getCanonicalCode();
+      try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(canonical)) {
+         ByteBuffer encoded = ByteBuffer.allocate(16);
+         long bits = code.encode(ByteBuffer.wrap(data), encoded);
+         for (int bytes = 0; bytes < (bits + 7) / 8; bytes++) {
+            int whole = 0;
+            long used = 0;
+            for (byte b : data) {
+               int length = canonical.getLength(indexOf(canonical, b));
+               if (used + length > 8L * bytes) {
+                  break;
+               }
+               used += length;
+               whole++;
+            }
+            ByteBuffer src = ByteBuffer.wrap(encoded.array(), 0, bytes);
+            ByteBuffer dst = ByteBuffer.allocate(data.length);
+            IllegalArgumentException e = assertThrows(
+                  IllegalArgumentException.class,
+                  () -> code.decode(src, dst));
+            assertEquals(whole, dst.position());
+            assertEquals("Stream ended after " + whole + " bytes",
+                  e.getMessage());
+         }
+      }
+   }
+
+   private static int indexOf(CanonicalCode code, int symbol) {
+      for (int i = 0; i < code.size(); i++) {
+         if (code.getSymbol(i) == symbol) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   @Test
+   void missingSymbolTest() {
+      HuffmanTree tree = treeFor("aab".getBytes());
+      try (OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+            tree.getCanonicalCode())) {
+         assertThrows(IllegalArgumentException.class,
+               () -> code.encode(ByteBuffer.wrap("abc".getBytes()),
+                     ByteBuffer.allocate(16)));
+      }
+   }
+
+   @Test
+   void closedTest() {
+      HuffmanTree tree = treeFor("aab".getBytes());
+      OffHeapHuffmanCode code = new OffHeapHuffmanCode(
+            tree.getCanonicalCode());
+      code.close();
+      code.close();
+      assertThrows(IllegalStateException.class,
+            () -> code.encode(ByteBuffer.wrap("ab".getBytes()),
+                  ByteBuffer.allocate(16)));
+      assertThrows(IllegalStateException.class,
+            () -> code.decode(ByteBuffer.allocate(4), ByteBuffer.allocate(1)));
+   }
+
+   @Test
+   void invalidCodeTest() {
+      int[] symbols = new int[300];
+      Arrays.setAll(symbols, i -> i);
+      byte[] lengths = new byte[300];
+      Arrays.fill(lengths, (byte) 9);
+      assertThrows(IllegalArgumentException.class,
+            () -> new OffHeapHuffmanCode(new CanonicalCode(symbols,
+                  lengths)));
+   }
+}
@@ -0,0 +1,305 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * The ParallelBlockCodec class compresses and decompresses byte data in the
+ * archive format of HuffmanArchiveWriter, working on many blocks at once.
+ * The input is cut into fixed-size blocks that are encoded concurrently on a
+ * fork-join pool and then written in order; on the way back, every block is
+ * decoded concurrently straight into its place in the output.
+ *
+ * Blocks either carry their own code table, which adapts to local statistics,
+ * or share one table built from the counts of the whole input, which saves the
+ * table bytes of small blocks. With candidate tables, each block instead gets
+ * the cheapest of the shared table, the tables of earlier blocks and a new
+ * one. The blocks are counted concurrently, their tables are chosen in order,
+ * since each choice depends on the ones before, and then the blocks are
+ * encoded concurrently.
+ *
+ * Blocks may also be split into four interleaved streams, which decode
+ * faster on a single core; see HuffmanArchiveWriter.
+ *
+ * @author jam
+ *
+ */
+public class ParallelBlockCodec {
+
+   private final int blockSize;
+   private final boolean sharedTable;
+   private final int candidateTables;
+   private final boolean interleaved;
+   private final ForkJoinPool pool;
+   private final CodecMetrics metrics;
+
+   /**
+    * Creates a codec with per-block tables and the default block size that
+    * runs on the common fork-join pool.
+    */
+   public ParallelBlockCodec() {
+      this(HuffmanArchiveWriter.DEFAULT_BLOCK_SIZE, false,
+            ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Creates a codec.
+    *
+    * @param blockSize   Number of bytes per block.
+    * @param sharedTable true to code all blocks with one table built from the
+    *                    whole input, false to give each block its own.
+    * @param pool        The pool that runs the block tasks.
+    */
+   public ParallelBlockCodec(int blockSize, boolean sharedTable,
+         ForkJoinPool pool) {
+      this(blockSize, sharedTable, 0, pool);
+   }
+
+   /**
+    * Creates a codec that chooses each block's table by its encoded size.
+    *
+    * @param blockSize       Number of bytes per block.
+    * @param sharedTable     true to build a shared table from the whole
+    *                        input.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        HuffmanArchiveWriter.MAX_CANDIDATES.
+    * @param pool            The pool that runs the block tasks.
+    */
+   public ParallelBlockCodec(int blockSize, boolean sharedTable,
+         int candidateTables, ForkJoinPool pool) {
+      this(blockSize, sharedTable, candidateTables, false, pool);
+   }
+
+   /**
+    * Creates a codec that may split blocks into four interleaved streams.
+    *
+    * @param blockSize       Number of bytes per block.
+    * @param sharedTable     true to build a shared table from the whole
+    *                        input.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        HuffmanArchiveWriter.MAX_CANDIDATES.
+    * @param interleaved     true to split blocks of at least
+    *                        HuffmanArchiveWriter.MIN_INTERLEAVED_SIZE bytes
+    *                        into four streams.
+    * @param pool            The pool that runs the block tasks.
+    */
+   public ParallelBlockCodec(int blockSize, boolean sharedTable,
+         int candidateTables, boolean interleaved, ForkJoinPool pool) {
+      this(blockSize, sharedTable, candidateTables, interleaved, pool,
+            CodecMetrics.NONE);
+   }
+
+   /**
+    * Creates a codec whose tables record their builds, encodes and decodes
+    * into metrics, which must accept records from many threads at once.
+    *
+    * @param blockSize       Number of bytes per block.
+    * @param sharedTable     true to build a shared table from the whole
+    *                        input.
+    * @param candidateTables Number of candidate tables to keep, from 0 to
+    *                        HuffmanArchiveWriter.MAX_CANDIDATES.
+    * @param interleaved     true to split blocks of at least
+    *                        HuffmanArchiveWriter.MIN_INTERLEAVED_SIZE bytes
+    *                        into four streams.
+    * @param pool            The pool that runs the block tasks.
+    * @param metrics         The metrics, or CodecMetrics.NONE.
+    */
+   public ParallelBlockCodec(int blockSize, boolean sharedTable,
+         int candidateTables, boolean interleaved, ForkJoinPool pool,
+         CodecMetrics metrics) {
+      if (blockSize < 1 || blockSize > HuffmanArchiveWriter.MAX_BLOCK_SIZE) {
+         throw new IllegalArgumentException(
+               "Unsupported block size " + blockSize);
+      }
+      this.blockSize = blockSize;
+      this.sharedTable = sharedTable;
+      this.candidateTables = candidateTables;
+      this.interleaved = interleaved;
+      this.pool = pool;
+      this.metrics = metrics == null ? CodecMetrics.NONE : metrics;
+   }
+
+   /**
+    * Compresses data into an archive written to out. The stream is closed
+    * when the archive is complete.
+    *
+    * @param data The bytes to compress.
+    * @param out  The stream receiving the archive.
+    * @throws IOException if the stream fails.
+    */
+   public void compress(byte[] data, OutputStream out) throws IOException {
+      CanonicalCode shared = null;
+      if (sharedTable && data.length > 0) {
+         HuffmanTree tree = new HuffmanTree();
+         tree.setMetrics(metrics);
+         tree.buildTree(FrequencyCounter.countBytes(data),
+               HuffmanArchiveWriter.MAX_CODE_LENGTH);
+         shared = tree.getCanonicalCode();
+      }
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(out,
+            shared, candidateTables, false, interleaved, metrics)) {
+         int count = (int) ((data.length + (long) blockSize - 1) / blockSize);
+         long[][] counts = new long[count][];
+         forEachBlock(count, i -> counts[i] = FrequencyCounter.countBytes(
+               data, i * blockSize, blockLength(data, i)));
+         HuffmanArchiveWriter.TableChoice[] tables =
+               new HuffmanArchiveWriter.TableChoice[count];
+         for (int i = 0; i < count; i++) {
+            tables[i] = writer.chooseTable(counts[i]);
+            counts[i] = null;
+         }
+         byte[][] blocks = new byte[count][];
+         forEachBlock(count, i -> blocks[i] = writer.encodeBlock(data,
+               i * blockSize, blockLength(data, i), tables[i]));
+         for (int i = 0; i < count; i++) {
+            writer.writeEncodedBlock(blocks[i], blockLength(data, i));
+            blocks[i] = null;
+         }
+      }
+   }
+
+   /**
+    * Compresses data into an archive held in memory.
+    *
+    * @param data The bytes to compress.
+    * @return The archive.
+    */
+   public byte[] compress(byte[] data) {
+      ByteArrayOutputStream archive = new ByteArrayOutputStream(
+            data.length / 2 + 64);
+      try {
+         compress(data, archive);
+      }
+      catch (IOException e) {
+         // ByteArrayOutputStream does not fail.
+         throw new IllegalStateException(e);
+      }
+      return archive.toByteArray();
+   }
+
+   /**
+    * Decompresses every block of an archive. The decodes are recorded in
+    * the metrics the reader was opened with.
+    *
+    * @param reader The open archive.
+    * @return The original data.
+    * @throws IOException if the archive cannot be read or a block is
+    *                     corrupt.
+    */
+   public byte[] decompress(HuffmanArchiveReader reader) throws IOException {
+      long size = reader.getOriginalSize();
+      if (size > Integer.MAX_VALUE - 8) {
+         throw new IOException("Archive too large for one array");
+      }
+      byte[] data = new byte[(int) size];
+      try {
+         pool.invoke(new DecodeTask(reader, data, 0,
+               reader.getBlockCount()));
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+      return data;
+   }
+
+   /**
+    * Decompresses a complete archive held in memory.
+    *
+    * @param archive The archive.
+    * @return The original data.
+    * @throws IOException if the archive is invalid or corrupt.
+    */
+   public byte[] decompress(byte[] archive) throws IOException {
+      try (HuffmanArchiveReader reader = new HuffmanArchiveReader(
+            new ByteArrayChannel(archive), metrics)) {
+         return decompress(reader);
+      }
+   }
+
+   private int blockLength(byte[] data, int block) {
+      return Math.min(blockSize, data.length - block * blockSize);
+   }
+
+   /**
+    * Runs an action for every block index on the pool.
+    */
+   private void forEachBlock(int count, IntConsumer action) {
+      pool.invoke(new BlockTask(action, 0, count));
+   }
+
+   /**
+    * Runs an action for a range of blocks, splitting it in half until one
+    * block is left.
+    */
+   private static class BlockTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final IntConsumer action;
+      private final int from;
+      private final int to;
+
+      BlockTask(IntConsumer action, int from, int to) {
+         this.action = action;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            invokeAll(new BlockTask(action, from, mid),
+                  new BlockTask(action, mid, to));
+         }
+         else if (to > from) {
+            action.accept(from);
+         }
+      }
+   }
+
+   /**
+    * Decodes a range of blocks into their places in the output, splitting
+    * it in half until one block is left.
+    */
+   private static class DecodeTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final HuffmanArchiveReader reader;
+      private final byte[] data;
+      private final int from;
+      private final int to;
+
+      DecodeTask(HuffmanArchiveReader reader, byte[] data, int from,
+            int to) {
+         this.reader = reader;
+         this.data = data;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            invokeAll(new DecodeTask(reader, data, from, mid),
+                  new DecodeTask(reader, data, mid, to));
+         }
+         else if (to > from) {
+            try {
+               byte[] block = reader.decodeBlock(from,
+                     reader.readRawBlock(from));
+               System.arraycopy(block, 0, data,
+                     (int) reader.getOriginalOffset(from), block.length);
+            }
+            catch (IOException e) {
+               throw new UncheckedIOException(e);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelBlockCodecTest {
+
+   private static byte[] sample(int size) {
+      Random random = new Random(7);
+      byte[] data = new byte[size];
+      for (int i = 0; i < size; i++) {
+         // Change the statistics every 64 KiB so per-block tables differ.
+         int shift = (i >> 16) % 3;
+         data[i] = (byte) (shift * 64 + Math.min(40,
+               (int) Math.abs(random.nextGaussian() * 5)));
+      }
+      return data;
+   }
+
+   @Test
+   void perBlockTableTest() throws IOException {
+      byte[] data = sample(1_000_003);
+      ParallelBlockCodec codec = new ParallelBlockCodec(65_536, false,
+            ForkJoinPool.commonPool());
+      byte[] archive = codec.compress(data);
+      assertTrue(archive.length < data.length / 2);
+      assertArrayEquals(data, codec.decompress(archive));
+      // The archive is the same one the serial writer produces.
+      assertArrayEquals(HuffmanArchiveWriter.compress(data, 65_536),
+            archive);
+   }
+
+   @Test
+   void sharedTableTest() throws IOException {
+      byte[] data = sample(300_000);
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try {
+         ParallelBlockCodec codec = new ParallelBlockCodec(4096, true, pool);
+         byte[] archive = codec.compress(data);
+         assertArrayEquals(data, codec.decompress(archive));
+         assertArrayEquals(data, HuffmanArchiveReader.decompress(archive));
+      }
+      finally {
+         pool.shutdown();
+      }
+   }
+
+   @Test
+   void candidateTableTest() throws IOException {
+      // Blocks of 4 KiB, so each statistic spans 16 blocks.
+      byte[] data = sample(400_000);
+      ParallelBlockCodec codec = new ParallelBlockCodec(4096, false, 4,
+            ForkJoinPool.commonPool());
+      byte[] archive = codec.compress(data);
+      assertArrayEquals(data, codec.decompress(archive));
+      ByteArrayOutputStream serial = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(serial,
+            null, 4)) {
+         writer.write(data, 4096);
+      }
+      assertArrayEquals(serial.toByteArray(), archive);
+      assertTrue(archive.length < HuffmanArchiveWriter.compress(data,
+            4096).length);
+   }
+
+   @Test
+   void interleavedTest() throws IOException {
+      byte[] data = sample(500_001);
+      ParallelBlockCodec codec = new ParallelBlockCodec(65_536, false, 0,
+            true, ForkJoinPool.commonPool());
+      byte[] archive = codec.compress(data);
+      assertArrayEquals(data, codec.decompress(archive));
+      ByteArrayOutputStream serial = new ByteArrayOutputStream();
+      try (HuffmanArchiveWriter writer = new HuffmanArchiveWriter(serial,
+            null, 0, false, true)) {
+         writer.write(data, 65_536);
+      }
+      assertArrayEquals(serial.toByteArray(), archive);
+   }
+
+   @Test
+   void emptyTest() throws IOException {
+      ParallelBlockCodec codec = new ParallelBlockCodec();
+      assertArrayEquals(new byte[0],
+            codec.decompress(codec.compress(new byte[0])));
+   }
+
+   @Test
+   void corruptionTest() {
+      byte[] data = sample(100_000);
+      ParallelBlockCodec codec = new ParallelBlockCodec(8192, false,
+            ForkJoinPool.commonPool());
+      byte[] archive = codec.compress(data);
+      archive[archive.length / 2] ^= 0x40;
+      assertThrows(IOException.class, () -> codec.decompress(archive));
+   }
+}
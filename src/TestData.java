@@ -0,0 +1,33 @@
+import java.util.Random;
+
+/**
+ * The TestData class makes the sample data the codec tests share.
+ *
+ * @author jam
+ *
+ */
+final class TestData {
+
+   private TestData() {
+   }
+
+   /**
+    * Letters 'a' to 'z' drawn from the magnitude of a Gaussian, so 'a' is
+    * the most frequent and the data compresses well. A smaller spread gives
+    * more skewed data.
+    *
+    * @param size   Number of bytes.
+    * @param seed   Seed of the random numbers.
+    * @param spread Standard deviation of the Gaussian, in letters.
+    * @return The data.
+    */
+   static byte[] skewedLetters(int size, long seed, double spread) {
+      Random random = new Random(seed);
+      byte[] data = new byte[size];
+      for (int i = 0; i < size; i++) {
+         data[i] = (byte) ('a' + Math.min(25,
+               (int) Math.abs(random.nextGaussian() * spread)));
+      }
+      return data;
+   }
+}